@@ -59,6 +59,9 @@ class AccessibilityUtils private constructor() {
      */
     fun shouldObscureInput(editorInfo: EditorInfo?): Boolean {
         if (editorInfo == null) return false
+        // Only passwords are obscured, which spares looking up the settings and audio routes
+        // for every key description.
+        if (!InputTypeUtils.isPasswordInputType(editorInfo.inputType)) return false
         // The user can optionally force speaking passwords.
         if (Settings.Secure.ACCESSIBILITY_SPEAK_PASSWORD != null) {
             val speakPassword = Settings.Secure.getInt(mContext!!.contentResolver,
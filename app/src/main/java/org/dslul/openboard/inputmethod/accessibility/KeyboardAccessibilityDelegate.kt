@@ -103,7 +103,10 @@ open class KeyboardAccessibilityDelegate<KV : KeyboardView?>(protected val mKeyb
     get() { // Instantiate the provide only when requested. Since the system
 // will call this method multiple times it is a good practice to
 // cache the provider instance.
-        return mAccessibilityNodeProvider ?: KeyboardAccessibilityNodeProvider(mKeyboardView, this)
+        return mAccessibilityNodeProvider
+                ?: KeyboardAccessibilityNodeProvider(mKeyboardView, this).also {
+                    mAccessibilityNodeProvider = it
+                }
     }
 
     /**
@@ -2,6 +2,7 @@ package org.dslul.openboard.inputmethod.accessibility
 
 import android.graphics.Rect
 import android.os.Bundle
+import android.os.SystemClock
 import android.util.Log
 import android.view.View
 import android.view.accessibility.AccessibilityEvent
@@ -13,7 +14,9 @@ import org.dslul.openboard.inputmethod.keyboard.Key
 import org.dslul.openboard.inputmethod.keyboard.Keyboard
 import org.dslul.openboard.inputmethod.keyboard.KeyboardView
 import org.dslul.openboard.inputmethod.latin.common.CoordinateUtils
+import org.dslul.openboard.inputmethod.latin.define.DebugFlags
 import org.dslul.openboard.inputmethod.latin.settings.Settings
+import java.util.*
 
 /**
  * Exposes a virtual view sub-tree for [KeyboardView] and generates
@@ -44,39 +47,59 @@ class KeyboardAccessibilityNodeProvider<KV : KeyboardView?>(keyboardView: KV,
     private val mDelegate: KeyboardAccessibilityDelegate<KV>
     /** The current keyboard.  */
     private var mKeyboard: Keyboard? = null
+    /** The keys of the current keyboard, indexed by virtual view id.  */
+    private var mKeys: List<Key> = emptyList()
+    /** The virtual view ids of the keys of the current keyboard.  */
+    private val mVirtualViewIds = IdentityHashMap<Key, Int>()
+    /** The virtual view ids of the keys that are not spacers, the children of the root node.  */
+    private var mChildVirtualViewIds = IntArray(0)
+    /** Whether the keys are word separators, by virtual view id.  */
+    private var mIsWordSeparator = BooleanArray(0)
+    /**
+     * The descriptions of the keys, by virtual view id, computed on first use for the current
+     * value of [mDescriptionsObscured].
+     */
+    private var mDescriptions = arrayOfNulls<String>(0)
+    private var mDescriptionsObscured = false
 
     /**
-     * Sets the keyboard represented by this node provider.
+     * Sets the keyboard represented by this node provider, and builds the table of its nodes.
      *
      * @param keyboard The keyboard that is being set to the keyboard view.
      */
     fun setKeyboard(keyboard: Keyboard?) {
+        if (keyboard === mKeyboard) {
+            return
+        }
         mKeyboard = keyboard
+        // Use an index of the sorted keys list as a virtual view id.
+        val keys = keyboard?.sortedKeys ?: emptyList<Key>()
+        val currentSettings = Settings.getInstance().current
+        mKeys = keys
+        mVirtualViewIds.clear()
+        mIsWordSeparator = BooleanArray(keys.size)
+        val childVirtualViewIds = IntArray(keys.size)
+        var childCount = 0
+        for (index in keys.indices) {
+            val key = keys[index]
+            mVirtualViewIds[key] = index
+            mIsWordSeparator[index] = currentSettings.isWordSeparator(key.code)
+            if (!key.isSpacer) {
+                childVirtualViewIds[childCount++] = index
+            }
+        }
+        mChildVirtualViewIds = childVirtualViewIds.copyOf(childCount)
+        mDescriptions = arrayOfNulls(keys.size)
     }
 
     private fun getKeyOf(virtualViewId: Int): Key? {
-        if (mKeyboard == null) {
-            return null
-        }
-        val sortedKeys = mKeyboard!!.sortedKeys
-        // Use a virtual view id as an index of the sorted keys list.
-        return if (virtualViewId >= 0 && virtualViewId < sortedKeys.size) {
-            sortedKeys[virtualViewId]
+        return if (virtualViewId >= 0 && virtualViewId < mKeys.size) {
+            mKeys[virtualViewId]
         } else null
     }
 
     private fun getVirtualViewIdOf(key: Key): Int {
-        if (mKeyboard == null) {
-            return View.NO_ID
-        }
-        val sortedKeys = mKeyboard!!.sortedKeys
-        val size = sortedKeys.size
-        for (index in 0 until size) {
-            if (sortedKeys[index] === key) { // Use an index of the sorted keys list as a virtual view id.
-                return index
-            }
-        }
-        return View.NO_ID
+        return mVirtualViewIds[key] ?: View.NO_ID
     }
 
     /**
@@ -90,7 +113,7 @@ class KeyboardAccessibilityNodeProvider<KV : KeyboardView?>(keyboardView: KV,
      */
     fun createAccessibilityEvent(key: Key, eventType: Int): AccessibilityEvent {
         val virtualViewId = getVirtualViewIdOf(key)
-        val keyDescription = getKeyDescription(key)
+        val keyDescription = getKeyDescription(key, virtualViewId)
         val event = AccessibilityEvent.obtain(eventType)
         event.packageName = mKeyboardView!!.context.packageName
         event.className = key.javaClass.name
@@ -106,6 +129,7 @@ class KeyboardAccessibilityNodeProvider<KV : KeyboardView?>(keyboardView: KV,
         if (id == View.NO_ID) {
             return
         }
+        val startTime = if (DebugFlags.DEBUG_ENABLED) SystemClock.elapsedRealtimeNanos() else 0L
         // Start hovering on the key. Because our accessibility model is lift-to-type, we should
 // report the node info without click and long click actions to avoid unnecessary
 // announcements.
@@ -113,6 +137,10 @@ class KeyboardAccessibilityNodeProvider<KV : KeyboardView?>(keyboardView: KV,
         // Invalidate the node info of the key.
         sendAccessibilityEventForKey(key, AccessibilityEventCompat.TYPE_WINDOW_CONTENT_CHANGED)
         sendAccessibilityEventForKey(key, AccessibilityEventCompat.TYPE_VIEW_HOVER_ENTER)
+        if (DebugFlags.DEBUG_ENABLED) {
+            Log.d(TAG, "Hover on " + key.toShortString() + " announced in "
+                    + (SystemClock.elapsedRealtimeNanos() - startTime) / 1000 + " us")
+        }
     }
 
     fun onHoverExitFrom(key: Key) {
@@ -156,15 +184,8 @@ class KeyboardAccessibilityNodeProvider<KV : KeyboardView?>(keyboardView: KV,
             ViewCompat.onInitializeAccessibilityNodeInfo(mKeyboardView!!, rootInfo)
             updateParentLocation()
             // Add the virtual children of the root View.
-            val sortedKeys = mKeyboard!!.sortedKeys
-            val size = sortedKeys.size
-            for (index in 0 until size) {
-                val key = sortedKeys[index]
-                if (key.isSpacer) {
-                    continue
-                }
-                // Use an index of the sorted keys list as a virtual view id.
-                rootInfo.addChild(mKeyboardView, index)
+            for (virtualViewId in mChildVirtualViewIds) {
+                rootInfo.addChild(mKeyboardView, virtualViewId)
             }
             return rootInfo
         }
@@ -174,7 +195,7 @@ class KeyboardAccessibilityNodeProvider<KV : KeyboardView?>(keyboardView: KV,
             Log.e(TAG, "Invalid virtual view ID: $virtualViewId")
             return null
         }
-        val keyDescription = getKeyDescription(key)
+        val keyDescription = getKeyDescription(key, virtualViewId)
         val boundsInParent = key.hitBox
         // Calculate the key's in-screen bounds.
         mTempBoundsInScreen.set(boundsInParent)
@@ -264,15 +285,36 @@ class KeyboardAccessibilityNodeProvider<KV : KeyboardView?>(keyboardView: KV,
      * Returns the context-specific description for a [Key].
      *
      * @param key The key to describe.
+     * @param virtualViewId The virtual view id of the key, or [View.NO_ID].
      * @return The context-specific description of the key.
      */
-    private fun getKeyDescription(key: Key): String? {
+    private fun getKeyDescription(key: Key, virtualViewId: Int): String? {
         val editorInfo = mKeyboard!!.mId.mEditorInfo
         val shouldObscure = mAccessibilityUtils.shouldObscureInput(editorInfo)
-        val currentSettings = Settings.getInstance().current
+        if (virtualViewId == View.NO_ID) {
+            return getKeyDescription(key, shouldObscure,
+                    Settings.getInstance().current.isWordSeparator(key.code))
+        }
+        if (shouldObscure != mDescriptionsObscured) {
+            // Plugging in a headset changes what may be spoken.
+            mDescriptionsObscured = shouldObscure
+            Arrays.fill(mDescriptions, null)
+        }
+        val keyCodeDescription = mDescriptions[virtualViewId]
+                ?: mKeyCodeDescriptionMapper.getDescriptionForKey(
+                        mKeyboardView!!.context, mKeyboard, key, shouldObscure)
+                        .also { mDescriptions[virtualViewId] = it }
+        // The auto-correction part follows the suggestions, it can't be kept.
+        return if (mIsWordSeparator[virtualViewId]) {
+            mAccessibilityUtils.getAutoCorrectionDescription(keyCodeDescription, shouldObscure)
+        } else keyCodeDescription
+    }
+
+    private fun getKeyDescription(key: Key, shouldObscure: Boolean,
+                                  isWordSeparator: Boolean): String? {
         val keyCodeDescription = mKeyCodeDescriptionMapper.getDescriptionForKey(
                 mKeyboardView!!.context, mKeyboard, key, shouldObscure)
-        return if (currentSettings.isWordSeparator(key.code)) {
+        return if (isWordSeparator) {
             mAccessibilityUtils.getAutoCorrectionDescription(
                     keyCodeDescription, shouldObscure)
         } else keyCodeDescription
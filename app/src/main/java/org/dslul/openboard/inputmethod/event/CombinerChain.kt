@@ -1,7 +1,7 @@
 package org.dslul.openboard.inputmethod.event
 
 import android.text.SpannableStringBuilder
-import android.text.TextUtils
+import android.util.Log
 import org.dslul.openboard.inputmethod.latin.common.Constants
 import java.util.*
 
@@ -17,41 +17,68 @@ import java.util.*
  * feedback on the composing state and will typically be shown with different styling such as
  * a colored background.
  */
-class CombinerChain(initialText: String?) {
+class CombinerChain(initialText: String?, combiningSpec: String?) {
     // The already combined text, as described above
     private val mCombinedText: StringBuilder
     // The feedback on the composing state, as described above
     private val mStateFeedback: SpannableStringBuilder
     private val mCombiners: ArrayList<Combiner>
+    // The composing word last returned by composingWordWithCombiningFeedback, or null if the
+    // combined text or the feedback changed since.
+    private var mComposingWordCache: CharSequence? = null
     fun reset() {
         mCombinedText.setLength(0)
         mStateFeedback.clear()
+        mComposingWordCache = null
         for (c in mCombiners) {
             c.reset()
         }
     }
 
     private fun updateStateFeedback() {
+        if (isStateFeedbackUpToDate()) { // Most events leave the feedback alone, keep its spans.
+            return
+        }
         mStateFeedback.clear()
         for (i in mCombiners.indices.reversed()) {
             mStateFeedback.append(mCombiners[i].combiningStateFeedback)
         }
+        mComposingWordCache = null
+    }
+
+    // Returns whether the feedback is the concatenation of the feedbacks of the combiners in
+    // reverse order, comparing in place so that an unchanged feedback costs no allocation.
+    private fun isStateFeedbackUpToDate(): Boolean {
+        var offset = 0
+        for (i in mCombiners.indices.reversed()) {
+            val feedback = mCombiners[i].combiningStateFeedback
+            val length = feedback.length
+            if (offset + length > mStateFeedback.length) {
+                return false
+            }
+            for (j in 0 until length) {
+                if (feedback[j] != mStateFeedback[offset + j]) {
+                    return false
+                }
+            }
+            offset += length
+        }
+        return offset == mStateFeedback.length
     }
 
     /**
      * Process an event through the combining chain, and return a processed event to apply.
-     * @param previousEvents the list of previous events in this composition
+     * @param previousEvents the list of previous events in this composition. It is handed to the
+     * combiners as is, without a copy, and none of them modifies it.
      * @param newEvent the new event to process
      * @return the processed event. It may be the same event, or a consumed event, or a completely
      * new event. However it may never be null.
      */
-    fun processEvent(previousEvents: ArrayList<Event>?,
-                     newEvent: Event?): Event? {
-        val modifiablePreviousEvents = ArrayList(previousEvents!!)
+    fun processEvent(previousEvents: List<Event>, newEvent: Event?): Event? {
         var event = newEvent
         for (combiner in mCombiners) { // A combiner can never return more than one event; it can return several
 // code points, but they should be encapsulated within one event.
-            event = combiner.processEvent(modifiablePreviousEvents, event)
+            event = combiner.processEvent(previousEvents, event)
             if (event!!.isConsumed) { // If the event is consumed, then we don't pass it to subsequent combiners:
 // they should not see it at all.
                 break
@@ -72,12 +99,10 @@ class CombinerChain(initialText: String?) {
                 if (length > 0) {
                     val lastCodePoint = mCombinedText.codePointBefore(length)
                     mCombinedText.delete(length - Character.charCount(lastCodePoint), length)
+                    mComposingWordCache = null
                 }
-            } else {
-                val textToCommit = event.textToCommit
-                if (!TextUtils.isEmpty(textToCommit)) {
-                    mCombinedText.append(textToCommit)
-                }
+            } else if (event.appendTextToCommit(mCombinedText)) {
+                mComposingWordCache = null
             }
         }
         updateStateFeedback()
@@ -85,12 +110,22 @@ class CombinerChain(initialText: String?) {
 
     /**
      * Get the char sequence that should be displayed as the composing word. It may include
-     * styling spans.
+     * styling spans. The same instance is returned until the combined text or the feedback
+     * changes; there are no spans to carry without feedback, so that case is a plain string.
      */
     val composingWordWithCombiningFeedback: CharSequence
         get() {
-            val s = SpannableStringBuilder(mCombinedText)
-            return s.append(mStateFeedback)
+            val cachedComposingWord = mComposingWordCache
+            if (null != cachedComposingWord) {
+                return cachedComposingWord
+            }
+            val composingWord: CharSequence = if (mStateFeedback.isEmpty()) {
+                mCombinedText.toString()
+            } else {
+                SpannableStringBuilder(mCombinedText).append(mStateFeedback)
+            }
+            mComposingWordCache = composingWord
+            return composingWord
         }
 
     /**
@@ -102,12 +137,27 @@ class CombinerChain(initialText: String?) {
      * cursor: we'll start after this.
      *
      * @param initialText The text that has already been combined so far.
+     * @param combiningSpec The combining rules of the subtype, the names of the combiners to
+     * install after the dead key combiner separated by semicolons, or null for none.
      */
     init {
         mCombiners = ArrayList()
         // The dead key combiner is always active, and always first
         mCombiners.add(DeadKeyCombiner())
+        if (!combiningSpec.isNullOrEmpty()) {
+            for (combinerName in combiningSpec.split(COMBINER_SPEC_SEPARATOR)) {
+                when (combinerName) {
+                    HangulCombiner.COMBINING_RULES -> mCombiners.add(HangulCombiner())
+                    else -> Log.w(TAG, "Unknown combiner \"$combinerName\" in \"$combiningSpec\"")
+                }
+            }
+        }
         mCombinedText = StringBuilder(initialText!!)
         mStateFeedback = SpannableStringBuilder()
     }
-}
\ No newline at end of file
+
+    companion object {
+        private val TAG = CombinerChain::class.java.simpleName
+        private const val COMBINER_SPEC_SEPARATOR = ";"
+    }
+}
@@ -0,0 +1,76 @@
+package org.dslul.openboard.inputmethod.event
+
+import java.util.*
+
+/**
+ * A compiled table of pairwise combinations, where a code point followed by another one combines
+ * into a third one. The pairs are packed into a sorted array of longs so that a lookup is a
+ * binary search over primitive arrays, and combining does not allocate anything.
+ */
+class CombiningTable private constructor(private val mPairs: LongArray,
+                                         private val mResults: IntArray) {
+    val size: Int
+        get() = mPairs.size
+
+    /**
+     * Combine two code points.
+     * @param first the code point that came first, e.g. the pending state of a combiner
+     * @param second the code point that came second, e.g. the code point of the new event
+     * @return the combined code point, or [Event.NOT_A_CODE_POINT] if they do not combine
+     */
+    fun combine(first: Int, second: Int): Int {
+        val index = Arrays.binarySearch(mPairs, pack(first, second))
+        return if (index >= 0) mResults[index] else Event.NOT_A_CODE_POINT
+    }
+
+    /**
+     * Collects combinations and compiles them into a table. A combination added later for the
+     * same pair replaces the earlier one.
+     */
+    class Builder {
+        private val mCombinations = TreeMap<Long, Int>()
+
+        fun add(first: Int, second: Int, result: Int): Builder {
+            mCombinations[pack(first, second)] = result
+            return this
+        }
+
+        /**
+         * Add the combinations of a spec: a whitespace separated list of entries made of three
+         * code points each, the two that combine followed by the result. For example "ㅗㅏㅘ".
+         */
+        fun addSpec(spec: String): Builder {
+            for (entry in spec.split(WHITESPACE)) {
+                if (entry.isEmpty()) {
+                    continue
+                }
+                if (entry.codePointCount(0, entry.length) != 3) {
+                    throw IllegalArgumentException("Bad combination \"$entry\" in combining spec")
+                }
+                val second = entry.offsetByCodePoints(0, 1)
+                val result = entry.offsetByCodePoints(second, 1)
+                add(entry.codePointAt(0), entry.codePointAt(second), entry.codePointAt(result))
+            }
+            return this
+        }
+
+        fun build(): CombiningTable {
+            val pairs = LongArray(mCombinations.size)
+            val results = IntArray(mCombinations.size)
+            var index = 0
+            for ((pair, result) in mCombinations) { // Ascending order, ready for binary search.
+                pairs[index] = pair
+                results[index] = result
+                ++index
+            }
+            return CombiningTable(pairs, results)
+        }
+    }
+
+    companion object {
+        private val WHITESPACE = Regex("\\s+")
+
+        private fun pack(first: Int, second: Int): Long =
+                first.toLong() shl 32 or (second.toLong() and 0xFFFFFFFFL)
+    }
+}
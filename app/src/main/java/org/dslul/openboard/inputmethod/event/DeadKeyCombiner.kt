@@ -3,6 +3,7 @@ package org.dslul.openboard.inputmethod.event
 import android.text.TextUtils
 import android.util.SparseIntArray
 import org.dslul.openboard.inputmethod.latin.common.Constants
+import org.dslul.openboard.inputmethod.latin.common.StringUtils
 import java.text.Normalizer
 import java.util.*
 
@@ -72,6 +73,53 @@ class DeadKeyCombiner : Combiner {
             return sNonstandardDeadCombinations[combination, NOT_A_CHAR].toChar()
         }
 
+        /**
+         * The combinations of one dead key with one code point that result in one code point,
+         * compiled on first use so that the common case of combining does not need to normalize.
+         */
+        val sDeadCombinations: CombiningTable by lazy { buildDeadCombinations() }
+
+        // Ranges of precomposed characters, by pairs of first and last code points: Latin-1
+        // Supplement to Latin Extended-B, Greek and Cyrillic, Latin Extended Additional and
+        // Greek Extended.
+        private val PRECOMPOSED_RANGES = intArrayOf(0x00C0, 0x024F, 0x0370, 0x04FF, 0x1E00, 0x1FFF)
+
+        private fun buildDeadCombinations(): CombiningTable {
+            val builder = CombiningTable.Builder()
+            // Each precomposed character that decomposes into a base and an accent is what the
+            // dead key of the accent makes of the base, unless it is excluded from composition.
+            for (i in PRECOMPOSED_RANGES.indices step 2) {
+                for (precomposed in PRECOMPOSED_RANGES[i]..PRECOMPOSED_RANGES[i + 1]) {
+                    val text = StringUtils.newSingleCodePointString(precomposed)
+                    val decomposed = Normalizer.normalize(text, Normalizer.Form.NFD)
+                    if (decomposed.length < 2) {
+                        continue
+                    }
+                    val combining = decomposed[decomposed.length - 1]
+                    val base = Normalizer.normalize(
+                            decomposed.substring(0, decomposed.length - 1), Normalizer.Form.NFC)
+                    if (base.codePointCount(0, base.length) != 1 || text != Normalizer.normalize(
+                                    base + combining, Normalizer.Form.NFC)) {
+                        continue
+                    }
+                    for (j in 0 until sAccentToCombining.size()) {
+                        if (sAccentToCombining.valueAt(j) == combining.toInt()) {
+                            builder.add(sAccentToCombining.keyAt(j), base.codePointAt(0),
+                                    precomposed)
+                        }
+                    }
+                }
+            }
+            // Non-standard combinations take precedence, as they do when normalizing.
+            for (i in 0 until sNonstandardDeadCombinations.size()) {
+                val combination = sNonstandardDeadCombinations.keyAt(i)
+                builder.add(
+                        combination ushr BITS_TO_SHIFT_DEAD_CODE_POINT_FOR_NON_STANDARD_COMBINATION,
+                        combination and 0xFFFF, sNonstandardDeadCombinations.valueAt(i))
+            }
+            return builder.build()
+        }
+
         init { // U+0300: COMBINING GRAVE ACCENT
             addCombining('\u0300'.toInt(), ACCENT_GRAVE)
             // U+0301: COMBINING ACUTE ACCENT
@@ -188,7 +236,7 @@ class DeadKeyCombiner : Combiner {
     // TODO: make this a list of events instead
     val mDeadSequence = StringBuilder()
 
-    override fun processEvent(previousEvents: ArrayList<Event>?, event: Event?): Event? {
+    override fun processEvent(previousEvents: List<Event>, event: Event?): Event? {
         if (TextUtils.isEmpty(mDeadSequence)) { // No dead char is currently being tracked: this is the most common case.
             if (event!!.isDead) { // The event was a dead key. Start tracking it.
                 mDeadSequence.appendCodePoint(event.mCodePoint)
@@ -219,7 +267,17 @@ class DeadKeyCombiner : Combiner {
             mDeadSequence.appendCodePoint(event.mCodePoint)
             return Event.Companion.createConsumedEvent(event)
         }
-        // Combine normally.
+        // Combine normally, through the table for the common case of a single dead key.
+        if (mDeadSequence.length == Character.charCount(mDeadSequence.codePointAt(0))) {
+            val combined = Data.sDeadCombinations.combine(mDeadSequence.codePointAt(0),
+                    event.mCodePoint)
+            if (Event.NOT_A_CODE_POINT != combined) {
+                mDeadSequence.setLength(0)
+                return Event.createHardwareKeypressEvent(combined, event.mKeyCode,
+                        null /* next */, false /* isKeyRepeat */)
+            }
+        }
+        // Several dead keys or no precomposed result: normalize.
         val sb = StringBuilder()
         sb.appendCodePoint(event.mCodePoint)
         var codePointIndex = 0
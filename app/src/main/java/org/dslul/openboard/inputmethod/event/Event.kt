@@ -85,6 +85,25 @@ class Event private constructor(// The type of event - one of the constants abov
             throw RuntimeException("Unknown event type: $mEventType")
         }
 
+    /**
+     * Appends the text to commit for this event, like [textToCommit] but without creating a
+     * string for a key press.
+     * @return whether any text was appended.
+     */
+    fun appendTextToCommit(sb: StringBuilder): Boolean {
+        if (!isConsumed && EVENT_TYPE_INPUT_KEYPRESS == mEventType
+                && Character.isValidCodePoint(mCodePoint)) {
+            sb.appendCodePoint(mCodePoint)
+            return true
+        }
+        val text = textToCommit
+        if (text.isNullOrEmpty()) {
+            return false
+        }
+        sb.append(text)
+        return true
+    }
+
     companion object {
         // Should the types below be represented by separate classes instead? It would be cleaner
 // but probably a bit too much
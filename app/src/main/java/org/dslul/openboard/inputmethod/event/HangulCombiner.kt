@@ -0,0 +1,242 @@
+package org.dslul.openboard.inputmethod.event
+
+import org.dslul.openboard.inputmethod.latin.common.Constants
+
+/**
+ * A combiner that composes Hangul syllables out of the compatibility jamo a two-set Korean
+ * layout inputs, like ㅎ ㅏ ㄴ making 한.
+ *
+ * The syllable being composed is kept as its initial, medial and final jamo and shown as the
+ * combining state feedback. A jamo that cannot join it completes the syllable, which is then
+ * sent down the chain as an event of its own. Compound vowels and finals are looked up in
+ * [CombiningTable]s and syllables are computed from jamo indices, so each event takes constant
+ * time whatever the length of the word.
+ */
+class HangulCombiner : Combiner {
+    // The jamo of the syllable being composed, as compatibility jamo, or NOT_A_CODE_POINT. A
+    // compound vowel or final also keeps the jamo it was made of, so that a backspace or a
+    // following vowel can split it again.
+    private var mInitial = Event.NOT_A_CODE_POINT
+    private var mMedial = Event.NOT_A_CODE_POINT
+    private var mMedialFirst = Event.NOT_A_CODE_POINT
+    private var mFinal = Event.NOT_A_CODE_POINT
+    private var mFinalFirst = Event.NOT_A_CODE_POINT
+    private var mFinalSecond = Event.NOT_A_CODE_POINT
+    private val mFeedback = StringBuilder()
+
+    override fun processEvent(previousEvents: List<Event>, event: Event?): Event? {
+        if (null == event) {
+            return null
+        }
+        if (Constants.CODE_DELETE == event.mKeyCode) {
+            if (isEmpty) {
+                return event
+            }
+            removeLastJamo()
+            updateFeedback()
+            return Event.createConsumedEvent(event)
+        }
+        if (event.isFunctionalKeyEvent) {
+            return event
+        }
+        val codePoint = event.mCodePoint
+        val resultEvent = when {
+            isConsonant(codePoint) -> addConsonant(codePoint, event)
+            isVowel(codePoint) -> addVowel(codePoint, event)
+            // Anything else completes the syllable and goes after it.
+            else -> completeSyllable(event)
+        }
+        updateFeedback()
+        return resultEvent
+    }
+
+    private fun addConsonant(consonant: Int, event: Event): Event {
+        if (mMedial == Event.NOT_A_CODE_POINT || mInitial == Event.NOT_A_CODE_POINT) {
+            // A lone jamo cannot take a consonant, it becomes a syllable of its own.
+            val completedEvent = completeSyllable(null)
+            return startSyllable(consonant, Event.NOT_A_CODE_POINT, event, completedEvent)
+        }
+        if (mFinal == Event.NOT_A_CODE_POINT) {
+            if (jongseongIndex(consonant) > 0) {
+                mFinal = consonant
+                return Event.createConsumedEvent(event)
+            }
+        } else if (mFinalFirst == Event.NOT_A_CODE_POINT) {
+            val compoundFinal = sCompoundFinals.combine(mFinal, consonant)
+            if (compoundFinal != Event.NOT_A_CODE_POINT) {
+                mFinalFirst = mFinal
+                mFinalSecond = consonant
+                mFinal = compoundFinal
+                return Event.createConsumedEvent(event)
+            }
+        }
+        val completedEvent = completeSyllable(null)
+        return startSyllable(consonant, Event.NOT_A_CODE_POINT, event, completedEvent)
+    }
+
+    private fun addVowel(vowel: Int, event: Event): Event {
+        if (mFinal != Event.NOT_A_CODE_POINT) {
+            // The final consonant moves over to start a syllable with the new vowel, or the
+            // second half of it if it is a compound.
+            val initial: Int
+            if (mFinalFirst != Event.NOT_A_CODE_POINT) {
+                initial = mFinalSecond
+                mFinal = mFinalFirst
+            } else {
+                initial = mFinal
+                mFinal = Event.NOT_A_CODE_POINT
+            }
+            mFinalFirst = Event.NOT_A_CODE_POINT
+            mFinalSecond = Event.NOT_A_CODE_POINT
+            val completedEvent = completeSyllable(null)
+            return startSyllable(initial, vowel, event, completedEvent)
+        }
+        if (mMedial == Event.NOT_A_CODE_POINT) {
+            if (mInitial != Event.NOT_A_CODE_POINT) {
+                mMedial = vowel
+                return Event.createConsumedEvent(event)
+            }
+        } else if (mMedialFirst == Event.NOT_A_CODE_POINT) {
+            val compoundVowel = sCompoundVowels.combine(mMedial, vowel)
+            if (compoundVowel != Event.NOT_A_CODE_POINT) {
+                mMedialFirst = mMedial
+                mMedial = compoundVowel
+                return Event.createConsumedEvent(event)
+            }
+        }
+        val completedEvent = completeSyllable(null)
+        return startSyllable(Event.NOT_A_CODE_POINT, vowel, event, completedEvent)
+    }
+
+    // Starts composing a new syllable from the given jamo, after the completed syllable if any.
+    private fun startSyllable(initial: Int, medial: Int, event: Event,
+                              completedEvent: Event?): Event {
+        mInitial = initial
+        mMedial = medial
+        return completedEvent ?: Event.createConsumedEvent(event)
+    }
+
+    /**
+     * Stop composing the current syllable.
+     * @param next the event to chain after the completed syllable, if any.
+     * @return the event of the completed syllable followed by the next event, or the next event
+     * alone if there was no syllable being composed.
+     */
+    private fun completeSyllable(next: Event?): Event? {
+        if (isEmpty) {
+            return next
+        }
+        val syllable = composeSyllable()
+        reset()
+        return Event.createHardwareKeypressEvent(syllable, syllable, next, false /* isKeyRepeat */)
+    }
+
+    private fun removeLastJamo() {
+        when {
+            mFinalFirst != Event.NOT_A_CODE_POINT -> {
+                mFinal = mFinalFirst
+                mFinalFirst = Event.NOT_A_CODE_POINT
+                mFinalSecond = Event.NOT_A_CODE_POINT
+            }
+            mFinal != Event.NOT_A_CODE_POINT -> mFinal = Event.NOT_A_CODE_POINT
+            mMedialFirst != Event.NOT_A_CODE_POINT -> {
+                mMedial = mMedialFirst
+                mMedialFirst = Event.NOT_A_CODE_POINT
+            }
+            mMedial != Event.NOT_A_CODE_POINT -> mMedial = Event.NOT_A_CODE_POINT
+            else -> mInitial = Event.NOT_A_CODE_POINT
+        }
+    }
+
+    private val isEmpty: Boolean
+        get() = mInitial == Event.NOT_A_CODE_POINT && mMedial == Event.NOT_A_CODE_POINT
+
+    // Returns the precomposed syllable, or the lone jamo if there is only one.
+    private fun composeSyllable(): Int {
+        if (mMedial == Event.NOT_A_CODE_POINT) {
+            return mInitial
+        }
+        if (mInitial == Event.NOT_A_CODE_POINT) {
+            return mMedial
+        }
+        val finalIndex = if (mFinal == Event.NOT_A_CODE_POINT) 0 else jongseongIndex(mFinal)
+        return SYLLABLE_BASE + (choseongIndex(mInitial) * JUNGSEONG_COUNT
+                + jungseongIndex(mMedial)) * JONGSEONG_COUNT + finalIndex
+    }
+
+    private fun updateFeedback() {
+        mFeedback.setLength(0)
+        if (!isEmpty) {
+            mFeedback.appendCodePoint(composeSyllable())
+        }
+    }
+
+    override val combiningStateFeedback: CharSequence
+        get() = mFeedback
+
+    override fun reset() {
+        mInitial = Event.NOT_A_CODE_POINT
+        mMedial = Event.NOT_A_CODE_POINT
+        mMedialFirst = Event.NOT_A_CODE_POINT
+        mFinal = Event.NOT_A_CODE_POINT
+        mFinalFirst = Event.NOT_A_CODE_POINT
+        mFinalSecond = Event.NOT_A_CODE_POINT
+        mFeedback.setLength(0)
+    }
+
+    companion object {
+        // The value of the CombiningRules subtype extra value that installs this combiner.
+        const val COMBINING_RULES = "hangul"
+
+        private const val SYLLABLE_BASE = 0xAC00
+        private const val JUNGSEONG_COUNT = 21
+        private const val JONGSEONG_COUNT = 28
+        private const val COMPATIBILITY_JAMO_FIRST = 0x3131
+        private const val COMPATIBILITY_JAMO_LAST = 0x3163
+
+        // The compatibility jamo in the order of the syllable block indices. There is no final
+        // for index 0.
+        private const val CHOSEONG = "ㄱㄲㄴㄷㄸㄹㅁㅂㅃㅅㅆㅇㅈㅉㅊㅋㅌㅍㅎ"
+        private const val JUNGSEONG = "ㅏㅐㅑㅒㅓㅔㅕㅖㅗㅘㅙㅚㅛㅜㅝㅞㅟㅠㅡㅢㅣ"
+        private const val JONGSEONG = "\u0000ㄱㄲㄳㄴㄵㄶㄷㄹㄺㄻㄼㄽㄾㄿㅀㅁㅂㅄㅅㅆㅇㅈㅊㅋㅌㅍㅎ"
+
+        private val sCompoundVowels = CombiningTable.Builder()
+                .addSpec("ㅗㅏㅘ ㅗㅐㅙ ㅗㅣㅚ ㅜㅓㅝ ㅜㅔㅞ ㅜㅣㅟ ㅡㅣㅢ")
+                .build()
+        private val sCompoundFinals = CombiningTable.Builder()
+                .addSpec("ㄱㅅㄳ ㄴㅈㄵ ㄴㅎㄶ ㄹㄱㄺ ㄹㅁㄻ ㄹㅂㄼ ㄹㅅㄽ ㄹㅌㄾ ㄹㅍㄿ ㄹㅎㅀ ㅂㅅㅄ")
+                .build()
+
+        // Indices of the compatibility jamo in the strings above, by code point offset, or -1.
+        private val sChoseongIndices = buildIndices(CHOSEONG)
+        private val sJungseongIndices = buildIndices(JUNGSEONG)
+        private val sJongseongIndices = buildIndices(JONGSEONG)
+
+        private fun buildIndices(jamo: String): IntArray {
+            val indices = IntArray(COMPATIBILITY_JAMO_LAST - COMPATIBILITY_JAMO_FIRST + 1)
+            indices.fill(-1)
+            for (i in jamo.indices) {
+                val offset = jamo[i].toInt() - COMPATIBILITY_JAMO_FIRST
+                if (offset >= 0) {
+                    indices[offset] = i
+                }
+            }
+            return indices
+        }
+
+        private fun indexOf(indices: IntArray, codePoint: Int): Int =
+                if (codePoint < COMPATIBILITY_JAMO_FIRST || codePoint > COMPATIBILITY_JAMO_LAST) {
+                    -1
+                } else {
+                    indices[codePoint - COMPATIBILITY_JAMO_FIRST]
+                }
+
+        private fun choseongIndex(codePoint: Int) = indexOf(sChoseongIndices, codePoint)
+        private fun jungseongIndex(codePoint: Int) = indexOf(sJungseongIndices, codePoint)
+        private fun jongseongIndex(codePoint: Int) = indexOf(sJongseongIndices, codePoint)
+
+        // Consonants that can start a syllable; compound finals are never typed on their own.
+        private fun isConsonant(codePoint: Int) = choseongIndex(codePoint) >= 0
+        private fun isVowel(codePoint: Int) = jungseongIndex(codePoint) >= 0
+    }
+}
@@ -33,6 +33,7 @@ class InputTransaction(// Initial conditions
     private var mRequiresUpdateSuggestions = false
     private var mDidAffectContents = false
     private var mDidAutoCorrect = false
+    private var mRequiresPrecomputedPredictions = false
     /**
      * Indicate that this transaction requires some type of shift update.
      * @param updateType What type of shift update this requires.
@@ -86,6 +87,22 @@ class InputTransaction(// Initial conditions
         return mDidAutoCorrect
     }
 
+    /**
+     * Indicate that the predictions for the next word should be computed ahead of the update
+     * of the suggestion strip after this transaction.
+     */
+    fun setRequiresPrecomputedPredictions() {
+        mRequiresPrecomputedPredictions = true
+    }
+
+    /**
+     * Find out whether the predictions for the next word should be computed ahead of time.
+     * @return Whether the predictions for the next word should be computed ahead of time.
+     */
+    fun requiresPrecomputedPredictions(): Boolean {
+        return mRequiresPrecomputedPredictions
+    }
+
     companion object {
         // UPDATE_LATER is stronger than UPDATE_NOW. The reason for this is, if we have to update later,
 // it's because something will change that we can't evaluate now, which means that even if we
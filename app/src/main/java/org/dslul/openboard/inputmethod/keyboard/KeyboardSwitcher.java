@@ -62,6 +62,8 @@ public final class KeyboardSwitcher implements KeyboardState.SwitchActions {
     private boolean mIsHardwareAcceleratedDrawingEnabled;
 
     private KeyboardState mState;
+    // The settings values the current keyboard layout set was loaded with.
+    private SettingsValues mKeyboardSettingsValues;
 
     private KeyboardLayoutSet mKeyboardLayoutSet;
     // TODO: The following {@link KeyboardTextsSet} should be in {@link KeyboardLayoutSet}.
@@ -132,6 +134,7 @@ public final class KeyboardSwitcher implements KeyboardState.SwitchActions {
         final boolean oneHandedModeEnabled = settingsValues.mOneHandedModeEnabled;
         builder.setOneHandedModeEnabled(oneHandedModeEnabled);
         mKeyboardLayoutSet = builder.build();
+        mKeyboardSettingsValues = settingsValues;
         try {
             mState.onLoadKeyboard(currentAutoCapsState, currentRecapitalizeState,
                     oneHandedModeEnabled);
@@ -141,6 +144,15 @@ public final class KeyboardSwitcher implements KeyboardState.SwitchActions {
         }
     }
 
+    /**
+     * Returns whether the current keyboard was loaded with settings that changed since, so that
+     * it has to be loaded again to show the given settings values.
+     */
+    public boolean needsToReloadKeyboard(final SettingsValues settingsValues) {
+        return mKeyboardSettingsValues != settingsValues
+                && !settingsValues.hasSameKeyboardSettings(mKeyboardSettingsValues);
+    }
+
     public void saveKeyboardState() {
         if (getKeyboard() != null || isShowingEmojiPalettes() || isShowingClipboardHistory()) {
             mState.onSaveKeyboardState();
@@ -27,8 +27,10 @@ import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Paint.Align;
 import android.graphics.Typeface;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.util.LruCache;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
@@ -54,12 +56,16 @@ import org.dslul.openboard.inputmethod.latin.RichInputMethodSubtype;
 import org.dslul.openboard.inputmethod.latin.SuggestedWords;
 import org.dslul.openboard.inputmethod.latin.common.Constants;
 import org.dslul.openboard.inputmethod.latin.common.CoordinateUtils;
+import org.dslul.openboard.inputmethod.latin.define.DebugFlags;
 import org.dslul.openboard.inputmethod.latin.settings.DebugSettings;
 import org.dslul.openboard.inputmethod.latin.utils.DeviceProtectedUtils;
+import org.dslul.openboard.inputmethod.latin.utils.ExecutorUtils;
 import org.dslul.openboard.inputmethod.latin.utils.LanguageOnSpacebarUtils;
 import org.dslul.openboard.inputmethod.latin.utils.TypefaceUtils;
 
-import java.util.WeakHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -151,7 +157,14 @@ public final class MainKeyboardView extends KeyboardView implements DrawingProxy
     private final Paint mBackgroundDimAlphaPaint = new Paint();
     private final View mMoreKeysKeyboardContainer;
     private final View mMoreKeysKeyboardForActionContainer;
-    private final WeakHashMap<Key, Keyboard> mMoreKeysKeyboardCache = new WeakHashMap<>();
+    // Bounded so that it can outlive keyboard switches: more keys keyboards of the layouts in use
+    // are built in the background once and then found again when switching back to them, until
+    // the input view is closed.
+    private static final int MORE_KEYS_KEYBOARD_CACHE_SIZE = 256;
+    private final LruCache<MoreKeysKeyboardCacheKey, Keyboard> mMoreKeysKeyboardCache =
+            new LruCache<>(MORE_KEYS_KEYBOARD_CACHE_SIZE);
+    // Incremented on every keyboard change to abandon the preloading for the previous keyboard.
+    private final AtomicInteger mMoreKeysKeyboardPreloadGeneration = new AtomicInteger();
     private final boolean mConfigShowMoreKeysKeyboardAtTouchedPoint;
     // More keys panel (used by both more keys keyboard and more suggestions view)
     // TODO: Consider extending to support multiple more keys panels
@@ -392,7 +405,13 @@ public final class MainKeyboardView extends KeyboardView implements DrawingProxy
         mKeyDetector.setKeyboard(
                 keyboard, -getPaddingLeft(), -getPaddingTop() + getVerticalCorrection());
         PointerTracker.setKeyDetector(mKeyDetector);
-        mMoreKeysKeyboardCache.clear();
+        if (mKeyPreviewDrawParams.isPopupEnabled()) {
+            mKeyPreviewChoreographer.prepareKeyPreviews(keyboard, getKeyDrawParams(),
+                    mDrawingPreviewPlacerView);
+        }
+        // After the key previews are measured: the more keys keyboards of keys with a single more
+        // key are aligned with the preview of the key.
+        preloadMoreKeysKeyboards(keyboard);
 
         mSpaceKey = keyboard.getKey(Constants.CODE_SPACE);
         final int keyHeight = keyboard.mMostCommonKeyHeight - keyboard.mVerticalGap;
@@ -593,22 +612,14 @@ public final class MainKeyboardView extends KeyboardView implements DrawingProxy
         if (moreKeys == null) {
             return null;
         }
-        Keyboard moreKeysKeyboard = mMoreKeysKeyboardCache.get(key);
+        final long startTime = SystemClock.uptimeMillis();
+        final MoreKeysKeyboardCacheKey cacheKey = newMoreKeysKeyboardCacheKey(key, getKeyboard());
+        Keyboard moreKeysKeyboard = mMoreKeysKeyboardCache.get(cacheKey);
+        final boolean isCached = moreKeysKeyboard != null;
         if (moreKeysKeyboard == null) {
-            // {@link KeyPreviewDrawParams#mPreviewVisibleWidth} should have been set at
-            // {@link KeyPreviewChoreographer#placeKeyPreview(Key,TextView,KeyboardIconsSet,KeyDrawParams,int,int[]},
-            // though there may be some chances that the value is zero. <code>width == 0</code>
-            // will cause zero-division error at
-            // {@link MoreKeysKeyboardParams#setParameters(int,int,int,int,int,int,boolean,int)}.
-            final boolean isSingleMoreKeyWithPreview = mKeyPreviewDrawParams.isPopupEnabled()
-                    && !key.noKeyPreview() && moreKeys.length == 1
-                    && mKeyPreviewDrawParams.getVisibleWidth() > 0;
-            final MoreKeysKeyboard.Builder builder = new MoreKeysKeyboard.Builder(
-                    getContext(), key, getKeyboard(), isSingleMoreKeyWithPreview,
-                    mKeyPreviewDrawParams.getVisibleWidth(),
-                    mKeyPreviewDrawParams.getVisibleHeight(), newLabelPaint(key));
-            moreKeysKeyboard = builder.build();
-            mMoreKeysKeyboardCache.put(key, moreKeysKeyboard);
+            moreKeysKeyboard = cacheKey.buildMoreKeysKeyboard(getContext(), getKeyboard(),
+                    newLabelPaint(key));
+            mMoreKeysKeyboardCache.put(cacheKey, moreKeysKeyboard);
         }
 
         final View container = key.isActionKey() ? mMoreKeysKeyboardForActionContainer
@@ -635,9 +646,130 @@ public final class MainKeyboardView extends KeyboardView implements DrawingProxy
         // {@link KeyboardView#showKeyPreview(PointerTracker)}.
         final int pointY = key.getY() + mKeyPreviewDrawParams.getVisibleOffset();
         moreKeysKeyboardView.showMoreKeysPanel(this, this, pointX, pointY, mKeyboardActionListener);
+        if (DebugFlags.DEBUG_ENABLED) {
+            Log.d(TAG, "More keys panel of " + key.toShortString() + " shown in "
+                    + (SystemClock.uptimeMillis() - startTime) + " ms"
+                    + (isCached ? " (cached)" : " (built)"));
+        }
         return moreKeysKeyboardView;
     }
 
+    private MoreKeysKeyboardCacheKey newMoreKeysKeyboardCacheKey(@Nonnull final Key key,
+            @Nonnull final Keyboard keyboard) {
+        // The width of the preview of the key is measured at
+        // {@link KeyPreviewChoreographer#prepareKeyPreviews(Keyboard,KeyDrawParams,ViewGroup)},
+        // though there may be some chances that the value is zero. <code>width == 0</code>
+        // will cause zero-division error at
+        // {@link MoreKeysKeyboardParams#setParameters(int,int,int,int,int,int,boolean,int)}.
+        final int keyPreviewVisibleWidth =
+                mKeyPreviewChoreographer.getKeyPreviewVisibleWidth(key);
+        final boolean isSingleMoreKeyWithPreview = mKeyPreviewDrawParams.isPopupEnabled()
+                && !key.noKeyPreview() && key.getMoreKeys().length == 1
+                && keyPreviewVisibleWidth > 0;
+        if (!isSingleMoreKeyWithPreview) {
+            return new MoreKeysKeyboardCacheKey(key, keyboard.mId, false /* withPreview */,
+                    0 /* keyPreviewVisibleWidth */, 0 /* keyPreviewVisibleHeight */);
+        }
+        return new MoreKeysKeyboardCacheKey(key, keyboard.mId, true /* withPreview */,
+                keyPreviewVisibleWidth, mKeyPreviewChoreographer.getKeyPreviewVisibleHeight());
+    }
+
+    /**
+     * Builds the more keys keyboards of the keys of the given keyboard that are not cached yet
+     * in the background, so that long pressing a key only has to show its panel.
+     */
+    private void preloadMoreKeysKeyboards(@Nonnull final Keyboard keyboard) {
+        final int generation = mMoreKeysKeyboardPreloadGeneration.incrementAndGet();
+        final ArrayList<MoreKeysKeyboardCacheKey> cacheKeys = new ArrayList<>();
+        final ArrayList<Paint> labelPaints = new ArrayList<>();
+        for (final Key key : keyboard.getSortedKeys()) {
+            if (key.getMoreKeys() == null) {
+                continue;
+            }
+            final MoreKeysKeyboardCacheKey cacheKey = newMoreKeysKeyboardCacheKey(key, keyboard);
+            if (mMoreKeysKeyboardCache.get(cacheKey) != null) {
+                continue;
+            }
+            cacheKeys.add(cacheKey);
+            // The key draw parameters change with the keyboard, take the paints now.
+            labelPaints.add(newLabelPaint(key));
+        }
+        if (cacheKeys.isEmpty()) {
+            return;
+        }
+        final Context context = getContext();
+        ExecutorUtils.getBackgroundExecutor(ExecutorUtils.KEYBOARD).execute(new Runnable() {
+            @Override
+            public void run() {
+                final long startTime = SystemClock.uptimeMillis();
+                for (int i = 0; i < cacheKeys.size(); i++) {
+                    if (generation != mMoreKeysKeyboardPreloadGeneration.get()) {
+                        return;
+                    }
+                    final MoreKeysKeyboardCacheKey cacheKey = cacheKeys.get(i);
+                    if (mMoreKeysKeyboardCache.get(cacheKey) == null) {
+                        mMoreKeysKeyboardCache.put(cacheKey, cacheKey.buildMoreKeysKeyboard(
+                                context, keyboard, labelPaints.get(i)));
+                    }
+                }
+                if (DebugFlags.DEBUG_ENABLED) {
+                    Log.d(TAG, cacheKeys.size() + " more keys keyboards preloaded in "
+                            + (SystemClock.uptimeMillis() - startTime) + " ms");
+                }
+            }
+        });
+    }
+
+    /**
+     * Identifies a more keys keyboard by its parent key and the id of the layout the key belongs
+     * to, plus, for a single more key aligned with the key preview, the geometry of that preview.
+     */
+    private static final class MoreKeysKeyboardCacheKey {
+        private final Key mKey;
+        private final KeyboardId mKeyboardId;
+        private final boolean mIsSingleMoreKeyWithPreview;
+        private final int mKeyPreviewVisibleWidth;
+        private final int mKeyPreviewVisibleHeight;
+        private final int mHashCode;
+
+        MoreKeysKeyboardCacheKey(final Key key, final KeyboardId keyboardId,
+                final boolean isSingleMoreKeyWithPreview, final int keyPreviewVisibleWidth,
+                final int keyPreviewVisibleHeight) {
+            mKey = key;
+            mKeyboardId = keyboardId;
+            mIsSingleMoreKeyWithPreview = isSingleMoreKeyWithPreview;
+            mKeyPreviewVisibleWidth = keyPreviewVisibleWidth;
+            mKeyPreviewVisibleHeight = keyPreviewVisibleHeight;
+            mHashCode = Arrays.hashCode(new Object[] {
+                    key, keyboardId, isSingleMoreKeyWithPreview, keyPreviewVisibleWidth,
+                    keyPreviewVisibleHeight });
+        }
+
+        Keyboard buildMoreKeysKeyboard(final Context context, final Keyboard parentKeyboard,
+                final Paint labelPaint) {
+            return new MoreKeysKeyboard.Builder(context, mKey, parentKeyboard,
+                    mIsSingleMoreKeyWithPreview, mKeyPreviewVisibleWidth,
+                    mKeyPreviewVisibleHeight, labelPaint).build();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof MoreKeysKeyboardCacheKey)) {
+                return false;
+            }
+            final MoreKeysKeyboardCacheKey other = (MoreKeysKeyboardCacheKey)o;
+            return mKey.equals(other.mKey) && mKeyboardId.equals(other.mKeyboardId)
+                    && mIsSingleMoreKeyWithPreview == other.mIsSingleMoreKeyWithPreview
+                    && mKeyPreviewVisibleWidth == other.mKeyPreviewVisibleWidth
+                    && mKeyPreviewVisibleHeight == other.mKeyPreviewVisibleHeight;
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+    }
+
     public boolean isInDraggingFinger() {
         if (isShowingMoreKeysPanel()) {
             return true;
@@ -729,7 +861,7 @@ public final class MainKeyboardView extends KeyboardView implements DrawingProxy
 
     public void closing() {
         cancelAllOngoingEvents();
-        mMoreKeysKeyboardCache.clear();
+        mMoreKeysKeyboardCache.evictAll();
     }
 
     public void onHideWindow() {
@@ -17,8 +17,9 @@
 package org.dslul.openboard.inputmethod.keyboard.emoji;
 
 import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
 import android.text.TextUtils;
-import android.util.Log;
 
 import org.dslul.openboard.inputmethod.keyboard.Key;
 import org.dslul.openboard.inputmethod.keyboard.Keyboard;
@@ -30,7 +31,6 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
@@ -38,9 +38,12 @@ import java.util.List;
  * This is a Keyboard class where you can add keys dynamically shown in a grid layout
  */
 final class DynamicGridKeyboard extends Keyboard {
-    private static final String TAG = DynamicGridKeyboard.class.getSimpleName();
     private static final int TEMPLATE_KEY_CODE_0 = 0x30;
     private static final int TEMPLATE_KEY_CODE_1 = 0x31;
+    // Recent keys are written at most this long after the first change since the last write,
+    // and when the palettes are closed, instead of on every tap.
+    private static final long SAVE_RECENT_KEYS_DELAY_MILLIS = 2000;
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
     private final Object mLock = new Object();
 
     private final SharedPreferences mPrefs;
@@ -54,6 +57,14 @@ final class DynamicGridKeyboard extends Keyboard {
     private final ArrayDeque<Key> mPendingKeys = new ArrayDeque<>();
 
     private List<Key> mCachedGridKeys;
+    // Guarded by mLock.
+    private boolean mHasUnsavedRecentKeys;
+    private final Runnable mSaveRecentKeysRunnable = new Runnable() {
+        @Override
+        public void run() {
+            saveRecentKeysIfChanged();
+        }
+    };
 
     public DynamicGridKeyboard(final SharedPreferences prefs, final Keyboard templateKeyboard,
             final int maxKeyCount, final int categoryId) {
@@ -97,15 +108,23 @@ final class DynamicGridKeyboard extends Keyboard {
         synchronized (mLock) {
             while (!mPendingKeys.isEmpty()) {
                 addKey(mPendingKeys.pollFirst(), true);
+                mHasUnsavedRecentKeys = true;
             }
-            saveRecentKeys();
         }
+        saveRecentKeysIfChanged();
     }
 
     public void addKeyFirst(final Key usedKey) {
         addKey(usedKey, true);
-        if (mIsRecents) {
-            saveRecentKeys();
+        if (mIsRecents && usedKey != null) {
+            synchronized (mLock) {
+                if (mHasUnsavedRecentKeys) {
+                    // A write is already scheduled, it will include this key.
+                    return;
+                }
+                mHasUnsavedRecentKeys = true;
+            }
+            sHandler.postDelayed(mSaveRecentKeysRunnable, SAVE_RECENT_KEYS_DELAY_MILLIS);
         }
     }
 
@@ -152,58 +171,27 @@ final class DynamicGridKeyboard extends Keyboard {
         }
     }
 
-    private void saveRecentKeys() {
-        final ArrayList<Object> keys = new ArrayList<>();
-        for (final Key key : mGridKeys) {
-            if (key.getOutputText() != null) {
-                keys.add(key.getOutputText());
-            } else {
-                keys.add(key.getCode());
-            }
-        }
-        final String jsonStr = JsonUtils.listToJsonStr(keys);
-        Settings.writeEmojiRecentKeys(mPrefs, jsonStr);
-    }
-
-    private static Key getKeyByCode(final Collection<DynamicGridKeyboard> keyboards,
-            final int code) {
-        for (final DynamicGridKeyboard keyboard : keyboards) {
-            for (final Key key : keyboard.getSortedKeys()) {
-                if (key.getCode() == code) {
-                    return key;
-                }
+    private void saveRecentKeysIfChanged() {
+        sHandler.removeCallbacks(mSaveRecentKeysRunnable);
+        final String jsonStr;
+        synchronized (mLock) {
+            if (!mHasUnsavedRecentKeys) {
+                return;
             }
-        }
-        return null;
-    }
-
-    private static Key getKeyByOutputText(final Collection<DynamicGridKeyboard> keyboards,
-            final String outputText) {
-        for (final DynamicGridKeyboard keyboard : keyboards) {
-            for (final Key key : keyboard.getSortedKeys()) {
-                if (outputText.equals(key.getOutputText())) {
-                    return key;
-                }
+            mHasUnsavedRecentKeys = false;
+            final ArrayList<Object> keys = new ArrayList<>(mGridKeys.size());
+            for (final Key key : mGridKeys) {
+                keys.add(EmojiCategory.getCodeOrOutputText(key));
             }
+            jsonStr = JsonUtils.listToJsonStr(keys);
         }
-        return null;
+        Settings.writeEmojiRecentKeys(mPrefs, jsonStr);
     }
 
-    public void loadRecentKeys(final Collection<DynamicGridKeyboard> keyboards) {
+    public void loadRecentKeys(final EmojiCategory emojiCategory) {
         final String str = Settings.readEmojiRecentKeys(mPrefs);
         final List<Object> keys = JsonUtils.jsonStrToList(str);
-        for (final Object o : keys) {
-            final Key key;
-            if (o instanceof Integer) {
-                final int code = (Integer)o;
-                key = getKeyByCode(keyboards, code);
-            } else if (o instanceof String) {
-                final String outputText = (String)o;
-                key = getKeyByOutputText(keyboards, outputText);
-            } else {
-                Log.w(TAG, "Invalid object: " + o);
-                continue;
-            }
+        for (final Key key : emojiCategory.getCategoryKeys(keys)) {
             addKeyLast(key);
         }
     }
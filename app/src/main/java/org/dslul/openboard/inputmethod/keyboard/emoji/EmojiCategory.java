@@ -21,14 +21,18 @@ import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.graphics.Paint;
 import android.graphics.Rect;
+import android.os.Build;
 import android.util.Log;
+import android.util.SparseArray;
 
 import androidx.core.graphics.PaintCompat;
 import org.dslul.openboard.inputmethod.keyboard.Key;
 import org.dslul.openboard.inputmethod.keyboard.Keyboard;
 import org.dslul.openboard.inputmethod.keyboard.KeyboardId;
 import org.dslul.openboard.inputmethod.keyboard.KeyboardLayoutSet;
+import org.dslul.openboard.inputmethod.keyboard.internal.CodesArrayParser;
 import org.dslul.openboard.inputmethod.latin.R;
+import org.dslul.openboard.inputmethod.latin.common.Constants;
 import org.dslul.openboard.inputmethod.latin.settings.Settings;
 
 import java.util.ArrayList;
@@ -117,6 +121,22 @@ final class EmojiCategory {
             KeyboardId.ELEMENT_EMOJI_CATEGORY9,
             KeyboardId.ELEMENT_EMOJI_CATEGORY10 };
 
+    // The arrays the category keyboards are generated from, see kbd_emoji_category*.xml. Reading
+    // them is much cheaper than inflating the keyboards, so they are used to count the pages of a
+    // category and to find where a recent key comes from.
+    private static final int[] sCategoryKeySpecsArrayId = {
+            0 /* recents */,
+            R.array.emoji_smileys_emotion,
+            R.array.emoji_people_body,
+            R.array.emoji_animals_nature,
+            R.array.emoji_food_drink,
+            R.array.emoji_travel_places,
+            R.array.emoji_activities,
+            R.array.emoji_objects,
+            R.array.emoji_symbols,
+            R.array.emoji_flags,
+            R.array.emoji_emoticons };
+
     private final SharedPreferences mPrefs;
     private final Resources mRes;
     private final int mMaxRecentsKeyCount;
@@ -126,6 +146,11 @@ final class EmojiCategory {
     private final ArrayList<CategoryProperties> mShownCategories = new ArrayList<>();
     private final ConcurrentHashMap<Long, DynamicGridKeyboard> mCategoryKeyboardMap =
             new ConcurrentHashMap<>();
+    // Guarded by mCategoryKeyboardMap.
+    private final SparseArray<List<Key>> mSortedCategoryKeys = new SparseArray<>();
+    private final SparseArray<HashMap<Object, Key>> mCategoryKeysByCodeOrOutputText =
+            new SparseArray<>();
+    private int mMaxKeyCountPerPage;
 
     private int mCurrentCategoryId = EmojiCategory.ID_UNSPECIFIED;
     private int mCurrentCategoryPageId = 0;
@@ -159,7 +184,7 @@ final class EmojiCategory {
 
         DynamicGridKeyboard recentsKbd =
                 getKeyboard(EmojiCategory.ID_RECENTS, 0 /* categoryPageId */);
-        recentsKbd.loadRecentKeys(mCategoryKeyboardMap.values());
+        recentsKbd.loadRecentKeys(this);
 
         mCurrentCategoryId = Settings.readLastShownEmojiCategoryId(mPrefs, defaultCategoryId);
         mCurrentCategoryPageId = Settings.readLastShownEmojiCategoryPageId(mPrefs, 0);
@@ -176,8 +201,7 @@ final class EmojiCategory {
     }
 
     private void addShownCategoryId(final int categoryId) {
-        // Load a keyboard of categoryId
-        getKeyboard(categoryId, 0 /* categoryPageId */);
+        // Pages are only built when they are displayed, see {@link #getKeyboard(int, int)}.
         final CategoryProperties properties =
                 new CategoryProperties(categoryId, computeCategoryPageCount(categoryId));
         mShownCategories.add(properties);
@@ -284,8 +308,100 @@ final class EmojiCategory {
     }
 
     private int computeCategoryPageCount(final int categoryId) {
-        final Keyboard keyboard = mLayoutSet.getKeyboard(sCategoryElementId[categoryId]);
-        return (keyboard.getSortedKeys().size() - 1) / computeMaxKeyCountPerPage() + 1;
+        if (categoryId == EmojiCategory.ID_RECENTS) {
+            return 1;
+        }
+        return (computeCategoryKeyCount(categoryId) - 1) / getMaxKeyCountPerPage() + 1;
+    }
+
+    private static boolean isTextsArrayCategory(final int categoryId) {
+        return categoryId == EmojiCategory.ID_EMOTICONS;
+    }
+
+    // Counts the keys the category keyboard will have, skipping the same unsupported emojis as
+    // {@link org.dslul.openboard.inputmethod.keyboard.internal.KeyboardBuilder} does.
+    private int computeCategoryKeyCount(final int categoryId) {
+        final String[] keySpecs = mRes.getStringArray(sCategoryKeySpecsArrayId[categoryId]);
+        if (isTextsArrayCategory(categoryId)) {
+            return keySpecs.length;
+        }
+        int count = 0;
+        for (final String keySpec : keySpecs) {
+            if (Build.VERSION.SDK_INT >= CodesArrayParser.getMinSupportSdkVersion(keySpec)) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Resolves recent keys, saved as codes or output texts, to the category keys they were copied
+     * from. Only the keyboards of the categories that hold one of them are inflated.
+     */
+    public List<Key> getCategoryKeys(final List<Object> codesOrOutputTexts) {
+        final ArrayList<Key> keys = new ArrayList<>(codesOrOutputTexts.size());
+        if (codesOrOutputTexts.isEmpty()) {
+            return keys;
+        }
+        final HashMap<Object, Integer> categoryIds = buildKeyCategoryIndex();
+        for (final Object codeOrOutputText : codesOrOutputTexts) {
+            final Integer categoryId = categoryIds.get(codeOrOutputText);
+            final Key key = null == categoryId ? null
+                    : getCategoryKey(categoryId, codeOrOutputText);
+            if (key == null) {
+                Log.w(TAG, "Invalid object: " + codeOrOutputText);
+                continue;
+            }
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    // Maps the code, or the output text for keys that have one, of every supported emoji to its
+    // category, the same way the keys are saved in the recents.
+    private HashMap<Object, Integer> buildKeyCategoryIndex() {
+        final HashMap<Object, Integer> categoryIds = new HashMap<>();
+        for (final CategoryProperties prop : mShownCategories) {
+            final int categoryId = prop.mCategoryId;
+            if (categoryId == EmojiCategory.ID_RECENTS) {
+                continue;
+            }
+            final boolean isTextsArray = isTextsArrayCategory(categoryId);
+            for (final String keySpec : mRes.getStringArray(sCategoryKeySpecsArrayId[categoryId])) {
+                final Object codeOrOutputText;
+                if (isTextsArray) {
+                    codeOrOutputText = keySpec + (char)Constants.CODE_SPACE;
+                } else if (Build.VERSION.SDK_INT
+                        < CodesArrayParser.getMinSupportSdkVersion(keySpec)) {
+                    continue;
+                } else {
+                    final String outputText = CodesArrayParser.parseOutputText(keySpec);
+                    codeOrOutputText = outputText != null ? outputText
+                            : (Object)CodesArrayParser.parseCode(keySpec);
+                }
+                // The first category wins, as when looking the key up in each keyboard in turn.
+                if (!categoryIds.containsKey(codeOrOutputText)) {
+                    categoryIds.put(codeOrOutputText, categoryId);
+                }
+            }
+        }
+        return categoryIds;
+    }
+
+    private Key getCategoryKey(final int categoryId, final Object codeOrOutputText) {
+        synchronized (mCategoryKeyboardMap) {
+            getSortedCategoryKeys(categoryId);
+            return mCategoryKeysByCodeOrOutputText.get(categoryId).get(codeOrOutputText);
+        }
+    }
+
+    /**
+     * Returns what identifies the key in the recents: its output text if it has one, else its
+     * code.
+     */
+    public static Object getCodeOrOutputText(final Key key) {
+        final String outputText = key.getOutputText();
+        return outputText != null ? outputText : (Object)key.getCode();
     }
 
     // Returns a keyboard from the recycler view's adapter position.
@@ -316,32 +432,51 @@ final class EmojiCategory {
                 return kbd;
             }
 
+            // Only build the requested page: the adapter asks for the pages as they are scrolled
+            // into view, so opening the palettes no longer builds every page of every category.
+            final int keyCountPerPage = getMaxKeyCountPerPage();
+            final List<Key> sortedKeys = getSortedCategoryKeys(categoryId);
+            final DynamicGridKeyboard tempKeyboard = new DynamicGridKeyboard(mPrefs,
+                    mLayoutSet.getKeyboard(KeyboardId.ELEMENT_EMOJI_RECENTS),
+                    keyCountPerPage, categoryId);
+            final int endIndex = Math.min(sortedKeys.size(), (id + 1) * keyCountPerPage);
+            for (int index = id * keyCountPerPage; index < endIndex; ++index) {
+                tempKeyboard.addKeyLast(sortedKeys.get(index));
+            }
+            mCategoryKeyboardMap.put(categoryKeyboardMapKey, tempKeyboard);
+            return tempKeyboard;
+        }
+    }
+
+    // Must be called while holding the mCategoryKeyboardMap lock.
+    private List<Key> getSortedCategoryKeys(final int categoryId) {
+        List<Key> sortedKeys = mSortedCategoryKeys.get(categoryId);
+        if (sortedKeys == null) {
             final Keyboard keyboard = mLayoutSet.getKeyboard(sCategoryElementId[categoryId]);
-            final int keyCountPerPage = computeMaxKeyCountPerPage();
-            final Key[][] sortedKeysPages = sortKeysGrouped(
-                    keyboard.getSortedKeys(), keyCountPerPage);
-            for (int pageId = 0; pageId < sortedKeysPages.length; ++pageId) {
-                final DynamicGridKeyboard tempKeyboard = new DynamicGridKeyboard(mPrefs,
-                        mLayoutSet.getKeyboard(KeyboardId.ELEMENT_EMOJI_RECENTS),
-                        keyCountPerPage, categoryId);
-                for (final Key emojiKey : sortedKeysPages[pageId]) {
-                    if (emojiKey == null) {
-                        break;
-                    }
-                    tempKeyboard.addKeyLast(emojiKey);
+            final ArrayList<Key> keys = new ArrayList<>(keyboard.getSortedKeys());
+            Collections.sort(keys, EMOJI_KEY_COMPARATOR);
+            sortedKeys = keys;
+            mSortedCategoryKeys.put(categoryId, sortedKeys);
+            final HashMap<Object, Key> keysByCodeOrOutputText = new HashMap<>(keys.size() * 2);
+            for (final Key key : keys) {
+                final Object codeOrOutputText = getCodeOrOutputText(key);
+                if (!keysByCodeOrOutputText.containsKey(codeOrOutputText)) {
+                    keysByCodeOrOutputText.put(codeOrOutputText, key);
                 }
-                mCategoryKeyboardMap.put(
-                        getCategoryKeyboardMapKey(categoryId, pageId), tempKeyboard);
             }
-            return mCategoryKeyboardMap.get(categoryKeyboardMapKey);
+            mCategoryKeysByCodeOrOutputText.put(categoryId, keysByCodeOrOutputText);
         }
+        return sortedKeys;
     }
 
-    private int computeMaxKeyCountPerPage() {
-        final DynamicGridKeyboard tempKeyboard = new DynamicGridKeyboard(mPrefs,
-                mLayoutSet.getKeyboard(KeyboardId.ELEMENT_EMOJI_RECENTS),
-                0, 0);
-        return MAX_LINE_COUNT_PER_PAGE * tempKeyboard.getColumnsCount();
+    private int getMaxKeyCountPerPage() {
+        if (mMaxKeyCountPerPage == 0) {
+            // The pages share the geometry of the recents keyboard, which is built first.
+            mMaxKeyCountPerPage = MAX_LINE_COUNT_PER_PAGE
+                    * getKeyboard(EmojiCategory.ID_RECENTS, 0 /* categoryPageId */)
+                            .getColumnsCount();
+        }
+        return mMaxKeyCountPerPage;
     }
 
     private static final Comparator<Key> EMOJI_KEY_COMPARATOR = (lhs, rhs) -> {
@@ -363,17 +498,6 @@ final class EmojiCategory {
         return lhs.getCode() < rhs.getCode() ? -1 : 1;
     };
 
-    private static Key[][] sortKeysGrouped(final List<Key> inKeys, final int maxPageCount) {
-        final ArrayList<Key> keys = new ArrayList<>(inKeys);
-        Collections.sort(keys, EMOJI_KEY_COMPARATOR);
-        final int pageCount = (keys.size() - 1) / maxPageCount + 1;
-        final Key[][] retval = new Key[pageCount][maxPageCount];
-        for (int i = 0; i < keys.size(); ++i) {
-            retval[i / maxPageCount][i % maxPageCount] = keys.get(i);
-        }
-        return retval;
-    }
-
     private static boolean canShowFlagEmoji() {
         Paint paint = new Paint();
         String switzerland = "\uD83C\uDDE8\uD83C\uDDED"; //  U+1F1E8 U+1F1ED Flag for Switzerland
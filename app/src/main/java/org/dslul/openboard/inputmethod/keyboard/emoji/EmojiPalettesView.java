@@ -20,11 +20,14 @@ import android.content.Context;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.graphics.Color;
+import android.os.SystemClock;
 import android.util.AttributeSet;
+import android.util.Log;
 import android.util.TypedValue;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.ImageButton;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
@@ -48,6 +51,7 @@ import org.dslul.openboard.inputmethod.latin.AudioAndHapticFeedbackManager;
 import org.dslul.openboard.inputmethod.latin.R;
 import org.dslul.openboard.inputmethod.latin.RichInputMethodSubtype;
 import org.dslul.openboard.inputmethod.latin.common.Constants;
+import org.dslul.openboard.inputmethod.latin.define.DebugFlags;
 import org.dslul.openboard.inputmethod.latin.settings.Settings;
 import org.dslul.openboard.inputmethod.latin.settings.SettingsValues;
 import org.dslul.openboard.inputmethod.latin.utils.DeviceProtectedUtils;
@@ -72,6 +76,8 @@ import static org.dslul.openboard.inputmethod.latin.common.Constants.NOT_A_COORD
 public final class EmojiPalettesView extends LinearLayout
         implements OnTabChangeListener, View.OnClickListener, View.OnTouchListener,
         OnKeyEventListener {
+    private static final String TAG = EmojiPalettesView.class.getSimpleName();
+
     private final int mFunctionalKeyBackgroundId;
     private final int mSpacebarBackgroundId;
     private final boolean mCategoryIndicatorEnabled;
@@ -122,8 +128,13 @@ public final class EmojiPalettesView extends LinearLayout
         final KeyboardLayoutSet layoutSet = builder.build();
         final TypedArray emojiPalettesViewAttr = context.obtainStyledAttributes(attrs,
                 R.styleable.EmojiPalettesView, defStyle, R.style.EmojiPalettesView);
+        final long categoryStartTime = SystemClock.uptimeMillis();
         mEmojiCategory = new EmojiCategory(DeviceProtectedUtils.getSharedPreferences(context),
                 res, layoutSet, emojiPalettesViewAttr);
+        if (DebugFlags.DEBUG_ENABLED) {
+            Log.d(TAG, "Emoji categories set up in "
+                    + (SystemClock.uptimeMillis() - categoryStartTime) + " ms");
+        }
         mCategoryIndicatorEnabled = emojiPalettesViewAttr.getBoolean(
                 R.styleable.EmojiPalettesView_categoryIndicatorEnabled, false);
         mCategoryIndicatorDrawableResId = emojiPalettesViewAttr.getResourceId(
@@ -374,6 +385,7 @@ public final class EmojiPalettesView extends LinearLayout
     public void startEmojiPalettes(final String switchToAlphaLabel,
                                    final KeyVisualAttributes keyVisualAttr,
                                    final KeyboardIconsSet iconSet) {
+        final long startTime = SystemClock.uptimeMillis();
         final int deleteIconResId = iconSet.getIconResourceId(KeyboardIconsSet.NAME_DELETE_KEY);
         if (deleteIconResId != 0) {
             mDeleteKey.setImageResource(deleteIconResId);
@@ -391,6 +403,24 @@ public final class EmojiPalettesView extends LinearLayout
             setCurrentCategoryAndPageId(mEmojiCategory.getCurrentCategoryId(), mEmojiCategory.getCurrentCategoryPageId(),
                     true /* force */);
         }
+        if (DebugFlags.DEBUG_ENABLED) {
+            reportTimeToFirstFrame(startTime);
+        }
+    }
+
+    // Logs the time from starting the palettes to drawing them, which includes building the
+    // keyboards of the pages shown first.
+    private void reportTimeToFirstFrame(final long startTime) {
+        final ViewTreeObserver observer = getViewTreeObserver();
+        observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                getViewTreeObserver().removeOnPreDrawListener(this);
+                Log.d(TAG, "Emoji palettes first frame after "
+                        + (SystemClock.uptimeMillis() - startTime) + " ms");
+                return true;
+            }
+        });
     }
 
     public void stopEmojiPalettes() {
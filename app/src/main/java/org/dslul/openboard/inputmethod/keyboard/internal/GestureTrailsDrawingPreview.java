@@ -24,15 +24,21 @@ import android.graphics.Paint;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
+import android.os.Build;
 import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
 import android.util.SparseArray;
 
 import org.dslul.openboard.inputmethod.keyboard.PointerTracker;
+import org.dslul.openboard.inputmethod.latin.define.DebugFlags;
 
 /**
  * Draw preview graphics of multiple gesture trails during gesture input.
  */
 public final class GestureTrailsDrawingPreview extends AbstractDrawingPreview implements Runnable {
+    private static final String TAG = GestureTrailsDrawingPreview.class.getSimpleName();
+
     private final SparseArray<GestureTrailDrawingPoints> mGestureTrails = new SparseArray<>();
     private final GestureTrailDrawingParams mDrawingParams;
     private final Paint mGesturePaint;
@@ -47,6 +53,13 @@ public final class GestureTrailsDrawingPreview extends AbstractDrawingPreview im
 
     private final Handler mDrawingHandler = new Handler();
 
+    // Frame time metrics of the current trail animation, logged when it ends.
+    private int mFrameCount;
+    private long mTotalFrameTimeNanos;
+    private long mMaxFrameTimeNanos;
+    private long mMaxFrameIntervalNanos;
+    private long mLastFrameStartNanos;
+
     public GestureTrailsDrawingPreview(final TypedArray mainKeyboardViewAttr) {
         mDrawingParams = new GestureTrailDrawingParams(mainKeyboardViewAttr);
         final Paint gesturePaint = new Paint();
@@ -122,6 +135,12 @@ public final class GestureTrailsDrawingPreview extends AbstractDrawingPreview im
         invalidateDrawingView();
     }
 
+    // Shadow layers are only drawn by hardware accelerated canvases from P on.
+    private boolean canDrawWithHardware(final Canvas canvas) {
+        return canvas.isHardwareAccelerated() && (!mDrawingParams.mTrailShadowEnabled
+                || Build.VERSION.SDK_INT >= Build.VERSION_CODES.P);
+    }
+
     /**
      * Draws the preview
      * @param canvas The canvas where the preview is drawn.
@@ -131,14 +150,42 @@ public final class GestureTrailsDrawingPreview extends AbstractDrawingPreview im
         if (!isPreviewEnabled()) {
             return;
         }
-        mayAllocateOffscreenBuffer();
-        // Draw gesture trails to offscreen buffer.
-        final boolean needsUpdatingGestureTrail = drawGestureTrails(
-                mOffscreenCanvas, mGesturePaint, mDirtyRect);
+        final long frameStartNanos = SystemClock.elapsedRealtimeNanos();
+        final boolean needsUpdatingGestureTrail = canDrawWithHardware(canvas)
+                ? drawPreviewWithHardware(canvas) : drawPreviewWithOffscreenBuffer(canvas);
         if (needsUpdatingGestureTrail) {
             mDrawingHandler.removeCallbacks(this);
             mDrawingHandler.postDelayed(this, mDrawingParams.mUpdateInterval);
         }
+        if (DebugFlags.DEBUG_ENABLED && (needsUpdatingGestureTrail || mFrameCount > 0)) {
+            recordFrameTime(frameStartNanos, needsUpdatingGestureTrail);
+        }
+    }
+
+    /**
+     * Draws the trails straight into the canvas. The drawing is only recorded here and
+     * rasterized by the render thread, which spares the UI thread drawing into a bitmap and
+     * uploading it for every frame of the animation.
+     * @return true if some gesture trails remain to be drawn
+     */
+    private boolean drawPreviewWithHardware(final Canvas canvas) {
+        // The trail segments are drawn in SRC mode so that their overlaps don't accumulate
+        // alpha, which needs a layer of their own over what is below them.
+        final int saveCount = canvas.saveLayer(0, -mOffscreenOffsetY, mOffscreenWidth,
+                mOffscreenHeight - mOffscreenOffsetY, null, Canvas.ALL_SAVE_FLAG);
+        final boolean needsUpdatingGestureTrail = drawGestureTrails(
+                canvas, mGesturePaint, mDirtyRect);
+        canvas.restoreToCount(saveCount);
+        // Nothing is left in an offscreen buffer to clear on the next frame.
+        mDirtyRect.setEmpty();
+        return needsUpdatingGestureTrail;
+    }
+
+    private boolean drawPreviewWithOffscreenBuffer(final Canvas canvas) {
+        mayAllocateOffscreenBuffer();
+        // Draw gesture trails to offscreen buffer.
+        final boolean needsUpdatingGestureTrail = drawGestureTrails(
+                mOffscreenCanvas, mGesturePaint, mDirtyRect);
         // Transfer offscreen buffer to screen.
         if (!mDirtyRect.isEmpty()) {
             mOffscreenSrcRect.set(mDirtyRect);
@@ -147,6 +194,31 @@ public final class GestureTrailsDrawingPreview extends AbstractDrawingPreview im
             // Note: Defer clearing the dirty rectangle here because we will get cleared
             // rectangle on the canvas.
         }
+        return needsUpdatingGestureTrail;
+    }
+
+    private void recordFrameTime(final long frameStartNanos,
+            final boolean needsUpdatingGestureTrail) {
+        final long frameTimeNanos = SystemClock.elapsedRealtimeNanos() - frameStartNanos;
+        if (mFrameCount > 0) {
+            mMaxFrameIntervalNanos = Math.max(mMaxFrameIntervalNanos,
+                    frameStartNanos - mLastFrameStartNanos);
+        }
+        mLastFrameStartNanos = frameStartNanos;
+        mFrameCount++;
+        mTotalFrameTimeNanos += frameTimeNanos;
+        mMaxFrameTimeNanos = Math.max(mMaxFrameTimeNanos, frameTimeNanos);
+        if (needsUpdatingGestureTrail) {
+            return;
+        }
+        Log.d(TAG, "Gesture trail: " + mFrameCount + " frames, draw time average "
+                + (mTotalFrameTimeNanos / mFrameCount / 1000) + " us, max "
+                + (mMaxFrameTimeNanos / 1000) + " us, max frame interval "
+                + (mMaxFrameIntervalNanos / 1000000) + " ms");
+        mFrameCount = 0;
+        mTotalFrameTimeNanos = 0;
+        mMaxFrameTimeNanos = 0;
+        mMaxFrameIntervalNanos = 0;
     }
 
     /**
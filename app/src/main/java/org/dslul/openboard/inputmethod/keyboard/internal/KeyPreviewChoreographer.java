@@ -21,6 +21,7 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import org.dslul.openboard.inputmethod.keyboard.Key;
+import org.dslul.openboard.inputmethod.keyboard.Keyboard;
 import org.dslul.openboard.inputmethod.latin.common.CoordinateUtils;
 import org.dslul.openboard.inputmethod.latin.utils.ViewLayoutUtils;
 
@@ -39,6 +40,21 @@ public final class KeyPreviewChoreographer {
     // Map from {@link Key} to {@link KeyPreviewView} that is currently being displayed as key
     // preview.
     private final HashMap<Key,KeyPreviewView> mShowingKeyPreviewViews = new HashMap<>();
+    // The number of {@link KeyPreviewView}s created so far, free or showing.
+    private int mKeyPreviewViewCount;
+    // Enough {@link KeyPreviewView}s for the previews of a few fingers typing at once are
+    // created ahead of the first key press.
+    private static final int PREPARED_KEY_PREVIEW_VIEW_COUNT = 3;
+
+    // Map from {@link Key} to the measured width of its preview, which only depends on the
+    // visual of the key. Keys are compared by value, so the widths stay valid for the keys of a
+    // reloaded keyboard.
+    private final HashMap<Key,Integer> mKeyPreviewWidths = new HashMap<>();
+    private static final int MAX_KEY_PREVIEW_WIDTHS_COUNT = 1024;
+    // The paddings of the key preview background around its visible part, the same for every
+    // preview. Recorded when measuring a preview.
+    private int mKeyPreviewHorizontalPadding;
+    private int mKeyPreviewVerticalPadding;
 
     private final KeyPreviewDrawParams mParams;
 
@@ -55,13 +71,74 @@ public final class KeyPreviewChoreographer {
         if (keyPreviewView != null) {
             return keyPreviewView;
         }
+        return newKeyPreviewView(placerView);
+    }
+
+    private KeyPreviewView newKeyPreviewView(final ViewGroup placerView) {
         final Context context = placerView.getContext();
-        keyPreviewView = new KeyPreviewView(context, null /* attrs */);
+        final KeyPreviewView keyPreviewView = new KeyPreviewView(context, null /* attrs */);
         keyPreviewView.setBackgroundResource(mParams.mPreviewBackgroundResId);
         placerView.addView(keyPreviewView, ViewLayoutUtils.newLayoutParam(placerView, 0, 0));
+        mKeyPreviewViewCount++;
         return keyPreviewView;
     }
 
+    /**
+     * Creates the key preview views ahead of the first key press, and measures the previews of
+     * the keys of the keyboard that have not been measured yet, so that showing a preview then
+     * only has to set its visual and place it.
+     */
+    public void prepareKeyPreviews(final Keyboard keyboard, final KeyDrawParams drawParams,
+            final ViewGroup placerView) {
+        while (mKeyPreviewViewCount < PREPARED_KEY_PREVIEW_VIEW_COUNT) {
+            final KeyPreviewView keyPreviewView = newKeyPreviewView(placerView);
+            keyPreviewView.setVisibility(View.INVISIBLE);
+            mFreeKeyPreviewViews.add(keyPreviewView);
+        }
+        final KeyPreviewView measuringView = mFreeKeyPreviewViews.peek();
+        if (measuringView == null) {
+            return;
+        }
+        if (mKeyPreviewWidths.size() > MAX_KEY_PREVIEW_WIDTHS_COUNT) {
+            mKeyPreviewWidths.clear();
+        }
+        for (final Key key : keyboard.getSortedKeys()) {
+            if (key.noKeyPreview() || key.isSpacer() || mKeyPreviewWidths.containsKey(key)) {
+                continue;
+            }
+            measuringView.setPreviewVisual(key, keyboard.mIconsSet, drawParams);
+            mKeyPreviewWidths.put(key, measureKeyPreview(measuringView));
+        }
+    }
+
+    private int measureKeyPreview(final KeyPreviewView keyPreviewView) {
+        keyPreviewView.measure(
+                ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+        mKeyPreviewHorizontalPadding =
+                keyPreviewView.getPaddingLeft() + keyPreviewView.getPaddingRight();
+        mKeyPreviewVerticalPadding =
+                keyPreviewView.getPaddingTop() + keyPreviewView.getPaddingBottom();
+        return keyPreviewView.getMeasuredWidth();
+    }
+
+    /**
+     * Returns the width of the visible part of the preview of the key, as
+     * {@link KeyPreviewDrawParams#getVisibleWidth()} is once the preview is shown, or 0 if the
+     * preview has not been measured yet.
+     */
+    public int getKeyPreviewVisibleWidth(final Key key) {
+        final Integer previewWidth = mKeyPreviewWidths.get(key);
+        return previewWidth == null ? 0 : previewWidth - mKeyPreviewHorizontalPadding;
+    }
+
+    /**
+     * Returns the height of the visible part of the key previews, as
+     * {@link KeyPreviewDrawParams#getVisibleHeight()} is once a preview is shown.
+     */
+    public int getKeyPreviewVisibleHeight() {
+        return mParams.mPreviewHeight - mKeyPreviewVerticalPadding;
+    }
+
     public boolean isShowingKeyPreview(final Key key) {
         return mShowingKeyPreviewViews.containsKey(key);
     }
@@ -94,10 +171,15 @@ public final class KeyPreviewChoreographer {
             final KeyboardIconsSet iconsSet, final KeyDrawParams drawParams,
             final int keyboardViewWidth, final int[] originCoords) {
         keyPreviewView.setPreviewVisual(key, iconsSet, drawParams);
-        keyPreviewView.measure(
-                ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT);
-        mParams.setGeometry(keyPreviewView);
-        final int previewWidth = keyPreviewView.getMeasuredWidth();
+        final Integer cachedPreviewWidth = mKeyPreviewWidths.get(key);
+        final int previewWidth;
+        if (cachedPreviewWidth != null) {
+            previewWidth = cachedPreviewWidth;
+        } else {
+            previewWidth = measureKeyPreview(keyPreviewView);
+            mKeyPreviewWidths.put(key, previewWidth);
+        }
+        mParams.setGeometry(keyPreviewView, previewWidth);
         final int previewHeight = mParams.mPreviewHeight;
         final int keyDrawWidth = key.getDrawWidth();
         // The key preview is horizontally aligned with the center of the visible part of the
@@ -77,7 +77,10 @@ public final class KeyPreviewDrawParams {
     }
 
     public void setGeometry(final View previewTextView) {
-        final int previewWidth = previewTextView.getMeasuredWidth();
+        setGeometry(previewTextView, previewTextView.getMeasuredWidth());
+    }
+
+    public void setGeometry(final View previewTextView, final int previewWidth) {
         // The width and height of visible part of the key preview background. The content marker
         // of the background 9-patch have to cover the visible part of the background.
         mVisibleWidth = previewWidth - previewTextView.getPaddingLeft()
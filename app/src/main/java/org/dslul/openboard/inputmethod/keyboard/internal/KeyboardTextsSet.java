@@ -31,12 +31,13 @@ import java.util.Locale;
 public final class KeyboardTextsSet {
     public static final String PREFIX_TEXT = "!text/";
     private static final String PREFIX_RESOURCE = "!string/";
-    public static final String SWITCH_TO_ALPHA_KEY_LABEL = "keylabel_to_alpha";
+    public static final int SWITCH_TO_ALPHA_KEY_LABEL = KeyboardTextsTable.KEYLABEL_TO_ALPHA;
 
     private static final char BACKSLASH = Constants.CODE_BACKSLASH;
     private static final int MAX_REFERENCE_INDIRECTION = 10;
 
     private Resources mResources;
+    private Locale mLocale;
     private Locale mResourceLocale;
     private String mResourcePackageName;
     private String[] mTextsTable;
@@ -53,6 +54,7 @@ public final class KeyboardTextsSet {
     public void setLocale(final Locale locale, final Resources res,
             final String resourcePackageName) {
         mResources = res;
+        mLocale = locale;
         // Null means the current system locale.
         mResourceLocale = SubtypeLocaleUtils.NO_LANGUAGE.equals(locale.toString()) ? null : locale;
         mResourcePackageName = resourcePackageName;
@@ -60,7 +62,15 @@ public final class KeyboardTextsSet {
     }
 
     public String getText(final String name) {
-        return KeyboardTextsTable.getText(name, mTextsTable);
+        final int id = KeyboardTextsTable.getTextId(name);
+        if (id == KeyboardTextsTable.NOT_A_TEXT_ID) {
+            throw new RuntimeException("Unknown text name=" + name + " locale=" + mLocale);
+        }
+        return getText(id);
+    }
+
+    public String getText(final int id) {
+        return KeyboardTextsTable.getText(id, mTextsTable);
     }
 
     private static int searchTextNameEnd(final String text, final int start) {
@@ -33,14 +33,11 @@ import org.dslul.openboard.inputmethod.latin.utils.DictionaryInfoUtils;
 import org.dslul.openboard.inputmethod.latin.utils.DictionaryInfoUtils.DictionaryInfo;
 import org.dslul.openboard.inputmethod.latin.utils.MetadataFileUriGetter;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.Closeable;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
@@ -53,18 +50,6 @@ public final class BinaryDictionaryFileDumper {
     private static final String TAG = BinaryDictionaryFileDumper.class.getSimpleName();
     private static final boolean DEBUG = false;
 
-    /**
-     * The size of the temporary buffer to copy files.
-     */
-    private static final int FILE_READ_BUFFER_SIZE = 8192;
-    // TODO: make the following data common with the native code
-    private static final byte[] MAGIC_NUMBER_VERSION_1 =
-            new byte[] { (byte)0x78, (byte)0xB1, (byte)0x00, (byte)0x00 };
-    private static final byte[] MAGIC_NUMBER_VERSION_2 =
-            new byte[] { (byte)0x9B, (byte)0xC1, (byte)0x3A, (byte)0xFE };
-
-    private static final boolean SHOULD_VERIFY_MAGIC_NUMBER =
-            DecoderSpecificConstants.SHOULD_VERIFY_MAGIC_NUMBER;
     private static final boolean SHOULD_VERIFY_CHECKSUM =
             DecoderSpecificConstants.SHOULD_VERIFY_CHECKSUM;
 
@@ -252,42 +237,6 @@ public final class BinaryDictionaryFileDumper {
         }
     }
 
-    /**
-     * Copies the data in an input stream to a target file if the magic number matches.
-     *
-     * If the magic number does not match the expected value, this method throws an
-     * IOException. Other usual conditions for IOException or FileNotFoundException
-     * also apply.
-     *
-     * @param input the stream to be copied.
-     * @param output an output stream to copy the data to.
-     */
-    public static void checkMagicAndCopyFileTo(final BufferedInputStream input,
-            final BufferedOutputStream output) throws IOException {
-        // Check the magic number
-        final int length = MAGIC_NUMBER_VERSION_2.length;
-        final byte[] magicNumberBuffer = new byte[length];
-        final int readMagicNumberSize = input.read(magicNumberBuffer, 0, length);
-        if (readMagicNumberSize < length) {
-            throw new IOException("Less bytes to read than the magic number length");
-        }
-        if (SHOULD_VERIFY_MAGIC_NUMBER) {
-            if (!Arrays.equals(MAGIC_NUMBER_VERSION_2, magicNumberBuffer)) {
-                if (!Arrays.equals(MAGIC_NUMBER_VERSION_1, magicNumberBuffer)) {
-                    throw new IOException("Wrong magic number for downloaded file");
-                }
-            }
-        }
-        output.write(magicNumberBuffer);
-
-        // Actually copy the file
-        final byte[] buffer = new byte[FILE_READ_BUFFER_SIZE];
-        for (int readBytes = input.read(buffer); readBytes >= 0; readBytes = input.read(buffer)) {
-            output.write(buffer, 0, readBytes);
-        }
-        input.close();
-    }
-
     private static void reinitializeClientRecordInDictionaryContentProvider(final Context context,
             final ContentProviderClient client, final String clientId) throws RemoteException {
         final String metadataFileUri = MetadataFileUriGetter.getMetadataUri(context);
@@ -25,6 +25,7 @@ import org.dslul.openboard.inputmethod.latin.settings.SettingsValuesForSuggestio
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.CopyOnWriteArrayList;
 
@@ -120,6 +121,19 @@ public final class DictionaryCollection extends Dictionary {
             dict.close();
     }
 
+    /**
+     * Returns the statistics of the read-only binary dictionaries in this collection.
+     */
+    public List<DictionaryStats> getDictionaryStats() {
+        final ArrayList<DictionaryStats> stats = new ArrayList<>();
+        for (final Dictionary dict : mDictionaries) {
+            if (dict instanceof ReadOnlyBinaryDictionary) {
+                stats.add(((ReadOnlyBinaryDictionary) dict).getDictionaryStats());
+            }
+        }
+        return stats;
+    }
+
     // Warning: this is not thread-safe. Take necessary precaution when calling.
     public void addDictionary(final Dictionary newDict) {
         if (null == newDict) return;
@@ -121,6 +121,26 @@ public interface DictionaryFacilitator {
             final String dictNamePrefix,
             @Nullable final DictionaryInitializationListener listener);
 
+    /**
+     * Sets the locales whose main dictionaries are queried alongside the dictionaries of the
+     * current locale, for users typing in several languages at once. The dictionaries of
+     * locales that are not yet loaded are loaded asynchronously.
+     */
+    void resetSecondaryDictionaries(final Context context, final List<Locale> secondaryLocales);
+
+    /**
+     * Called when the user commits a word from the dictionaries of the specified locale, to
+     * update which language they are most probably typing in.
+     */
+    void switchMostProbableLanguage(@Nullable final Locale locale);
+
+    /**
+     * Loads the main dictionary for a locale the user is expected to switch to next, and keeps
+     * it on standby so that {@link #resetDictionaries} for that locale does not have to wait
+     * for it to load. Does nothing if the locale is null or already loaded.
+     */
+    void preloadMainDictionaryForLocale(final Context context, @Nullable final Locale locale);
+
     @UsedForTesting
     void resetDictionariesForTesting(
             final Context context,
@@ -18,6 +18,7 @@ package org.dslul.openboard.inputmethod.latin;
 
 import android.Manifest;
 import android.content.Context;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 import android.util.LruCache;
@@ -39,14 +40,18 @@ import java.io.File;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
@@ -68,11 +73,52 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
     // dictionary.
     private static final int CAPITALIZED_FORM_MAX_PROBABILITY_FOR_INSERT = 140;
 
-    private DictionaryGroup mDictionaryGroup = new DictionaryGroup();
+    private static final boolean DEBUG = false;
+
+    // The maximum total size of the main dictionaries kept open for a locale other than the
+    // current one. The dictionaries are memory mapped, so this bounds the memory they can keep
+    // resident rather than the heap.
+    private static final long MAX_STANDBY_MAIN_DICTIONARY_SIZE = 32 * 1024 * 1024;
+
+    private static final long NOT_A_TIME = -1;
+
+    // Secondary dictionary groups only contribute their main dictionary, and only their best
+    // suggestions from a bounded search, so that querying them concurrently with the current
+    // language takes less time than querying the current language.
+    private static final int MAX_SECONDARY_DICTIONARY_GROUPS = 2;
+    private static final int MAX_SUGGESTIONS_PER_SECONDARY_GROUP = 6;
+    // Secondary groups are queried with traversal sessions of their own, so that a query that
+    // is still running when its dictionary moves to another group never shares a session with a
+    // query of that group. Sessions are not thread safe.
+    private static final int SECONDARY_GROUP_SESSION_ID_OFFSET = 0x10000;
+
+    // Another language becomes the most probable one once its confidence has reached this, and
+    // is higher than the confidence in the current most probable language. Every committed word
+    // from one language decays the confidence in the others, so that a single word, or a few
+    // words after a long run in the current language, don't switch it.
+    private static final int CONFIDENCE_TO_SWITCH_MOST_PROBABLE_LANGUAGE = 3;
+    private static final int MAX_CONFIDENCE = 8;
+
+    private static final DictionaryGroup[] NO_DICTIONARY_GROUPS = new DictionaryGroup[0];
+
+    private volatile DictionaryGroup mDictionaryGroup = new DictionaryGroup();
+    // A group holding only the main dictionary of the locale that was used before the current
+    // one, or of the locale predicted to be used next. Guarded by mLock.
+    @Nullable private DictionaryGroup mStandbyDictionaryGroup;
+    // Groups holding only the main dictionary of the other locales the user types in. Only ever
+    // replaced as a whole, under mLock.
+    private volatile DictionaryGroup[] mSecondaryDictionaryGroups = NO_DICTIONARY_GROUPS;
+    // The group of the language the user is most probably typing in. Guarded by mLock.
+    private DictionaryGroup mMostProbableDictionaryGroup = mDictionaryGroup;
     private volatile CountDownLatch mLatchForWaitingLoadingMainDictionaries = new CountDownLatch(0);
     // To synchronize assigning mDictionaryGroup to ensure closing dictionaries.
     private final Object mLock = new Object();
 
+    // Uptime at which the dictionaries were last reset for another locale, until the first
+    // suggestions after that have been returned.
+    private volatile long mLocaleSwitchTimeMillis = NOT_A_TIME;
+    private volatile long mLastTimeToFirstSuggestionMillis = NOT_A_TIME;
+
     public static final Map<String, Class<? extends ExpandableBinaryDictionary>>
             DICT_TYPE_TO_CLASS = new HashMap<>();
 
@@ -135,9 +181,9 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
         @Nullable public final String mAccount;
 
         @Nullable private Dictionary mMainDict;
-        // Confidence that the most probable language is actually the language the user is
-        // typing in. For now, this is simply the number of times a word from this language
-        // has been committed in a row.
+        // Confidence that the user is typing in the language of this group, from 0 to
+        // MAX_CONFIDENCE. It goes up with every committed word from this language and down with
+        // every committed word from another one. Guarded by mLock.
         private int mConfidence = 0;
 
         public float mWeightForTypingInLocale = WEIGHT_FOR_MOST_PROBABLE_LANGUAGE;
@@ -326,10 +372,19 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
                 existingDictionariesToCleanup.get(newLocale);
         final boolean noExistingDictsForThisLocale = (null == dictionaryGroupForLocale);
 
+        if (noExistingDictsForThisLocale) {
+            mLocaleSwitchTimeMillis = SystemClock.uptimeMillis();
+        }
         final Dictionary mainDict;
-        if (forceReloadMainDictionary || noExistingDictsForThisLocale
-                || !dictionaryGroupForLocale.hasDict(Dictionary.TYPE_MAIN, account)) {
+        if (forceReloadMainDictionary) {
+            // The dictionary on standby may be outdated as well.
+            closeStandbyDictionaryGroup();
             mainDict = null;
+        } else if (noExistingDictsForThisLocale
+                || !dictionaryGroupForLocale.hasDict(Dictionary.TYPE_MAIN, account)) {
+            final Dictionary secondaryMainDict = takeSecondaryMainDictionary(newLocale);
+            mainDict = null != secondaryMainDict
+                    ? secondaryMainDict : takeStandbyMainDictionary(newLocale);
         } else {
             mainDict = dictionaryGroupForLocale.getDict(Dictionary.TYPE_MAIN);
             dictTypesToCleanupForLocale.remove(Dictionary.TYPE_MAIN);
@@ -358,6 +413,15 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
         synchronized (mLock) {
             oldDictionaryGroup = mDictionaryGroup;
             mDictionaryGroup = newDictionaryGroup;
+            // The language of the keyboard was picked by the user, which is as good as a few
+            // words typed in it.
+            newDictionaryGroup.mConfidence = CONFIDENCE_TO_SWITCH_MOST_PROBABLE_LANGUAGE;
+            setMostProbableDictionaryGroup(newDictionaryGroup);
+            if (noExistingDictsForThisLocale) {
+                // Keep the main dictionary of the locale we are leaving around, as users often
+                // switch back and forth between two languages.
+                putMainDictionaryOnStandby(oldDictionaryGroup);
+            }
             if (hasAtLeastOneUninitializedMainDictionary()) {
                 asyncReloadUninitializedMainDictionaries(context, newLocale, listener);
             }
@@ -382,6 +446,296 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
         }
     }
 
+    /**
+     * Sets the group of the language the user is most probably typing in, and weights the
+     * suggestions of the other groups down. Must be called while holding mLock.
+     */
+    private void setMostProbableDictionaryGroup(final DictionaryGroup mostProbableGroup) {
+        for (final DictionaryGroup dictionaryGroup : getAllDictionaryGroups()) {
+            dictionaryGroup.mWeightForTypingInLocale =
+                    DictionaryGroup.WEIGHT_FOR_TYPING_IN_NOT_MOST_PROBABLE_LANGUAGE;
+            dictionaryGroup.mWeightForGesturingInLocale =
+                    DictionaryGroup.WEIGHT_FOR_GESTURING_IN_NOT_MOST_PROBABLE_LANGUAGE;
+        }
+        mostProbableGroup.mWeightForTypingInLocale =
+                DictionaryGroup.WEIGHT_FOR_MOST_PROBABLE_LANGUAGE;
+        mostProbableGroup.mWeightForGesturingInLocale =
+                DictionaryGroup.WEIGHT_FOR_MOST_PROBABLE_LANGUAGE;
+        mMostProbableDictionaryGroup = mostProbableGroup;
+    }
+
+    private DictionaryGroup[] getAllDictionaryGroups() {
+        final DictionaryGroup[] secondaryGroups = mSecondaryDictionaryGroups;
+        final DictionaryGroup[] allGroups = new DictionaryGroup[secondaryGroups.length + 1];
+        allGroups[0] = mDictionaryGroup;
+        System.arraycopy(secondaryGroups, 0, allGroups, 1, secondaryGroups.length);
+        return allGroups;
+    }
+
+    @Override
+    public void switchMostProbableLanguage(@Nullable final Locale locale) {
+        if (null == locale) {
+            // In many cases, there is no locale to a committed word. For example, a typed word
+            // that is in none of the currently active dictionaries but still does not
+            // auto-correct to anything has no locale. In this case we simply do not change
+            // the most probable language and do not touch confidence.
+            return;
+        }
+        synchronized (mLock) {
+            DictionaryGroup newMostProbableGroup = null;
+            for (final DictionaryGroup dictionaryGroup : getAllDictionaryGroups()) {
+                if (locale.equals(dictionaryGroup.mLocale)) {
+                    newMostProbableGroup = dictionaryGroup;
+                    break;
+                }
+            }
+            if (null == newMostProbableGroup) {
+                // This may happen as a race condition: switching languages and committing a word
+                // in quick succession could commit a word out of a dictionary that's not in the
+                // facilitator any more. In this case, just not changing things is fine.
+                return;
+            }
+            for (final DictionaryGroup dictionaryGroup : getAllDictionaryGroups()) {
+                if (dictionaryGroup == newMostProbableGroup) {
+                    dictionaryGroup.mConfidence =
+                            Math.min(MAX_CONFIDENCE, dictionaryGroup.mConfidence + 1);
+                } else {
+                    dictionaryGroup.mConfidence = Math.max(0, dictionaryGroup.mConfidence - 1);
+                }
+            }
+            if (newMostProbableGroup != mMostProbableDictionaryGroup
+                    && newMostProbableGroup.mConfidence
+                            >= CONFIDENCE_TO_SWITCH_MOST_PROBABLE_LANGUAGE
+                    && newMostProbableGroup.mConfidence
+                            > mMostProbableDictionaryGroup.mConfidence) {
+                setMostProbableDictionaryGroup(newMostProbableGroup);
+            }
+        }
+    }
+
+    @Override
+    public void resetSecondaryDictionaries(final Context context,
+            final List<Locale> secondaryLocales) {
+        final ArrayList<DictionaryGroup> groupsToLoad = new ArrayList<>();
+        synchronized (mLock) {
+            final DictionaryGroup[] oldGroups = mSecondaryDictionaryGroups;
+            final ArrayList<DictionaryGroup> createdGroups = new ArrayList<>();
+            final ArrayList<DictionaryGroup> newGroups = new ArrayList<>();
+            for (final Locale locale : secondaryLocales) {
+                if (newGroups.size() >= MAX_SECONDARY_DICTIONARY_GROUPS) break;
+                if (null == locale || isForLocale(locale)
+                        || null != findDictionaryGroupWithLocale(newGroups, locale)) {
+                    continue;
+                }
+                DictionaryGroup group = findDictionaryGroupWithLocale(oldGroups, locale);
+                if (null == group) {
+                    group = new DictionaryGroup(locale, takeStandbyMainDictionary(locale),
+                            null /* account */,
+                            Collections.<String, ExpandableBinaryDictionary>emptyMap());
+                    if (!group.hasDict(Dictionary.TYPE_MAIN, null /* account */)) {
+                        groupsToLoad.add(group);
+                    }
+                    createdGroups.add(group);
+                }
+                newGroups.add(group);
+            }
+            mSecondaryDictionaryGroups = newGroups.toArray(new DictionaryGroup[0]);
+            for (final DictionaryGroup oldGroup : oldGroups) {
+                if (!newGroups.contains(oldGroup)) {
+                    putMainDictionaryOnStandby(oldGroup);
+                }
+            }
+            if (!newGroups.contains(mMostProbableDictionaryGroup)) {
+                setMostProbableDictionaryGroup(mDictionaryGroup);
+            } else {
+                for (final DictionaryGroup group : createdGroups) {
+                    group.mWeightForTypingInLocale =
+                            DictionaryGroup.WEIGHT_FOR_TYPING_IN_NOT_MOST_PROBABLE_LANGUAGE;
+                    group.mWeightForGesturingInLocale =
+                            DictionaryGroup.WEIGHT_FOR_GESTURING_IN_NOT_MOST_PROBABLE_LANGUAGE;
+                }
+            }
+        }
+        for (final DictionaryGroup group : groupsToLoad) {
+            ExecutorUtils.getBackgroundExecutor(ExecutorUtils.KEYBOARD).execute(new Runnable() {
+                @Override
+                public void run() {
+                    doLoadSecondaryMainDictionary(context, group);
+                }
+            });
+        }
+    }
+
+    void doLoadSecondaryMainDictionary(final Context context, final DictionaryGroup group) {
+        final Dictionary mainDict =
+                DictionaryFactory.createMainDictionaryFromManager(context, group.mLocale);
+        synchronized (mLock) {
+            for (final DictionaryGroup secondaryGroup : mSecondaryDictionaryGroups) {
+                if (secondaryGroup == group) {
+                    group.setMainDict(mainDict);
+                    return;
+                }
+            }
+        }
+        // The secondary locales have been reset in the meantime.
+        mainDict.close();
+    }
+
+    @Nullable
+    private static DictionaryGroup findDictionaryGroupWithLocale(
+            final Iterable<DictionaryGroup> dictionaryGroups, final Locale locale) {
+        for (final DictionaryGroup dictionaryGroup : dictionaryGroups) {
+            if (locale.equals(dictionaryGroup.mLocale)) {
+                return dictionaryGroup;
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    private static DictionaryGroup findDictionaryGroupWithLocale(
+            final DictionaryGroup[] dictionaryGroups, final Locale locale) {
+        return findDictionaryGroupWithLocale(Arrays.asList(dictionaryGroups), locale);
+    }
+
+    /**
+     * Detaches and returns the main dictionary of the secondary group for the specified locale,
+     * removing that group, if it is initialized.
+     */
+    @Nullable
+    private Dictionary takeSecondaryMainDictionary(final Locale locale) {
+        synchronized (mLock) {
+            final DictionaryGroup[] secondaryGroups = mSecondaryDictionaryGroups;
+            final DictionaryGroup group = findDictionaryGroupWithLocale(secondaryGroups, locale);
+            if (null == group) {
+                return null;
+            }
+            final Dictionary mainDict = group.getDict(Dictionary.TYPE_MAIN);
+            if (null == mainDict || !mainDict.isInitialized()) {
+                return null;
+            }
+            final ArrayList<DictionaryGroup> remainingGroups =
+                    new ArrayList<>(Arrays.asList(secondaryGroups));
+            remainingGroups.remove(group);
+            mSecondaryDictionaryGroups = remainingGroups.toArray(new DictionaryGroup[0]);
+            return mainDict;
+        }
+    }
+
+    /**
+     * Detaches and returns the main dictionary on standby if it is for the specified locale.
+     */
+    @Nullable
+    private Dictionary takeStandbyMainDictionary(final Locale locale) {
+        synchronized (mLock) {
+            final DictionaryGroup standbyGroup = mStandbyDictionaryGroup;
+            if (null == standbyGroup || !locale.equals(standbyGroup.mLocale)) {
+                return null;
+            }
+            mStandbyDictionaryGroup = null;
+            final Dictionary mainDict = standbyGroup.getDict(Dictionary.TYPE_MAIN);
+            if (null != mainDict && mainDict.isInitialized()) {
+                return mainDict;
+            }
+            standbyGroup.closeDict(Dictionary.TYPE_MAIN);
+            return null;
+        }
+    }
+
+    private static long getMainDictionarySize(@Nullable final Dictionary mainDict) {
+        if (!(mainDict instanceof DictionaryCollection)) {
+            return 0;
+        }
+        long size = 0;
+        for (final DictionaryStats stats : ((DictionaryCollection) mainDict).getDictionaryStats()) {
+            size += stats.mDictFileSize;
+        }
+        return size;
+    }
+
+    /**
+     * Puts the main dictionary of a group on standby, replacing any other standby dictionary.
+     * The dictionary is closed instead if it does not fit in the standby memory budget.
+     * Must be called while holding mLock.
+     */
+    private void putMainDictionaryOnStandby(final DictionaryGroup dictionaryGroup) {
+        final Dictionary mainDict = dictionaryGroup.getDict(Dictionary.TYPE_MAIN);
+        if (null == dictionaryGroup.mLocale || null == mainDict) {
+            return;
+        }
+        closeStandbyDictionaryGroup();
+        if (!mainDict.isInitialized()
+                || getMainDictionarySize(mainDict) > MAX_STANDBY_MAIN_DICTIONARY_SIZE) {
+            dictionaryGroup.closeDict(Dictionary.TYPE_MAIN);
+            return;
+        }
+        mStandbyDictionaryGroup = new DictionaryGroup(dictionaryGroup.mLocale, mainDict,
+                null /* account */, Collections.<String, ExpandableBinaryDictionary>emptyMap());
+    }
+
+    private void closeStandbyDictionaryGroup() {
+        synchronized (mLock) {
+            if (null != mStandbyDictionaryGroup) {
+                mStandbyDictionaryGroup.closeDict(Dictionary.TYPE_MAIN);
+                mStandbyDictionaryGroup = null;
+            }
+        }
+    }
+
+    @Override
+    public void preloadMainDictionaryForLocale(final Context context,
+            @Nullable final Locale locale) {
+        if (null == locale || isForLocale(locale)) {
+            return;
+        }
+        synchronized (mLock) {
+            if (null != mStandbyDictionaryGroup && locale.equals(mStandbyDictionaryGroup.mLocale)) {
+                return;
+            }
+            if (null != findDictionaryGroupWithLocale(mSecondaryDictionaryGroups, locale)) {
+                // Already loaded to be queried alongside the current locale.
+                return;
+            }
+        }
+        ExecutorUtils.getBackgroundExecutor(ExecutorUtils.KEYBOARD).execute(new Runnable() {
+            @Override
+            public void run() {
+                doPreloadMainDictionary(context, locale);
+            }
+        });
+    }
+
+    void doPreloadMainDictionary(final Context context, final Locale locale) {
+        synchronized (mLock) {
+            if (null != mStandbyDictionaryGroup && locale.equals(mStandbyDictionaryGroup.mLocale)) {
+                return;
+            }
+            if (isForLocale(locale) && hasAtLeastOneInitializedMainDictionary()) {
+                return;
+            }
+        }
+        final Dictionary mainDict =
+                DictionaryFactory.createMainDictionaryFromManager(context, locale);
+        synchronized (mLock) {
+            if (isForLocale(locale)) {
+                // The user switched to this locale while it was loading: hand it over directly.
+                // The pending reload for this locale will then find it initialized.
+                if (hasAtLeastOneUninitializedMainDictionary()) {
+                    mDictionaryGroup.setMainDict(mainDict);
+                } else {
+                    mainDict.close();
+                }
+                return;
+            }
+            if (null != mStandbyDictionaryGroup && locale.equals(mStandbyDictionaryGroup.mLocale)) {
+                mainDict.close();
+                return;
+            }
+            putMainDictionaryOnStandby(new DictionaryGroup(locale, mainDict, null /* account */,
+                    Collections.<String, ExpandableBinaryDictionary>emptyMap()));
+        }
+    }
+
     private void asyncReloadUninitializedMainDictionaries(final Context context,
             final Locale locale, final DictionaryInitializationListener listener) {
         final CountDownLatch latchForWaitingLoadingMainDictionary = new CountDownLatch(1);
@@ -405,14 +759,30 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
             Log.w(TAG, "Expected a dictionary group for " + locale + " but none found");
             return;
         }
+        final Dictionary existingMainDict = dictionaryGroup.getDict(Dictionary.TYPE_MAIN);
+        if (null != existingMainDict && existingMainDict.isInitialized()) {
+            // The main dictionary was handed over by a preload in the meantime.
+            if (listener != null) {
+                listener.onUpdateMainDictionaryAvailability(true /* isMainDictionaryAvailable */);
+            }
+            latchForWaitingLoadingMainDictionary.countDown();
+            return;
+        }
         final Dictionary mainDict =
                 DictionaryFactory.createMainDictionaryFromManager(context, locale);
         synchronized (mLock) {
-            if (locale.equals(dictionaryGroup.mLocale)) {
+            if (dictionaryGroup == mDictionaryGroup) {
                 dictionaryGroup.setMainDict(mainDict);
-            } else {
-                // Dictionary facilitator has been reset for another locale.
+            } else if (isForLocale(locale)) {
+                // Dictionary facilitator has been reset again for this locale, and that reset
+                // takes care of its own main dictionary.
                 mainDict.close();
+            } else {
+                // Dictionary facilitator has been reset for another locale. Keep the dictionary
+                // on standby in case the user switches back.
+                putMainDictionaryOnStandby(new DictionaryGroup(locale, mainDict,
+                        null /* account */,
+                        Collections.<String, ExpandableBinaryDictionary>emptyMap()));
             }
         }
         if (listener != null) {
@@ -461,6 +831,16 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
         for (final String dictType : ALL_DICTIONARY_TYPES) {
             dictionaryGroupToClose.closeDict(dictType);
         }
+        final DictionaryGroup[] secondaryGroupsToClose;
+        synchronized (mLock) {
+            secondaryGroupsToClose = mSecondaryDictionaryGroups;
+            mSecondaryDictionaryGroups = NO_DICTIONARY_GROUPS;
+            mMostProbableDictionaryGroup = mDictionaryGroup;
+        }
+        for (final DictionaryGroup secondaryGroup : secondaryGroupsToClose) {
+            secondaryGroup.closeDict(Dictionary.TYPE_MAIN);
+        }
+        closeStandbyDictionaryGroup();
     }
 
     @UsedForTesting
@@ -619,14 +999,19 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
         final SuggestionResults suggestionResults = new SuggestionResults(
                 SuggestedWords.MAX_SUGGESTIONS, ngramContext.isBeginningOfSentenceContext(),
                 false /* firstSuggestionExceedsConfidenceThreshold */);
+        // Query the secondary groups concurrently with the group of the current locale.
+        final Future<SuggestionResults> secondarySuggestionsFuture =
+                submitSecondarySuggestionsQuery(composedData, ngramContext, proximityInfoHandle,
+                        settingsValuesForSuggestion, sessionId);
         final float[] weightOfLangModelVsSpatialModel =
                 new float[] { Dictionary.NOT_A_WEIGHT_OF_LANG_MODEL_VS_SPATIAL_MODEL };
+        final DictionaryGroup dictionaryGroup = mDictionaryGroup;
         for (final String dictType : ALL_DICTIONARY_TYPES) {
-            final Dictionary dictionary = mDictionaryGroup.getDict(dictType);
+            final Dictionary dictionary = dictionaryGroup.getDict(dictType);
             if (null == dictionary) continue;
             final float weightForLocale = composedData.mIsBatchMode
-                    ? mDictionaryGroup.mWeightForGesturingInLocale
-                    : mDictionaryGroup.mWeightForTypingInLocale;
+                    ? dictionaryGroup.mWeightForGesturingInLocale
+                    : dictionaryGroup.mWeightForTypingInLocale;
             final ArrayList<SuggestedWordInfo> dictionarySuggestions =
                     dictionary.getSuggestions(composedData, ngramContext,
                             proximityInfoHandle, settingsValuesForSuggestion, sessionId,
@@ -637,9 +1022,95 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
                 suggestionResults.mRawSuggestions.addAll(dictionarySuggestions);
             }
         }
+        if (null != secondarySuggestionsFuture) {
+            // Always wait for the secondary groups, so that the suggestions only depend on the
+            // input. Their searches are bounded, so they are usually done by now.
+            try {
+                final SuggestionResults secondarySuggestions = secondarySuggestionsFuture.get();
+                suggestionResults.addAll(secondarySuggestions);
+                if (null != suggestionResults.mRawSuggestions) {
+                    suggestionResults.mRawSuggestions.addAll(secondarySuggestions);
+                }
+            } catch (final InterruptedException | ExecutionException e) {
+                Log.e(TAG, "Cannot get secondary suggestions", e);
+            }
+        }
+        final long localeSwitchTimeMillis = mLocaleSwitchTimeMillis;
+        if (NOT_A_TIME != localeSwitchTimeMillis && !suggestionResults.isEmpty()) {
+            mLocaleSwitchTimeMillis = NOT_A_TIME;
+            mLastTimeToFirstSuggestionMillis =
+                    SystemClock.uptimeMillis() - localeSwitchTimeMillis;
+            if (DEBUG) {
+                Log.d(TAG, "Time to first suggestion after switching to "
+                        + mDictionaryGroup.mLocale + ": " + mLastTimeToFirstSuggestionMillis
+                        + " ms");
+            }
+        }
         return suggestionResults;
     }
 
+    @Nullable
+    private Future<SuggestionResults> submitSecondarySuggestionsQuery(
+            final ComposedData composedData, final NgramContext ngramContext,
+            final long proximityInfoHandle,
+            final SettingsValuesForSuggestion settingsValuesForSuggestion, final int sessionId) {
+        final DictionaryGroup[] secondaryGroups = mSecondaryDictionaryGroups;
+        if (secondaryGroups.length == 0) {
+            return null;
+        }
+        // All secondary queries run on the same single thread, so that the traversal session of
+        // a dictionary is never used by two queries at the same time.
+        return ExecutorUtils.getBackgroundExecutor(ExecutorUtils.SUGGESTIONS).submit(
+                new Callable<SuggestionResults>() {
+                    @Override
+                    public SuggestionResults call() {
+                        final SuggestionResults results = new SuggestionResults(
+                                SuggestedWords.MAX_SUGGESTIONS,
+                                ngramContext.isBeginningOfSentenceContext(),
+                                false /* firstSuggestionExceedsConfidenceThreshold */);
+                        for (final DictionaryGroup group : secondaryGroups) {
+                            results.addAll(getSecondaryGroupSuggestions(group, composedData,
+                                    ngramContext, proximityInfoHandle,
+                                    settingsValuesForSuggestion, sessionId));
+                        }
+                        return results;
+                    }
+                });
+    }
+
+    @Nullable
+    private static SuggestionResults getSecondaryGroupSuggestions(final DictionaryGroup group,
+            final ComposedData composedData, final NgramContext ngramContext,
+            final long proximityInfoHandle,
+            final SettingsValuesForSuggestion settingsValuesForSuggestion, final int sessionId) {
+        final Dictionary mainDict = group.getDict(Dictionary.TYPE_MAIN);
+        if (null == mainDict || !mainDict.isInitialized()) {
+            return null;
+        }
+        final float weightForLocale = composedData.mIsBatchMode
+                ? group.mWeightForGesturingInLocale : group.mWeightForTypingInLocale;
+        // Bound the search even when this group holds the most probable language, so that
+        // waiting for the secondary groups takes a bounded time whatever their weights.
+        final SettingsValuesForSuggestion boundedSettingsValuesForSuggestion =
+                new SettingsValuesForSuggestion(
+                        settingsValuesForSuggestion.mBlockPotentiallyOffensive,
+                        true /* boundsSearch */);
+        final ArrayList<SuggestedWordInfo> dictionarySuggestions = mainDict.getSuggestions(
+                composedData, ngramContext, proximityInfoHandle,
+                boundedSettingsValuesForSuggestion,
+                sessionId + SECONDARY_GROUP_SESSION_ID_OFFSET, weightForLocale,
+                new float[] { Dictionary.NOT_A_WEIGHT_OF_LANG_MODEL_VS_SPATIAL_MODEL });
+        if (null == dictionarySuggestions) {
+            return null;
+        }
+        // Only keep the best suggestions of this group.
+        final SuggestionResults bestSuggestions = new SuggestionResults(
+                MAX_SUGGESTIONS_PER_SECONDARY_GROUP, ngramContext.isBeginningOfSentenceContext(),
+                false /* firstSuggestionExceedsConfidenceThreshold */);
+        bestSuggestions.addAll(dictionarySuggestions);
+        return bestSuggestions;
+    }
+
     public boolean isValidSpellingWord(final String word) {
         if (mValidSpellingWordReadCache != null) {
             final Boolean cachedValue = mValidSpellingWordReadCache.get(word);
@@ -672,6 +1143,13 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
                 return true;
             }
         }
+        // A word from any of the languages the user types in is valid.
+        for (final DictionaryGroup secondaryGroup : mSecondaryDictionaryGroups) {
+            final Dictionary mainDict = secondaryGroup.getDict(Dictionary.TYPE_MAIN);
+            if (null != mainDict && mainDict.isValidWord(word)) {
+                return true;
+            }
+        }
         return false;
     }
 
@@ -719,6 +1197,10 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
     @Override
     @Nonnull public List<DictionaryStats> getDictionaryStats(final Context context) {
         final ArrayList<DictionaryStats> statsOfEnabledSubDicts = new ArrayList<>();
+        final Dictionary mainDict = mDictionaryGroup.getDict(Dictionary.TYPE_MAIN);
+        if (mainDict instanceof DictionaryCollection) {
+            statsOfEnabledSubDicts.addAll(((DictionaryCollection) mainDict).getDictionaryStats());
+        }
         for (final String dictType : DYNAMIC_DICTIONARY_TYPES) {
             final ExpandableBinaryDictionary dictionary = mDictionaryGroup.getSubDict(dictType);
             if (dictionary == null) continue;
@@ -729,6 +1211,10 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
 
     @Override
     public String dump(final Context context) {
-        return "";
+        final DictionaryGroup standbyGroup = mStandbyDictionaryGroup;
+        return "  standby main dictionary: "
+                + (null == standbyGroup ? "none" : standbyGroup.mLocale) + "\n"
+                + "  time to first suggestion after locale switch: "
+                + mLastTimeToFirstSuggestionMillis + " ms";
     }
 }
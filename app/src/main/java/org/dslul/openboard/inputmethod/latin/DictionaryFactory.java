@@ -18,7 +18,6 @@ package org.dslul.openboard.inputmethod.latin;
 
 import android.content.ContentProviderClient;
 import android.content.Context;
-import android.content.res.AssetFileDescriptor;
 import android.util.Log;
 
 import org.dslul.openboard.inputmethod.latin.utils.DictionaryInfoUtils;
@@ -28,11 +27,14 @@ import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.Locale;
 
+import javax.annotation.Nullable;
+
 /**
  * Factory for dictionary instances.
  */
 public final class DictionaryFactory {
     private static final String TAG = DictionaryFactory.class.getSimpleName();
+    private static final boolean DEBUG = false;
 
     /**
      * Initializes a main dictionary collection from a dictionary pack, with explicit flags.
@@ -57,14 +59,9 @@ public final class DictionaryFactory {
         if (null != assetFileList) {
             for (final AssetFileAddress f : assetFileList) {
                 final ReadOnlyBinaryDictionary readOnlyBinaryDictionary =
-                        new ReadOnlyBinaryDictionary(f.mFilename, f.mOffset, f.mLength,
-                                false /* useFullEditDistance */, locale, Dictionary.TYPE_MAIN);
-                if (readOnlyBinaryDictionary.isValidDictionary()) {
+                        openReadOnlyBinaryDictionary(context, f, locale);
+                if (null != readOnlyBinaryDictionary) {
                     dictList.add(readOnlyBinaryDictionary);
-                } else {
-                    readOnlyBinaryDictionary.close();
-                    // Prevent this dictionary to do any further harm.
-                    killDictionary(context, f);
                 }
             }
         }
@@ -118,44 +115,52 @@ public final class DictionaryFactory {
         }
     }
 
+    /**
+     * Opens a read-only binary dictionary at the specified address.
+     *
+     * This is the single place main dictionaries are opened, whether they are downloaded files
+     * or raw resources stored uncompressed in the APK. In both cases the native side maps the
+     * data read-only at its offset without copying it, and only the header is read
+     * at this point; the rest of the dictionary is paged in as it is used.
+     * If the header turns out to be invalid, the dictionary is closed and killed.
+     * @param context the context to contact the dictionary provider if the file must be killed
+     * @param address the address of the dictionary data
+     * @param locale the locale of the dictionary
+     * @return an initialized instance of ReadOnlyBinaryDictionary, or null if invalid
+     */
+    @Nullable
+    private static ReadOnlyBinaryDictionary openReadOnlyBinaryDictionary(final Context context,
+            final AssetFileAddress address, final Locale locale) {
+        final ReadOnlyBinaryDictionary readOnlyBinaryDictionary =
+                new ReadOnlyBinaryDictionary(address.mFilename, address.mOffset, address.mLength,
+                        false /* useFullEditDistance */, locale, Dictionary.TYPE_MAIN);
+        if (!readOnlyBinaryDictionary.isValidDictionary()) {
+            readOnlyBinaryDictionary.close();
+            // Prevent this dictionary to do any further harm.
+            killDictionary(context, address);
+            return null;
+        }
+        if (DEBUG) {
+            Log.d(TAG, "Opened " + address + ": " + readOnlyBinaryDictionary.getDictionaryStats());
+        }
+        return readOnlyBinaryDictionary;
+    }
+
     /**
      * Initializes a read-only binary dictionary from a raw resource file
      * @param context application context for reading resources
      * @param locale the locale to use for the resource
      * @return an initialized instance of ReadOnlyBinaryDictionary
      */
+    @Nullable
     private static ReadOnlyBinaryDictionary createReadOnlyBinaryDictionary(final Context context,
             final Locale locale) {
-        AssetFileDescriptor afd = null;
-        try {
-            final int resId = DictionaryInfoUtils.getMainDictionaryResourceIdIfAvailableForLocale(
-                    context.getResources(), locale);
-            if (0 == resId) return null;
-            afd = context.getResources().openRawResourceFd(resId);
-            if (afd == null) {
-                Log.e(TAG, "Found the resource but it is compressed. resId=" + resId);
-                return null;
-            }
-            final String sourceDir = context.getApplicationInfo().sourceDir;
-            final File packagePath = new File(sourceDir);
-            // TODO: Come up with a way to handle a directory.
-            if (!packagePath.isFile()) {
-                Log.e(TAG, "sourceDir is not a file: " + sourceDir);
-                return null;
-            }
-            return new ReadOnlyBinaryDictionary(sourceDir, afd.getStartOffset(), afd.getLength(),
-                    false /* useFullEditDistance */, locale, Dictionary.TYPE_MAIN);
-        } catch (android.content.res.Resources.NotFoundException e) {
-            Log.e(TAG, "Could not find the resource");
-            return null;
-        } finally {
-            if (null != afd) {
-                try {
-                    afd.close();
-                } catch (java.io.IOException e) {
-                    /* IOException on close ? What am I supposed to do ? */
-                }
-            }
-        }
+        final int resId = DictionaryInfoUtils.getMainDictionaryResourceIdIfAvailableForLocale(
+                context.getResources(), locale);
+        if (0 == resId) return null;
+        final AssetFileAddress address =
+                BinaryDictionaryGetter.loadFallbackResource(context, resId);
+        if (null == address) return null;
+        return openReadOnlyBinaryDictionary(context, address, locale);
     }
 }
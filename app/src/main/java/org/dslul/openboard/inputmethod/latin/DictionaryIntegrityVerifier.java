@@ -0,0 +1,336 @@
+package org.dslul.openboard.inputmethod.latin;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Process;
+import android.util.Log;
+
+import org.dslul.openboard.inputmethod.dictionarypack.DictionaryPackConstants;
+import org.dslul.openboard.inputmethod.dictionarypack.MD5Calculator;
+import org.dslul.openboard.inputmethod.latin.define.DebugFlags;
+import org.dslul.openboard.inputmethod.latin.makedict.FormatSpec;
+import org.dslul.openboard.inputmethod.latin.makedict.UnsupportedFormatException;
+import org.dslul.openboard.inputmethod.latin.utils.BinaryDictionaryUtils;
+import org.dslul.openboard.inputmethod.latin.utils.DictionaryInfoUtils;
+import org.dslul.openboard.inputmethod.latin.utils.ExecutorUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Verifies the integrity of the cached main dictionary files in the background, so that a broken
+ * file is found and replaced before it is opened, instead of when a dictionary is loaded for
+ * typing.
+ *
+ * Each file is streamed to check its header and compute its MD5 checksum. The result is recorded
+ * along with the length and modification time of the file, in a directory that mirrors the
+ * dictionary cache directory. A file that does not match its record although it has not been
+ * replaced since is corrupted: it is killed with {@link DictionaryFactory#killDictionary}, and
+ * the keyboard is told to reload its main dictionary, which falls back to the next-priority one.
+ * Files without a record, like newly installed ones, are checked more thoroughly by reading
+ * their header with the native code, the way they are opened for typing.
+ *
+ * Files are verified one per task on the keyboard executor, at the lowest thread priority, so
+ * that dictionary loading is never delayed by more than one file and never races with a file
+ * being killed.
+ */
+public final class DictionaryIntegrityVerifier {
+    private static final String TAG = DictionaryIntegrityVerifier.class.getSimpleName();
+
+    private static final String RECORD_DIRECTORY_NAME = "dict_verification";
+    private static final Charset RECORD_CHARSET = Charset.forName("UTF-8");
+
+    // Leave the keyboard some time to start and load its dictionaries before verifying them.
+    private static final long INITIAL_DELAY_MINUTES = 1;
+    private static final long PERIOD_HOURS = 24;
+
+    // The magic number, the format version, the option flags and the header size.
+    private static final int HEADER_FIXED_SIZE = 12;
+
+    private DictionaryIntegrityVerifier() {
+        // This utility class is not publicly instantiable.
+    }
+
+    /**
+     * Schedules a verification of all the cached dictionary files shortly, and then every day.
+     * @return the future to cancel the verifications with.
+     */
+    @Nonnull
+    public static ScheduledFuture<?> schedulePeriodicVerification(
+            @Nonnull final Context context) {
+        final Context appContext = context.getApplicationContext();
+        return ExecutorUtils.getBackgroundExecutor(ExecutorUtils.KEYBOARD).scheduleWithFixedDelay(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        verifyAllDictionaries(appContext);
+                    }
+                }, INITIAL_DELAY_MINUTES, TimeUnit.HOURS.toMinutes(PERIOD_HOURS),
+                TimeUnit.MINUTES);
+    }
+
+    private static void verifyAllDictionaries(@Nonnull final Context context) {
+        final File[] directories = DictionaryInfoUtils.getCachedDirectoryList(context);
+        final ArrayList<File> dictFiles = new ArrayList<>();
+        if (null != directories) {
+            for (final File directory : directories) {
+                final File[] files = directory.listFiles();
+                if (null == files) continue;
+                for (final File file : files) {
+                    if (file.isFile()) {
+                        dictFiles.add(file);
+                    }
+                }
+            }
+        }
+        removeStaleRecords(context, dictFiles);
+        if (!dictFiles.isEmpty()) {
+            ExecutorUtils.getBackgroundExecutor(ExecutorUtils.KEYBOARD).execute(
+                    new VerifyTask(context, dictFiles, 0));
+        }
+    }
+
+    // Verifies one file and then queues the verification of the next one, so that tasks queued
+    // in the meantime, like dictionary loads, run in between.
+    private static final class VerifyTask implements Runnable {
+        private final Context mContext;
+        private final ArrayList<File> mDictFiles;
+        private final int mIndex;
+
+        VerifyTask(final Context context, final ArrayList<File> dictFiles, final int index) {
+            mContext = context;
+            mDictFiles = dictFiles;
+            mIndex = index;
+        }
+
+        @Override
+        public void run() {
+            final int previousPriority = Process.getThreadPriority(Process.myTid());
+            Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+            try {
+                verifyDictionary(mContext, mDictFiles.get(mIndex));
+            } finally {
+                Process.setThreadPriority(previousPriority);
+            }
+            if (mIndex + 1 < mDictFiles.size()) {
+                ExecutorUtils.getBackgroundExecutor(ExecutorUtils.KEYBOARD).execute(
+                        new VerifyTask(mContext, mDictFiles, mIndex + 1));
+            }
+        }
+    }
+
+    private static void verifyDictionary(@Nonnull final Context context,
+            @Nonnull final File dictFile) {
+        if (!dictFile.isFile()) {
+            // Killed or replaced since the task was queued.
+            return;
+        }
+        final long length = dictFile.length();
+        final long lastModified = dictFile.lastModified();
+        final File recordFile = getRecordFile(context, dictFile);
+        final Record record = readRecord(recordFile);
+        final boolean isUnchanged = null != record && record.mLength == length
+                && record.mLastModified == lastModified;
+        final boolean isValid;
+        final String checksum;
+        if (!hasValidFixedHeader(dictFile, length)) {
+            isValid = false;
+            checksum = null;
+        } else {
+            checksum = computeChecksum(dictFile);
+            if (null == checksum) {
+                // The file cannot be read or the platform does not support MD5, so the file
+                // cannot be checked. Leave it to the checks done when it is opened.
+                return;
+            }
+            isValid = isUnchanged ? checksum.equals(record.mChecksum)
+                    : hasReadableHeader(dictFile);
+        }
+        if (DebugFlags.DEBUG_ENABLED) {
+            Log.d(TAG, "Verified " + dictFile.getName() + ": valid=" + isValid
+                    + " unchanged=" + isUnchanged);
+        }
+        if (!isValid) {
+            Log.e(TAG, "Corrupted dictionary file, killing it: " + dictFile.getName());
+            DictionaryFactory.killDictionary(context, AssetFileAddress.makeFromFile(dictFile));
+            if (recordFile.exists() && !recordFile.delete()) {
+                Log.e(TAG, "Can't remove a file: " + recordFile.getName());
+            }
+            // Make the keyboard reload its main dictionary without the killed file.
+            context.sendBroadcast(new Intent(DictionaryPackConstants.NEW_DICTIONARY_INTENT_ACTION)
+                    .setPackage(context.getPackageName()));
+            return;
+        }
+        if (!isUnchanged) {
+            writeRecord(recordFile, new Record(length, lastModified, checksum));
+        }
+    }
+
+    // Checks the magic number and the header size, which has to leave room for the dictionary.
+    private static boolean hasValidFixedHeader(@Nonnull final File dictFile, final long length) {
+        if (length < HEADER_FIXED_SIZE) {
+            return false;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(dictFile));
+            final int magicNumber = in.readInt();
+            in.readUnsignedShort(); // Format version, checked by the native code.
+            in.readUnsignedShort(); // Option flags.
+            final long headerSize = in.readInt() & 0xFFFFFFFFL;
+            return FormatSpec.MAGIC_NUMBER == magicNumber && headerSize >= HEADER_FIXED_SIZE
+                    && headerSize < length;
+        } catch (final IOException e) {
+            Log.e(TAG, "Cannot read the dictionary header: " + dictFile.getName(), e);
+            return false;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    @Nullable
+    private static String computeChecksum(@Nonnull final File dictFile) {
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(dictFile));
+            return MD5Calculator.INSTANCE.checksum(in);
+        } catch (final IOException e) {
+            Log.e(TAG, "Cannot read the dictionary file: " + dictFile.getName(), e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static boolean hasReadableHeader(@Nonnull final File dictFile) {
+        try {
+            BinaryDictionaryUtils.getHeader(dictFile);
+            return true;
+        } catch (final IOException | UnsupportedFormatException e) {
+            return false;
+        }
+    }
+
+    private static final class Record {
+        final long mLength;
+        final long mLastModified;
+        @Nonnull final String mChecksum;
+
+        Record(final long length, final long lastModified, @Nonnull final String checksum) {
+            mLength = length;
+            mLastModified = lastModified;
+            mChecksum = checksum;
+        }
+    }
+
+    @Nonnull
+    private static File getRecordDirectory(@Nonnull final Context context) {
+        return new File(context.getFilesDir(), RECORD_DIRECTORY_NAME);
+    }
+
+    // The record of dicts/<locale>/<file> is dict_verification/<locale>/<file>.
+    @Nonnull
+    private static File getRecordFile(@Nonnull final Context context,
+            @Nonnull final File dictFile) {
+        return new File(new File(getRecordDirectory(context), dictFile.getParentFile().getName()),
+                dictFile.getName());
+    }
+
+    // Removes the records of the dictionary files that no longer exist.
+    private static void removeStaleRecords(@Nonnull final Context context,
+            @Nonnull final ArrayList<File> dictFiles) {
+        final File[] recordDirectories = getRecordDirectory(context).listFiles();
+        if (null == recordDirectories) {
+            return;
+        }
+        final HashSet<File> recordFiles = new HashSet<>();
+        for (final File dictFile : dictFiles) {
+            recordFiles.add(getRecordFile(context, dictFile));
+        }
+        for (final File recordDirectory : recordDirectories) {
+            final File[] records = recordDirectory.listFiles();
+            if (null == records) continue;
+            for (final File record : records) {
+                if (!recordFiles.contains(record) && !record.delete()) {
+                    Log.e(TAG, "Can't remove a file: " + record.getName());
+                }
+            }
+        }
+    }
+
+    @Nullable
+    private static Record readRecord(@Nonnull final File recordFile) {
+        if (!recordFile.isFile()) {
+            return null;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(recordFile), RECORD_CHARSET));
+            final String line = reader.readLine();
+            final String[] fields = null == line ? null : line.split(" ");
+            if (null == fields || 3 != fields.length) {
+                return null;
+            }
+            return new Record(Long.parseLong(fields[0]), Long.parseLong(fields[1]), fields[2]);
+        } catch (final IOException | NumberFormatException e) {
+            Log.e(TAG, "Cannot read the verification record: " + recordFile.getName(), e);
+            return null;
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    private static void writeRecord(@Nonnull final File recordFile, @Nonnull final Record record) {
+        final File directory = recordFile.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(TAG, "Could not create the directory: " + directory.getName());
+            return;
+        }
+        final File tempFile = new File(recordFile.getPath() + ".tmp");
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(tempFile), RECORD_CHARSET);
+            writer.write(record.mLength + " " + record.mLastModified + " " + record.mChecksum
+                    + "\n");
+            writer.close();
+            writer = null;
+            if (!tempFile.renameTo(recordFile)) {
+                Log.e(TAG, "Cannot rename the verification record to " + recordFile.getName());
+            }
+        } catch (final IOException e) {
+            Log.e(TAG, "Cannot write the verification record: " + recordFile.getName(), e);
+        } finally {
+            closeQuietly(writer);
+        }
+    }
+
+    private static void closeQuietly(@Nullable final Closeable closeable) {
+        if (null == closeable) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (final IOException e) {
+            // Nothing we can do.
+        }
+    }
+}
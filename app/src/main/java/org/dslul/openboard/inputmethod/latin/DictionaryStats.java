@@ -16,6 +16,8 @@
 
 package org.dslul.openboard.inputmethod.latin;
 
+import org.dslul.openboard.inputmethod.latin.utils.ProcessResourceUsage;
+
 import java.io.File;
 import java.math.BigDecimal;
 import java.util.Locale;
@@ -32,6 +34,8 @@ public class DictionaryStats {
     public final long mDictFileSize;
     public final int mContentVersion;
     public final int mWordCount;
+    // Time, page faults and resident memory growth caused by opening the dictionary, if measured.
+    @Nullable public final ProcessResourceUsage mLoadUsage;
 
     public DictionaryStats(
             @Nonnull final Locale locale,
@@ -45,6 +49,22 @@ public class DictionaryStats {
         mDictFileName = dictFileName;
         mContentVersion = contentVersion;
         mWordCount = -1;
+        mLoadUsage = null;
+    }
+
+    public DictionaryStats(
+            @Nonnull final Locale locale,
+            @Nonnull final String dictType,
+            @Nullable final String dictFileName,
+            final long dictFileSize,
+            @Nullable final ProcessResourceUsage loadUsage) {
+        mLocale = locale;
+        mDictType = dictType;
+        mDictFileSize = dictFileSize;
+        mDictFileName = dictFileName;
+        mContentVersion = 0;
+        mWordCount = -1;
+        mLoadUsage = loadUsage;
     }
 
     public DictionaryStats(
@@ -57,6 +77,7 @@ public class DictionaryStats {
         mDictFileName = null;
         mContentVersion = 0;
         mWordCount = wordCount;
+        mLoadUsage = null;
     }
 
     public String getFileSizeString() {
@@ -89,6 +110,10 @@ public class DictionaryStats {
             builder.append(" / ");
             builder.append(getFileSizeString());
         }
+        if (mLoadUsage != null) {
+            builder.append(", opened in ");
+            builder.append(mLoadUsage);
+        }
         return builder.toString();
     }
 
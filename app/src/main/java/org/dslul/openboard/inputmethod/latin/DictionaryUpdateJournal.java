@@ -0,0 +1,245 @@
+package org.dslul.openboard.inputmethod.latin;
+
+import android.util.Log;
+
+import org.dslul.openboard.inputmethod.latin.NgramContext.WordInfo;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+
+/**
+ * An append-only journal of the updates made to an updatable dictionary since it was last written
+ * to its file.
+ *
+ * Writing a ver4 dictionary rewrites all of its buffers, which for a user history dictionary is a
+ * lot of I/O to persist the handful of words typed in a text field. Instead, the updates are
+ * recorded here and appended to a small file next to the dictionary, which is replayed on top of
+ * the dictionary when it is loaded again. The dictionary itself only needs to be written when the
+ * journal grows past {@link #CHECKPOINT_THRESHOLD_BYTES}, or when it was updated in a way the
+ * journal cannot record, after which the journal is reset.
+ *
+ * This class is not thread safe; it is used under the write lock of the dictionary.
+ */
+final class DictionaryUpdateJournal {
+    private static final String TAG = DictionaryUpdateJournal.class.getSimpleName();
+
+    static final String FILE_NAME_SUFFIX = ".journal";
+
+    // The journal size at which the dictionary is written out rather than journaled further. At
+    // a few dozen bytes per record, this is a couple thousand words.
+    private static final int CHECKPOINT_THRESHOLD_BYTES = 64 * 1024;
+
+    private static final int MAGIC_NUMBER = 0x4A524E4C; // "JRNL"
+    private static final int VERSION = 1;
+
+    private static final byte RECORD_UPDATE_ENTRIES = 1;
+    private static final byte RECORD_REMOVE_UNIGRAM = 2;
+
+    private static final byte PREV_WORD_EMPTY = 0;
+    private static final byte PREV_WORD_WORD = 1;
+    private static final byte PREV_WORD_BEGINNING_OF_SENTENCE = 2;
+
+    private final File mFile;
+    // Records that have been applied to the dictionary but not yet appended to the file.
+    private final ByteArrayOutputStream mPendingBuffer = new ByteArrayOutputStream();
+    private final DataOutputStream mPendingRecords = new DataOutputStream(mPendingBuffer);
+    // Whether the dictionary has been updated in a way the journal does not record.
+    private boolean mHasUnrecordedUpdates;
+
+    DictionaryUpdateJournal(@Nonnull final File dictFile) {
+        mFile = new File(dictFile.getPath() + FILE_NAME_SUFFIX);
+    }
+
+    void recordUpdateEntries(@Nonnull final NgramContext ngramContext, final String word,
+            final boolean isValidWord, final int count, final int timestamp) {
+        try {
+            mPendingRecords.writeByte(RECORD_UPDATE_ENTRIES);
+            final int prevWordCount = ngramContext.getPrevWordCount();
+            mPendingRecords.writeByte(prevWordCount);
+            for (int n = 1; n <= prevWordCount; n++) {
+                final CharSequence prevWord = ngramContext.getNthPrevWord(n);
+                if (ngramContext.isNthPrevWordBeginningOfSentence(n)) {
+                    mPendingRecords.writeByte(PREV_WORD_BEGINNING_OF_SENTENCE);
+                } else if (prevWord == null) {
+                    mPendingRecords.writeByte(PREV_WORD_EMPTY);
+                } else {
+                    mPendingRecords.writeByte(PREV_WORD_WORD);
+                    mPendingRecords.writeUTF(prevWord.toString());
+                }
+            }
+            mPendingRecords.writeUTF(word);
+            mPendingRecords.writeBoolean(isValidWord);
+            mPendingRecords.writeInt(count);
+            mPendingRecords.writeInt(timestamp);
+        } catch (final IOException e) {
+            // Writing to memory does not fail, but make sure the update is not lost if it does.
+            mHasUnrecordedUpdates = true;
+        }
+    }
+
+    void recordRemoveUnigram(final String word) {
+        try {
+            mPendingRecords.writeByte(RECORD_REMOVE_UNIGRAM);
+            mPendingRecords.writeUTF(word);
+        } catch (final IOException e) {
+            mHasUnrecordedUpdates = true;
+        }
+    }
+
+    void onUnrecordedUpdate() {
+        mHasUnrecordedUpdates = true;
+    }
+
+    /**
+     * Returns whether the dictionary should be written to its file instead of appending to the
+     * journal, either because the journal has grown too large or because it is incomplete.
+     */
+    boolean needsCheckpoint() {
+        return mHasUnrecordedUpdates
+                || mFile.length() + mPendingBuffer.size() > CHECKPOINT_THRESHOLD_BYTES;
+    }
+
+    /**
+     * Appends the pending records to the journal file.
+     * @return the number of bytes written, or -1 if the journal could not be written, in which
+     * case the dictionary has to be written instead.
+     */
+    int writePendingRecords() {
+        if (mPendingBuffer.size() == 0) {
+            return 0;
+        }
+        final boolean needsHeader = mFile.length() == 0;
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(mFile, true /* append */);
+            int bytesWritten = 0;
+            if (needsHeader) {
+                final DataOutputStream header = new DataOutputStream(out);
+                header.writeInt(MAGIC_NUMBER);
+                header.writeInt(VERSION);
+                bytesWritten += header.size();
+            }
+            mPendingBuffer.writeTo(out);
+            bytesWritten += mPendingBuffer.size();
+            out.getFD().sync();
+            mPendingBuffer.reset();
+            return bytesWritten;
+        } catch (final IOException e) {
+            Log.e(TAG, "Cannot append to the journal: " + mFile.getName(), e);
+            mHasUnrecordedUpdates = true;
+            return -1;
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * Applies the records of the journal file to a dictionary that has just been loaded from its
+     * file. A truncated last record, as left by a crash while appending, is ignored.
+     * @return the number of records applied.
+     */
+    int replay(@Nonnull final BinaryDictionary binaryDictionary) {
+        if (!mFile.exists()) {
+            return 0;
+        }
+        int recordCount = 0;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            if (in.readInt() != MAGIC_NUMBER || in.readInt() != VERSION) {
+                Log.e(TAG, "Unknown journal format, ignoring it: " + mFile.getName());
+                closeQuietly(in);
+                in = null;
+                reset();
+                return 0;
+            }
+            while (true) {
+                final byte recordType;
+                try {
+                    recordType = in.readByte();
+                } catch (final EOFException e) {
+                    break;
+                }
+                switch (recordType) {
+                case RECORD_UPDATE_ENTRIES:
+                    final NgramContext ngramContext = readNgramContext(in);
+                    final String word = in.readUTF();
+                    final boolean isValidWord = in.readBoolean();
+                    final int count = in.readInt();
+                    final int timestamp = in.readInt();
+                    binaryDictionary.updateEntriesForWordWithNgramContext(ngramContext, word,
+                            isValidWord, count, timestamp);
+                    break;
+                case RECORD_REMOVE_UNIGRAM:
+                    binaryDictionary.removeUnigramEntry(in.readUTF());
+                    break;
+                default:
+                    throw new IOException("Unknown record type: " + recordType);
+                }
+                recordCount++;
+            }
+        } catch (final IOException e) {
+            // Keep what could be replayed, and write it out at the next checkpoint so that the
+            // broken journal is discarded.
+            Log.e(TAG, "Cannot replay the whole journal: " + mFile.getName(), e);
+            mHasUnrecordedUpdates = true;
+        } finally {
+            closeQuietly(in);
+        }
+        return recordCount;
+    }
+
+    /**
+     * Discards the journal, after the dictionary has been written to or removed from its file.
+     */
+    void reset() {
+        mPendingBuffer.reset();
+        mHasUnrecordedUpdates = false;
+        if (mFile.exists() && !mFile.delete()) {
+            Log.e(TAG, "Can't remove a file: " + mFile.getName());
+        }
+    }
+
+    private static NgramContext readNgramContext(final DataInputStream in) throws IOException {
+        final int prevWordCount = in.readByte();
+        final WordInfo[] prevWordsInfo = new WordInfo[prevWordCount];
+        for (int i = 0; i < prevWordCount; i++) {
+            final byte prevWordType = in.readByte();
+            switch (prevWordType) {
+            case PREV_WORD_EMPTY:
+                prevWordsInfo[i] = WordInfo.EMPTY_WORD_INFO;
+                break;
+            case PREV_WORD_WORD:
+                prevWordsInfo[i] = new WordInfo(in.readUTF());
+                break;
+            case PREV_WORD_BEGINNING_OF_SENTENCE:
+                prevWordsInfo[i] = WordInfo.BEGINNING_OF_SENTENCE_WORD_INFO;
+                break;
+            default:
+                throw new IOException("Unknown previous word type: " + prevWordType);
+            }
+        }
+        return new NgramContext(prevWordsInfo);
+    }
+
+    private static void closeQuietly(final Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (final IOException e) {
+            // Nothing we can do.
+        }
+    }
+}
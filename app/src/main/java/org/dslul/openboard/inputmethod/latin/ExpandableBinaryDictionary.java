@@ -17,12 +17,14 @@
 package org.dslul.openboard.inputmethod.latin;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.util.Log;
 
 import org.dslul.openboard.inputmethod.annotations.UsedForTesting;
 import org.dslul.openboard.inputmethod.latin.SuggestedWords.SuggestedWordInfo;
 import org.dslul.openboard.inputmethod.latin.common.ComposedData;
 import org.dslul.openboard.inputmethod.latin.common.FileUtils;
+import org.dslul.openboard.inputmethod.latin.define.DebugFlags;
 import org.dslul.openboard.inputmethod.latin.define.DecoderSpecificConstants;
 import org.dslul.openboard.inputmethod.latin.makedict.DictionaryHeader;
 import org.dslul.openboard.inputmethod.latin.makedict.FormatSpec;
@@ -42,6 +44,7 @@ import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -106,6 +109,22 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
 
     private Map<String, String> mAdditionalAttributeMap = null;
 
+    /** The updates not written to the dictionary file yet, if this dictionary journals them. */
+    @Nullable
+    private final DictionaryUpdateJournal mUpdateJournal;
+
+    // Bytes written to persist this dictionary, to compare the journal with full writes.
+    private final long mCreationTime = SystemClock.elapsedRealtime();
+    private long mJournalBytesWritten;
+    private long mDictionaryBytesWritten;
+
+    /**
+     * Incremented each time one of these dictionaries needs to be recreated, for example because
+     * the personal dictionary or the contacts changed, and again once it has been reloaded, so
+     * that results computed from the previous contents can be told apart.
+     */
+    private static final AtomicInteger sReloadGeneration = new AtomicInteger();
+
     /* A extension for a binary dictionary file. */
     protected static final String DICT_FILE_EXTENSION = ".dict";
 
@@ -141,6 +160,25 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
      */
     public ExpandableBinaryDictionary(final Context context, final String dictName,
             final Locale locale, final String dictType, final File dictFile) {
+        this(context, dictName, locale, dictType, dictFile, false /* usesUpdateJournal */);
+    }
+
+    /**
+     * Creates a new expandable binary dictionary.
+     *
+     * @param context The application context of the parent.
+     * @param dictName The name of the dictionary. Multiple instances with the same
+     *        name is supported.
+     * @param locale the dictionary locale.
+     * @param dictType the dictionary type, as a human-readable string
+     * @param dictFile dictionary file path. if null, use default dictionary path based on
+     *        dictionary type.
+     * @param usesUpdateJournal whether to persist updates in a {@link DictionaryUpdateJournal}
+     *        rather than writing the whole dictionary when the input finishes.
+     */
+    protected ExpandableBinaryDictionary(final Context context, final String dictName,
+            final Locale locale, final String dictType, final File dictFile,
+            final boolean usesUpdateJournal) {
         super(dictType, locale);
         mDictName = dictName;
         mContext = context;
@@ -149,6 +187,7 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
         mIsReloading = new AtomicBoolean();
         mNeedsToRecreate = false;
         mLock = new ReentrantReadWriteLock();
+        mUpdateJournal = usesUpdateJournal ? new DictionaryUpdateJournal(mDictFile) : null;
     }
 
     public static File getDictFile(final Context context, final String dictName,
@@ -200,6 +239,9 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
         asyncExecuteTaskWithWriteLock(new Runnable() {
             @Override
             public void run() {
+                if (mUpdateJournal != null && getBinaryDictionary() != null) {
+                    persistUpdatesLocked();
+                }
                 closeBinaryDictionary();
             }
         });
@@ -231,6 +273,9 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
         if (mDictFile.exists() && !FileUtils.deleteRecursively(mDictFile)) {
             Log.e(TAG, "Can't remove a file: " + mDictFile.getName());
         }
+        if (mUpdateJournal != null) {
+            mUpdateJournal.reset();
+        }
     }
 
     private void openBinaryDictionaryLocked() {
@@ -272,7 +317,7 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
 
     protected void runGCIfRequiredLocked(final boolean mindsBlockByGC) {
         if (mBinaryDictionary.needsToRunGC(mindsBlockByGC)) {
-            mBinaryDictionary.flushWithGC();
+            onDictionaryWrittenLocked(mBinaryDictionary.flushWithGC());
         }
     }
 
@@ -309,6 +354,7 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
     protected void addUnigramLocked(final String word, final int frequency,
             final String shortcutTarget, final int shortcutFreq, final boolean isNotAWord,
             final boolean isPossiblyOffensive, final int timestamp) {
+        onUnrecordedUpdateLocked();
         if (!mBinaryDictionary.addUnigramEntry(word, frequency, shortcutTarget, shortcutFreq,
                 false /* isBeginningOfSentence */, isNotAWord, isPossiblyOffensive, timestamp)) {
             Log.e(TAG, "Cannot add unigram entry. word: " + word);
@@ -332,6 +378,8 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
                     if (DEBUG) {
                         Log.i(TAG, "Cannot remove unigram entry: " + word);
                     }
+                } else if (mUpdateJournal != null) {
+                    mUpdateJournal.recordRemoveUnigram(word);
                 }
             }
         });
@@ -357,6 +405,7 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
 
     protected void addNgramEntryLocked(@Nonnull final NgramContext ngramContext, final String word,
             final int frequency, final int timestamp) {
+        onUnrecordedUpdateLocked();
         if (!mBinaryDictionary.addNgramEntry(ngramContext, word, frequency, timestamp)) {
             if (DEBUG) {
                 Log.i(TAG, "Cannot add n-gram entry.");
@@ -383,6 +432,9 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
                         Log.e(TAG, "Cannot update counter. word: " + word
                                 + " context: " + ngramContext.toString());
                     }
+                } else if (mUpdateJournal != null) {
+                    mUpdateJournal.recordUpdateEntries(ngramContext, word, isValidWord, count,
+                            timestamp);
                 }
             }
         });
@@ -416,6 +468,7 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
                     if (binaryDictionary == null) {
                         return;
                     }
+                    onUnrecordedUpdateLocked();
                     binaryDictionary.updateEntriesForInputEvents(
                             inputEvents.toArray(
                                     new WordInputEventForPersonalization[inputEvents.size()]));
@@ -543,6 +596,15 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
                 removeBinaryDictionaryLocked();
             }
         }
+        if (mUpdateJournal != null && mBinaryDictionary != null
+                && mBinaryDictionary.isValidDictionary()) {
+            // The file only has the updates up to the last time it was written, the rest is in
+            // the journal.
+            final int recordCount = mUpdateJournal.replay(mBinaryDictionary);
+            if (DebugFlags.DEBUG_ENABLED) {
+                Log.d(TAG, "Replayed " + recordCount + " journal records: " + mDictName);
+            }
+        }
     }
 
     /**
@@ -553,7 +615,7 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
         createOnMemoryBinaryDictionaryLocked();
         loadInitialContentsLocked();
         // Run GC and flush to file when initial contents have been loaded.
-        mBinaryDictionary.flushWithGCIfHasUpdated();
+        onDictionaryWrittenLocked(mBinaryDictionary.flushWithGCIfHasUpdated());
     }
 
     /**
@@ -562,6 +624,7 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
      */
     protected void setNeedsToRecreate() {
         mNeedsToRecreate = true;
+        sReloadGeneration.incrementAndGet();
     }
 
     void clearNeedsToRecreate() {
@@ -572,6 +635,10 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
         return mNeedsToRecreate;
     }
 
+    public static int getReloadGeneration() {
+        return sReloadGeneration.get();
+    }
+
     /**
      * Load the current binary dictionary from internal storage. If the dictionary file doesn't
      * exists or needs to be regenerated, the new dictionary file will be asynchronously generated.
@@ -622,6 +689,7 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
                         }
                     }
                     clearNeedsToRecreate();
+                    sReloadGeneration.incrementAndGet();
                 } finally {
                     isReloading.set(false);
                 }
@@ -630,26 +698,79 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
     }
 
     /**
-     * Flush binary dictionary to dictionary file.
+     * Persist the updates of the binary dictionary, by appending them to the journal if this
+     * dictionary uses one, or by flushing the binary dictionary to the dictionary file.
      */
     @Override
     public void onFinishInput() {
         asyncExecuteTaskWithWriteLock(new Runnable() {
             @Override
             public void run() {
-                final BinaryDictionary binaryDictionary = getBinaryDictionary();
-                if (binaryDictionary == null) {
+                if (getBinaryDictionary() == null) {
                     return;
                 }
-                if (binaryDictionary.needsToRunGC(false /* mindsBlockByGC */)) {
-                    binaryDictionary.flushWithGCIfHasUpdated();
-                } else {
-                    binaryDictionary.flush();
-                }
+                persistUpdatesLocked();
             }
         });
     }
 
+    private void persistUpdatesLocked() {
+        final BinaryDictionary binaryDictionary = getBinaryDictionary();
+        final boolean needsToRunGC = binaryDictionary.needsToRunGC(false /* mindsBlockByGC */);
+        if (mUpdateJournal != null && !needsToRunGC && !mUpdateJournal.needsCheckpoint()) {
+            final int bytesWritten = mUpdateJournal.writePendingRecords();
+            if (bytesWritten >= 0) {
+                mJournalBytesWritten += bytesWritten;
+                logBytesWritten();
+                return;
+            }
+            // The journal could not be written, fall back to writing the dictionary.
+        }
+        final boolean hasUpdated = binaryDictionary.hasUpdated();
+        final boolean written;
+        if (needsToRunGC) {
+            written = binaryDictionary.flushWithGCIfHasUpdated();
+        } else {
+            written = binaryDictionary.flush();
+        }
+        onDictionaryWrittenLocked(written && hasUpdated);
+    }
+
+    /**
+     * Called after the binary dictionary may have been written to the dictionary file.
+     * @param written whether the dictionary has actually been written.
+     */
+    private void onDictionaryWrittenLocked(final boolean written) {
+        if (!written) {
+            return;
+        }
+        if (mUpdateJournal != null) {
+            mUpdateJournal.reset();
+        }
+        if (DebugFlags.DEBUG_ENABLED) {
+            mDictionaryBytesWritten += FileUtils.getTotalSize(mDictFile);
+            logBytesWritten();
+        }
+    }
+
+    private void onUnrecordedUpdateLocked() {
+        if (mUpdateJournal != null) {
+            mUpdateJournal.onUnrecordedUpdate();
+        }
+    }
+
+    private void logBytesWritten() {
+        if (!DebugFlags.DEBUG_ENABLED) {
+            return;
+        }
+        final long elapsedMinutes = Math.max(1,
+                TimeUnit.MILLISECONDS.toMinutes(SystemClock.elapsedRealtime() - mCreationTime));
+        final long totalBytesWritten = mJournalBytesWritten + mDictionaryBytesWritten;
+        Log.d(TAG, "Bytes written for " + mDictName + ": journal=" + mJournalBytesWritten
+                + ", dictionary=" + mDictionaryBytesWritten + ", per hour="
+                + totalBytesWritten * 60 / elapsedMinutes);
+    }
+
     public DictionaryStats getDictionaryStats() {
         reloadDictionaryIfRequired();
         final String dictName = mDictName;
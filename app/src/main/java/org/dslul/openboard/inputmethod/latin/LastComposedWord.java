@@ -43,6 +43,10 @@ public final class LastComposedWord {
     // COMMIT_TYPE_CANCEL_AUTO_CORRECT is used upon committing back the old word upon cancelling
     // an auto-correction.
     public static final int COMMIT_TYPE_CANCEL_AUTO_CORRECT = 3;
+    // COMMIT_TYPE_SHORTCUT_EXPANSION is used when the IME commits the expansion of the shortcut
+    // the user typed. The expansion is not a word the user typed, so it is neither learned nor
+    // unlearned, but it can be reverted to the shortcut like a decided word.
+    public static final int COMMIT_TYPE_SHORTCUT_EXPANSION = 4;
 
     public static final String NOT_A_SEPARATOR = "";
 
@@ -52,6 +56,7 @@ public final class LastComposedWord {
     public final String mSeparatorString;
     public final NgramContext mNgramContext;
     public final int mCapitalizedMode;
+    public final int mCommitType;
     public final InputPointers mInputPointers =
             new InputPointers(DecoderSpecificConstants.DICTIONARY_MAX_WORD_LENGTH);
 
@@ -59,14 +64,14 @@ public final class LastComposedWord {
 
     public static final LastComposedWord NOT_A_COMPOSED_WORD =
             new LastComposedWord(new ArrayList<Event>(), null, "", "",
-            NOT_A_SEPARATOR, null, WordComposer.CAPS_MODE_OFF);
+            NOT_A_SEPARATOR, null, WordComposer.CAPS_MODE_OFF, COMMIT_TYPE_USER_TYPED_WORD);
 
     // Warning: this is using the passed objects as is and fully expects them to be
     // immutable. Do not fiddle with their contents after you passed them to this constructor.
     public LastComposedWord(final ArrayList<Event> events,
             final InputPointers inputPointers, final String typedWord,
             final CharSequence committedWord, final String separatorString,
-            final NgramContext ngramContext, final int capitalizedMode) {
+            final NgramContext ngramContext, final int capitalizedMode, final int commitType) {
         if (inputPointers != null) {
             mInputPointers.copy(inputPointers);
         }
@@ -77,6 +82,7 @@ public final class LastComposedWord {
         mActive = true;
         mNgramContext = ngramContext;
         mCapitalizedMode = capitalizedMode;
+        mCommitType = commitType;
     }
 
     public void deactivate() {
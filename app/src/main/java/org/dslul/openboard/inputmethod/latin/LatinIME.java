@@ -33,6 +33,7 @@ import android.os.Debug;
 import android.os.IBinder;
 import android.os.Message;
 import android.os.Process;
+import android.os.SystemClock;
 import android.text.InputType;
 import android.util.Log;
 import android.util.PrintWriterPrinter;
@@ -93,8 +94,10 @@ import org.dslul.openboard.inputmethod.latin.utils.ViewLayoutUtils;
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
@@ -141,6 +144,8 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
     private final DictionaryFacilitator mDictionaryFacilitator =
             DictionaryFacilitatorProvider.getDictionaryFacilitator(
                     false /* isNeededForSpellChecking */);
+    // The settings values the dictionary facilitator was last reset with.
+    private SettingsValues mDictionarySettingsValues;
     final InputLogic mInputLogic = new InputLogic(this /* LatinIME */,
             this /* SuggestionStripViewAccessor */, mDictionaryFacilitator);
     // We expect to have only one decoder in almost all cases, hence the default capacity of 1.
@@ -157,6 +162,7 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
     private final SubtypeState mSubtypeState = new SubtypeState();
     private EmojiAltPhysicalKeyDetector mEmojiAltPhysicalKeyDetector;
     private StatsUtilsManager mStatsUtilsManager;
+    private ScheduledFuture<?> mDictionaryVerificationFuture;
     // Working variable for {@link #startShowingInputView()} and
     // {@link #onEvaluateInputViewShown()}.
     private boolean mIsExecutingStartShowingInputView;
@@ -229,8 +235,9 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
         private static final int MSG_RESUME_SUGGESTIONS_FOR_START_INPUT = 10;
         private static final int MSG_SWITCH_LANGUAGE_AUTOMATICALLY = 11;
         private static final int MSG_UPDATE_CLIPBOARD_PINNED_CLIPS = 12;
+        private static final int MSG_PREDICTIONS_PRECOMPUTED = 13;
         // Update this when adding new messages
-        private static final int MSG_LAST = MSG_UPDATE_CLIPBOARD_PINNED_CLIPS;
+        private static final int MSG_LAST = MSG_PREDICTIONS_PRECOMPUTED;
 
         private static final int ARG1_NOT_GESTURE_INPUT = 0;
         private static final int ARG1_DISMISS_GESTURE_FLOATING_PREVIEW_TEXT = 1;
@@ -240,6 +247,11 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
 
         private int mDelayInMillisecondsToUpdateSuggestions;
         private int mDelayInMillisecondsToUpdateShiftState;
+        private final SuggestionUpdateScheduler mSuggestionUpdateScheduler =
+                new SuggestionUpdateScheduler();
+        // Whether an update showing predictions came while they were being computed ahead of
+        // time, and is to be done when they are ready.
+        private boolean mHasDeferredPredictionUpdate;
 
         public UIHandler(@Nonnull final LatinIME ownerInstance) {
             super(ownerInstance);
@@ -253,6 +265,7 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
             final Resources res = latinIme.getResources();
             mDelayInMillisecondsToUpdateSuggestions = res.getInteger(
                     R.integer.config_delay_in_milliseconds_to_update_suggestions);
+            mSuggestionUpdateScheduler.setBaseDelay(mDelayInMillisecondsToUpdateSuggestions);
             mDelayInMillisecondsToUpdateShiftState = res.getInteger(
                     R.integer.config_delay_in_milliseconds_to_update_shift_state);
         }
@@ -267,8 +280,19 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
             switch (msg.what) {
                 case MSG_UPDATE_SUGGESTION_STRIP:
                     cancelUpdateSuggestionStrip();
+                    if (SuggestedWords.INPUT_STYLE_PREDICTION == msg.arg1
+                            && latinIme.mInputLogic.isPrecomputingPredictions()) {
+                        // Don't make the UI thread wait for the suggestion thread to finish.
+                        mHasDeferredPredictionUpdate = true;
+                        break;
+                    }
+                    final long updateStartTime = SystemClock.uptimeMillis();
                     latinIme.mInputLogic.performUpdateSuggestionStripSync(
                             latinIme.mSettings.getCurrent(), msg.arg1 /* inputStyle */);
+                    final long updateEndTime = SystemClock.uptimeMillis();
+                    mSuggestionUpdateScheduler.onUpdatePerformed(updateEndTime - updateStartTime);
+                    StatsUtils.onSuggestionUpdatePerformed(updateEndTime - updateStartTime,
+                            updateEndTime - mSuggestionUpdateScheduler.getLastRequestTime());
                     break;
                 case MSG_UPDATE_SHIFT_STATE:
                     switcher.requestUpdatingShiftState(latinIme.getCurrentAutoCapsState(),
@@ -332,12 +356,30 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
                     List<ClipboardHistoryEntry> entries = (List<ClipboardHistoryEntry>) msg.obj;
                     latinIme.mClipboardHistoryManager.onPinnedClipsAvailable(entries);
                     break;
+                case MSG_PREDICTIONS_PRECOMPUTED:
+                    if (latinIme.mInputLogic.onPredictionsPrecomputed(
+                            (Suggest.PredictionSnapshot) msg.obj)
+                            && mHasDeferredPredictionUpdate) {
+                        mHasDeferredPredictionUpdate = false;
+                        sendMessage(obtainMessage(MSG_UPDATE_SUGGESTION_STRIP,
+                                SuggestedWords.INPUT_STYLE_PREDICTION, 0 /* ignored */));
+                    }
+                    break;
             }
         }
 
+        /**
+         * Schedules an update of the suggestion strip, replacing the pending one if any. While
+         * typing, the delay adapts to the typing speed, see {@link SuggestionUpdateScheduler}.
+         */
         public void postUpdateSuggestionStrip(final int inputStyle) {
+            final long delay = mSuggestionUpdateScheduler.onUpdateRequested(
+                    SystemClock.uptimeMillis(), inputStyle);
+            removeMessages(MSG_UPDATE_SUGGESTION_STRIP);
+            mHasDeferredPredictionUpdate = false;
+            StatsUtils.onSuggestionUpdateRequested();
             sendMessageDelayed(obtainMessage(MSG_UPDATE_SUGGESTION_STRIP, inputStyle,
-                    0 /* ignored */), mDelayInMillisecondsToUpdateSuggestions);
+                    0 /* ignored */), delay);
         }
 
         public void postReopenDictionaries() {
@@ -394,6 +436,7 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
 
         public void cancelUpdateSuggestionStrip() {
             removeMessages(MSG_UPDATE_SUGGESTION_STRIP);
+            mSuggestionUpdateScheduler.onUpdateCancelled();
         }
 
         public boolean hasPendingUpdateSuggestions() {
@@ -450,6 +493,12 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
             obtainMessage(MSG_UPDATE_TAIL_BATCH_INPUT_COMPLETED, suggestedWords).sendToTarget();
         }
 
+        // Called on the suggestion thread when the predictions for the given snapshot are in the
+        // cache of Suggest.
+        public void postPredictionsPrecomputed(final Suggest.PredictionSnapshot snapshot) {
+            obtainMessage(MSG_PREDICTIONS_PRECOMPUTED, snapshot).sendToTarget();
+        }
+
         public void postSwitchLanguage(final InputMethodSubtype subtype) {
             obtainMessage(MSG_SWITCH_LANGUAGE_AUTOMATICALLY, subtype).sendToTarget();
         }
@@ -631,6 +680,8 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
         // {@link #resetDictionaryFacilitatorIfNecessary()}.
         loadSettings();
         resetDictionaryFacilitatorIfNecessary();
+        mDictionaryVerificationFuture =
+                DictionaryIntegrityVerifier.schedulePeriodicVerification(this /* context */);
 
         // Register to receive ringer mode change.
         final IntentFilter filter = new IntentFilter();
@@ -678,7 +729,13 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
         // been displayed. Opening dictionaries never affects responsivity as dictionaries are
         // asynchronously loaded.
         if (!mHandler.hasPendingReopenDictionaries()) {
-            resetDictionaryFacilitator(locale);
+            if (currentSettingsValues.hasSameDictionarySettings(mDictionarySettingsValues)
+                    && mDictionaryFacilitator.isForLocale(locale)) {
+                // Only the set of enabled subtypes may have changed, the dictionaries are open.
+                resetSecondaryDictionaries(currentSettingsValues);
+            } else {
+                resetDictionaryFacilitator(locale);
+            }
         }
         refreshPersonalizationDictionarySession(currentSettingsValues);
         resetDictionaryFacilitatorIfNecessary();
@@ -701,6 +758,8 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
         if (mainKeyboardView != null) {
             mainKeyboardView.setMainDictionaryAvailability(isMainDictionaryAvailable);
         }
+        // Predictions made while the dictionaries were loading may be missing words.
+        mInputLogic.mSuggest.clearPredictionCache();
         if (mHandler.hasPendingWaitForDictionaryLoad()) {
             mHandler.cancelWaitForDictionaryLoad();
             mHandler.postResumeSuggestions(false /* shouldDelay */);
@@ -741,11 +800,24 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
                 false /* forceReloadMainDictionary */,
                 settingsValues.mAccount, "" /* dictNamePrefix */,
                 this /* DictionaryInitializationListener */);
+        mDictionarySettingsValues = settingsValues;
+        resetSecondaryDictionaries(settingsValues);
+        // Loads after the dictionaries above, as they share the same executor.
+        mDictionaryFacilitator.preloadMainDictionaryForLocale(this /* context */,
+                mRichImm.getPredictedNextSubtypeLocale());
         if (settingsValues.mAutoCorrectionEnabledPerUserSettings) {
             mInputLogic.mSuggest.setAutoCorrectionThreshold(
                     settingsValues.mAutoCorrectionThreshold);
         }
         mInputLogic.mSuggest.setPlausibilityThreshold(settingsValues.mPlausibilityThreshold);
+        mInputLogic.mSuggest.clearPredictionCache();
+    }
+
+    private void resetSecondaryDictionaries(final SettingsValues settingsValues) {
+        mDictionaryFacilitator.resetSecondaryDictionaries(this /* context */,
+                settingsValues.mMultilingualTypingEnabled
+                        ? mRichImm.getEnabledSubtypeLocales()
+                        : Collections.<Locale>emptyList());
     }
 
     /**
@@ -772,6 +844,7 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
         unregisterReceiver(mDictionaryDumpBroadcastReceiver);
         unregisterReceiver(mRestartAfterDeviceUnlockReceiver);
         mStatsUtilsManager.onDestroy(this /* context */);
+        mDictionaryVerificationFuture.cancel(false /* mayInterruptIfRunning */);
         super.onDestroy();
     }
 
@@ -1034,6 +1107,10 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
                 switcher.saveKeyboardState();
             }
         } else if (restarting) {
+            if (switcher.needsToReloadKeyboard(currentSettingsValues)) {
+                switcher.loadKeyboard(editorInfo, currentSettingsValues,
+                        getCurrentAutoCapsState(), getCurrentRecapitalizeState());
+            }
             // TODO: Come up with a more comprehensive way to reset the keyboard layout when
             // a keyboard layout set doesn't get reloaded in this method.
             switcher.resetKeyboardStateToAlphabet(getCurrentAutoCapsState(),
@@ -1718,6 +1795,13 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
                 break;
             default: // SHIFT_NO_UPDATE
         }
+        if (inputTransaction.requiresPrecomputedPredictions()) {
+            final Keyboard keyboard = mKeyboardSwitcher.getKeyboard();
+            if (null != keyboard) {
+                mInputLogic.precomputePredictions(mSettings.getCurrent(), keyboard,
+                        mKeyboardSwitcher.getKeyboardShiftMode());
+            }
+        }
         if (inputTransaction.requiresUpdateSuggestions()) {
             final int inputStyle;
             if (inputTransaction.getMEvent().isSuggestionStripPress()) {
@@ -1725,6 +1809,8 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
                 inputStyle = SuggestedWords.INPUT_STYLE_NONE;
             } else if (inputTransaction.getMEvent().isGesture()) {
                 inputStyle = SuggestedWords.INPUT_STYLE_TAIL_BATCH;
+            } else if (inputTransaction.requiresPrecomputedPredictions()) {
+                inputStyle = SuggestedWords.INPUT_STYLE_PREDICTION;
             } else {
                 inputStyle = SuggestedWords.INPUT_STYLE_TYPING;
             }
@@ -0,0 +1,667 @@
+package org.dslul.openboard.inputmethod.latin;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteException;
+import android.net.Uri;
+import android.provider.UserDictionary.Words;
+import android.util.Log;
+
+import org.dslul.openboard.inputmethod.latin.common.LocaleUtils;
+import org.dslul.openboard.inputmethod.latin.define.DebugFlags;
+import org.dslul.openboard.inputmethod.latin.utils.ExecutorUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * An in-memory index of the system-wide "Personal dictionary", shared by everything in the
+ * process that reads it: the {@link UserBinaryDictionary} of the keyboard and of the spell checker
+ * for each locale, and {@link PersonalDictionaryLookup}.
+ *
+ * The words are grouped by the locale string of the {@link android.provider.UserDictionary}
+ * provider, with {@link #ALL_LOCALES} for the words of all locales, into immutable
+ * {@link LocaleEntries} that readers can use without locking.
+ *
+ * The provider is queried in full once. After that, changes to a single row, which the provider
+ * notifies with the URI of the row, are applied by querying that row only. Changes notified for
+ * the whole dictionary, like those made from its settings UI, still cause a full reload. Either
+ * way the reloads are delayed by {@link #RELOAD_DELAY_MS} so that bursts of notifications are
+ * handled at once.
+ */
+public final class PersonalDictionaryIndex {
+    private static final String TAG = PersonalDictionaryIndex.class.getSimpleName();
+
+    /**
+     * The delay (in milliseconds) to impose on reloads. The changes notified before it expires
+     * are applied together.
+     *
+     * Note, this value should be low enough to allow the "Add to dictionary" feature in the
+     * TextView correction (red underline) drop-down menu to work properly: the red underline
+     * should not reappear if the user taps space quickly after adding the word.
+     */
+    static final int RELOAD_DELAY_MS = 200;
+
+    // Above this number of changed rows, reloading everything is cheaper than a query per row.
+    private static final int MAX_ROW_CHANGES_TO_APPLY = 50;
+
+    /**
+     * The provider uses a null or an empty locale to mean "all locales".
+     */
+    public static final String ALL_LOCALES = "";
+
+    private static final String[] PROJECTION_WITH_SHORTCUT = new String[] {
+            Words._ID,
+            Words.WORD,
+            Words.SHORTCUT,
+            Words.FREQUENCY,
+            Words.LOCALE,
+    };
+    private static final String[] PROJECTION_WITHOUT_SHORTCUT = new String[] {
+            Words._ID,
+            Words.WORD,
+            Words.FREQUENCY,
+            Words.LOCALE,
+    };
+    private static final String SELECTION_ROW = Words._ID + "=?";
+
+    /**
+     * Interface to implement for classes interested in getting notified of updates.
+     */
+    public interface Listener {
+        /**
+         * Called on a background thread after the index has been updated.
+         * @param changedLocales the locale strings whose entries changed, or null if any of them
+         * may have changed.
+         */
+        void onPersonalDictionaryChanged(@Nullable Set<String> changedLocales);
+    }
+
+    private static PersonalDictionaryIndex sInstance;
+
+    private final ContentResolver mResolver;
+    private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<>();
+
+    // Guards the loads and updates of mEntries. Readers do not lock.
+    private final Object mLock = new Object();
+    // The entries of each locale string, or null until the first load.
+    private volatile Map<String, LocaleEntries> mEntries;
+
+    // The changes notified by the provider and not applied yet, guarded by mPendingChanges.
+    private final HashSet<Long> mPendingChanges = new HashSet<>();
+    private boolean mHasPendingFullReload;
+    private ScheduledFuture<?> mPendingChangesFuture;
+
+    public static synchronized PersonalDictionaryIndex getInstance(@Nonnull final Context context) {
+        if (sInstance == null) {
+            sInstance = new PersonalDictionaryIndex(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private PersonalDictionaryIndex(@Nonnull final Context context) {
+        mResolver = context.getContentResolver();
+        // The observer is registered for as long as the process lives. Individual items are
+        // notified as descendants of the dictionary URI.
+        mResolver.registerContentObserver(Words.CONTENT_URI, true /* notifyForDescendents */,
+                new ContentObserver(null) {
+                    @Override
+                    public boolean deliverSelfNotifications() {
+                        return true;
+                    }
+
+                    @Override
+                    public void onChange(final boolean selfChange) {
+                        onChange(selfChange, null);
+                    }
+
+                    @Override
+                    public void onChange(final boolean selfChange, final Uri uri) {
+                        onProviderChanged(uri);
+                    }
+                });
+        // Load in the background so that the entries are ready by the time they are needed.
+        ExecutorUtils.getBackgroundExecutor(ExecutorUtils.KEYBOARD).execute(new Runnable() {
+            @Override
+            public void run() {
+                getEntries();
+            }
+        });
+    }
+
+    public void addListener(@Nonnull final Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(@Nonnull final Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    public boolean isLoaded() {
+        return mEntries != null;
+    }
+
+    /**
+     * Returns the entries of each locale string, loading them in the current thread if the
+     * initial load has not happened yet.
+     */
+    @Nonnull
+    public Map<String, LocaleEntries> getEntries() {
+        final Map<String, LocaleEntries> entries = mEntries;
+        if (entries != null) {
+            return entries;
+        }
+        synchronized (mLock) {
+            if (mEntries == null) {
+                mEntries = loadAllLocked();
+            }
+            return mEntries;
+        }
+    }
+
+    /**
+     * Returns the entries of each locale string, or an empty map if they are not loaded yet.
+     * Does not block.
+     */
+    @Nonnull
+    public Map<String, LocaleEntries> getEntriesIfLoaded() {
+        final Map<String, LocaleEntries> entries = mEntries;
+        return entries != null ? entries : Collections.<String, LocaleEntries>emptyMap();
+    }
+
+    private void onProviderChanged(@Nullable final Uri uri) {
+        if (DebugFlags.DEBUG_ENABLED) {
+            Log.d(TAG, "onProviderChanged() : URI = " + uri);
+        }
+        final long rowId = getRowId(uri);
+        synchronized (mPendingChanges) {
+            if (rowId < 0) {
+                mHasPendingFullReload = true;
+            } else {
+                mPendingChanges.add(rowId);
+            }
+            // Cancel (but don't interrupt) a pending update to apply all the changes after the
+            // last notification. The changes it would have applied are still pending.
+            if (mPendingChangesFuture != null) {
+                mPendingChangesFuture.cancel(false /* mayInterruptIfRunning */);
+            }
+            mPendingChangesFuture = ExecutorUtils.getBackgroundExecutor(ExecutorUtils.KEYBOARD)
+                    .schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            applyPendingChanges();
+                        }
+                    }, RELOAD_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Returns the id of the row the URI points to, or -1 if it is not the URI of a single row.
+    private static long getRowId(@Nullable final Uri uri) {
+        if (uri == null || !Words.CONTENT_URI.getAuthority().equals(uri.getAuthority())) {
+            return -1;
+        }
+        final List<String> segments = uri.getPathSegments();
+        final List<String> dictSegments = Words.CONTENT_URI.getPathSegments();
+        if (segments.size() != dictSegments.size() + 1
+                || !segments.subList(0, dictSegments.size()).equals(dictSegments)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(uri.getLastPathSegment());
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void applyPendingChanges() {
+        final Long[] rowIds;
+        final boolean isFullReload;
+        synchronized (mPendingChanges) {
+            rowIds = mPendingChanges.toArray(new Long[mPendingChanges.size()]);
+            isFullReload = mHasPendingFullReload || rowIds.length > MAX_ROW_CHANGES_TO_APPLY;
+            mPendingChanges.clear();
+            mHasPendingFullReload = false;
+        }
+        if (rowIds.length == 0 && !isFullReload) {
+            return;
+        }
+        final Set<String> changedLocales;
+        synchronized (mLock) {
+            if (isFullReload || mEntries == null) {
+                mEntries = loadAllLocked();
+                changedLocales = null;
+            } else {
+                changedLocales = applyRowChangesLocked(rowIds);
+            }
+        }
+        for (final Listener listener : mListeners) {
+            listener.onPersonalDictionaryChanged(changedLocales);
+        }
+    }
+
+    @Nonnull
+    private Map<String, LocaleEntries> loadAllLocked() {
+        final ArrayList<Row> rows = queryRowsLocked(null /* selection */, null /* args */);
+        final HashMap<String, ArrayList<Row>> rowsByLocale = new HashMap<>();
+        for (final Row row : rows) {
+            ArrayList<Row> localeRows = rowsByLocale.get(row.mLocale);
+            if (localeRows == null) {
+                localeRows = new ArrayList<>();
+                rowsByLocale.put(row.mLocale, localeRows);
+            }
+            localeRows.add(row);
+        }
+        final HashMap<String, LocaleEntries> entries = new HashMap<>();
+        for (final Map.Entry<String, ArrayList<Row>> localeRows : rowsByLocale.entrySet()) {
+            entries.put(localeRows.getKey(),
+                    new LocaleEntries(localeRows.getKey(), localeRows.getValue()));
+        }
+        Log.i(TAG, "loadAllLocked() : Loaded " + rows.size() + " entries for "
+                + entries.size() + " locales");
+        return Collections.unmodifiableMap(entries);
+    }
+
+    // Returns the locale strings whose entries changed.
+    @Nonnull
+    private Set<String> applyRowChangesLocked(@Nonnull final Long[] rowIds) {
+        final Map<String, LocaleEntries> entries = mEntries;
+        // The rows of the locales that changed, decoded from their entries.
+        final HashMap<String, ArrayList<Row>> changedRows = new HashMap<>();
+        for (final long rowId : rowIds) {
+            // Remove the previous version of the row, wherever it was.
+            for (final String locale : entries.keySet()) {
+                final ArrayList<Row> rows = changedRows.get(locale);
+                if (rows != null) {
+                    if (removeRow(rows, rowId)) {
+                        break;
+                    }
+                } else if (entries.get(locale).indexOfRowId(rowId) >= 0) {
+                    final ArrayList<Row> decodedRows = entries.get(locale).getRows();
+                    removeRow(decodedRows, rowId);
+                    changedRows.put(locale, decodedRows);
+                    break;
+                }
+            }
+            // Then add its current version, unless it was deleted.
+            final ArrayList<Row> queriedRows =
+                    queryRowsLocked(SELECTION_ROW, new String[] { Long.toString(rowId) });
+            for (final Row row : queriedRows) {
+                ArrayList<Row> rows = changedRows.get(row.mLocale);
+                if (rows == null) {
+                    final LocaleEntries localeEntries = entries.get(row.mLocale);
+                    rows = localeEntries != null ? localeEntries.getRows() : new ArrayList<Row>();
+                    changedRows.put(row.mLocale, rows);
+                }
+                rows.add(row);
+            }
+        }
+        final HashMap<String, LocaleEntries> newEntries = new HashMap<>(entries);
+        for (final Map.Entry<String, ArrayList<Row>> localeRows : changedRows.entrySet()) {
+            if (localeRows.getValue().isEmpty()) {
+                newEntries.remove(localeRows.getKey());
+            } else {
+                newEntries.put(localeRows.getKey(),
+                        new LocaleEntries(localeRows.getKey(), localeRows.getValue()));
+            }
+        }
+        mEntries = Collections.unmodifiableMap(newEntries);
+        if (DebugFlags.DEBUG_ENABLED) {
+            Log.d(TAG, "applyRowChangesLocked() : Applied " + rowIds.length
+                    + " changes to locales " + changedRows.keySet());
+        }
+        return changedRows.keySet();
+    }
+
+    private static boolean removeRow(@Nonnull final ArrayList<Row> rows, final long rowId) {
+        for (int i = 0; i < rows.size(); i++) {
+            if (rows.get(i).mId == rowId) {
+                rows.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Nonnull
+    private ArrayList<Row> queryRowsLocked(@Nullable final String selection,
+            @Nullable final String[] selectionArgs) {
+        try {
+            return queryRowsLocked(PROJECTION_WITH_SHORTCUT, selection, selectionArgs);
+        } catch (final IllegalArgumentException e) {
+            // This may happen on some non-compliant devices where the declared API is JB+ but
+            // the SHORTCUT column is not present for some reason.
+            return queryRowsLocked(PROJECTION_WITHOUT_SHORTCUT, selection, selectionArgs);
+        }
+    }
+
+    @Nonnull
+    private ArrayList<Row> queryRowsLocked(@Nonnull final String[] projection,
+            @Nullable final String selection, @Nullable final String[] selectionArgs) {
+        final ArrayList<Row> rows = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            cursor = mResolver.query(Words.CONTENT_URI, projection, selection, selectionArgs,
+                    null /* sortOrder */);
+            if (cursor == null) {
+                return rows;
+            }
+            final int indexId = cursor.getColumnIndex(Words._ID);
+            final int indexWord = cursor.getColumnIndex(Words.WORD);
+            final int indexShortcut = cursor.getColumnIndex(Words.SHORTCUT);
+            final int indexFrequency = cursor.getColumnIndex(Words.FREQUENCY);
+            final int indexLocale = cursor.getColumnIndex(Words.LOCALE);
+            while (cursor.moveToNext()) {
+                final String word = cursor.getString(indexWord);
+                if (word == null) {
+                    continue;
+                }
+                final String shortcut = indexShortcut >= 0 ? cursor.getString(indexShortcut) : null;
+                final String locale = cursor.getString(indexLocale);
+                rows.add(new Row(cursor.getLong(indexId), word, shortcut,
+                        cursor.getInt(indexFrequency), locale != null ? locale : ALL_LOCALES));
+            }
+        } catch (final SQLiteException e) {
+            Log.e(TAG, "SQLiteException in the remote User dictionary process.", e);
+        } finally {
+            try {
+                if (null != cursor) cursor.close();
+            } catch (final SQLiteException e) {
+                Log.e(TAG, "SQLiteException in the remote User dictionary process.", e);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * A row of the provider.
+     */
+    static final class Row {
+        final long mId;
+        @Nonnull final String mWord;
+        @Nullable final String mShortcut;
+        final int mFrequency;
+        @Nonnull final String mLocale;
+
+        Row(final long id, @Nonnull final String word, @Nullable final String shortcut,
+                final int frequency, @Nonnull final String locale) {
+            mId = id;
+            mWord = word;
+            mShortcut = shortcut;
+            mFrequency = frequency;
+            mLocale = locale;
+        }
+    }
+
+    /**
+     * The entries of one locale string, sorted by their word lowercased in that locale.
+     *
+     * The words and shortcuts are stored as code points, back to back in a few int arrays with
+     * an array of start offsets for each, so that looking up a word is a binary search over
+     * primitive arrays. Instances are immutable.
+     */
+    public static final class LocaleEntries {
+        @Nonnull private final String mLocale;
+        private final long[] mRowIds;
+        private final int[] mFrequencies;
+        // Entry i is [mStarts[i], mStarts[i + 1]) in each of the code point arrays.
+        private final int[] mKeyCodePoints;
+        private final int[] mKeyStarts;
+        private final int[] mWordCodePoints;
+        private final int[] mWordStarts;
+        // An entry without a shortcut has an empty one.
+        private final int[] mShortcutCodePoints;
+        private final int[] mShortcutStarts;
+        // The entries that have a shortcut, sorted by shortcut.
+        private final int[] mShortcutOrder;
+
+        LocaleEntries(@Nonnull final String locale, @Nonnull final List<Row> rows) {
+            mLocale = locale;
+            final Locale dictLocale = LocaleUtils.constructLocaleFromString(locale);
+            final int size = rows.size();
+            final String[] keys = new String[size];
+            final Integer[] order = new Integer[size];
+            int keyLength = 0;
+            int wordLength = 0;
+            int shortcutLength = 0;
+            int shortcutCount = 0;
+            for (int i = 0; i < size; i++) {
+                final Row row = rows.get(i);
+                keys[i] = row.mWord.toLowerCase(dictLocale);
+                order[i] = i;
+                keyLength += keys[i].codePointCount(0, keys[i].length());
+                wordLength += row.mWord.codePointCount(0, row.mWord.length());
+                if (row.mShortcut != null) {
+                    shortcutLength += row.mShortcut.codePointCount(0, row.mShortcut.length());
+                    shortcutCount++;
+                }
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(final Integer a, final Integer b) {
+                    return compareCodePoints(keys[a], keys[b]);
+                }
+            });
+
+            mRowIds = new long[size];
+            mFrequencies = new int[size];
+            mKeyCodePoints = new int[keyLength];
+            mKeyStarts = new int[size + 1];
+            mWordCodePoints = new int[wordLength];
+            mWordStarts = new int[size + 1];
+            mShortcutCodePoints = new int[shortcutLength];
+            mShortcutStarts = new int[size + 1];
+            final Integer[] shortcutOrder = new Integer[shortcutCount];
+            shortcutCount = 0;
+            for (int i = 0; i < size; i++) {
+                final Row row = rows.get(order[i]);
+                mRowIds[i] = row.mId;
+                mFrequencies[i] = row.mFrequency;
+                mKeyStarts[i + 1] =
+                        appendCodePoints(keys[order[i]], mKeyCodePoints, mKeyStarts[i]);
+                mWordStarts[i + 1] = appendCodePoints(row.mWord, mWordCodePoints, mWordStarts[i]);
+                if (row.mShortcut != null) {
+                    mShortcutStarts[i + 1] = appendCodePoints(row.mShortcut, mShortcutCodePoints,
+                            mShortcutStarts[i]);
+                    shortcutOrder[shortcutCount++] = i;
+                } else {
+                    mShortcutStarts[i + 1] = mShortcutStarts[i];
+                }
+            }
+            Arrays.sort(shortcutOrder, new Comparator<Integer>() {
+                @Override
+                public int compare(final Integer a, final Integer b) {
+                    return compareCodePoints(mShortcutCodePoints, mShortcutStarts[a],
+                            mShortcutStarts[a + 1], mShortcutCodePoints, mShortcutStarts[b],
+                            mShortcutStarts[b + 1]);
+                }
+            });
+            mShortcutOrder = new int[shortcutCount];
+            for (int i = 0; i < shortcutCount; i++) {
+                mShortcutOrder[i] = shortcutOrder[i];
+            }
+        }
+
+        @Nonnull
+        public String getLocale() {
+            return mLocale;
+        }
+
+        public int size() {
+            return mRowIds.length;
+        }
+
+        public int getShortcutCount() {
+            return mShortcutOrder.length;
+        }
+
+        /**
+         * @return the word of an entry, as entered by the user, which might be capitalized.
+         */
+        @Nonnull
+        public String getWord(final int index) {
+            return new String(mWordCodePoints, mWordStarts[index],
+                    mWordStarts[index + 1] - mWordStarts[index]);
+        }
+
+        @Nullable
+        public String getShortcut(final int index) {
+            final int length = mShortcutStarts[index + 1] - mShortcutStarts[index];
+            if (length == 0) {
+                return null;
+            }
+            return new String(mShortcutCodePoints, mShortcutStarts[index], length);
+        }
+
+        public int getFrequency(final int index) {
+            return mFrequencies[index];
+        }
+
+        /**
+         * @param lowercasedWord a word, lowercased in the input locale.
+         * @return whether an entry has this word, ignoring its case.
+         */
+        public boolean containsWord(@Nonnull final String lowercasedWord) {
+            int low = 0;
+            int high = mRowIds.length - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                final int comparison = compareCodePoints(mKeyCodePoints, mKeyStarts[mid],
+                        mKeyStarts[mid + 1], lowercasedWord);
+                if (comparison < 0) {
+                    low = mid + 1;
+                } else if (comparison > 0) {
+                    high = mid - 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return the word of an entry with this exact shortcut, or null if there is none.
+         */
+        @Nullable
+        public String expandShortcut(@Nonnull final String shortcut) {
+            int low = 0;
+            int high = mShortcutOrder.length - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                final int index = mShortcutOrder[mid];
+                final int comparison = compareCodePoints(mShortcutCodePoints,
+                        mShortcutStarts[index], mShortcutStarts[index + 1], shortcut);
+                if (comparison < 0) {
+                    low = mid + 1;
+                } else if (comparison > 0) {
+                    high = mid - 1;
+                } else {
+                    return getWord(index);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return the shortcuts of the entries, in sorted order.
+         */
+        @Nonnull
+        public List<String> getShortcuts() {
+            final ArrayList<String> shortcuts = new ArrayList<>(mShortcutOrder.length);
+            for (final int index : mShortcutOrder) {
+                shortcuts.add(getShortcut(index));
+            }
+            return shortcuts;
+        }
+
+        int indexOfRowId(final long rowId) {
+            for (int i = 0; i < mRowIds.length; i++) {
+                if (mRowIds[i] == rowId) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Nonnull
+        ArrayList<Row> getRows() {
+            final ArrayList<Row> rows = new ArrayList<>(mRowIds.length + 1);
+            for (int i = 0; i < mRowIds.length; i++) {
+                rows.add(new Row(mRowIds[i], getWord(i), getShortcut(i), mFrequencies[i],
+                        mLocale));
+            }
+            return rows;
+        }
+
+        // Returns the end offset of the appended code points.
+        private static int appendCodePoints(@Nonnull final String string,
+                @Nonnull final int[] destination, final int start) {
+            int offset = start;
+            for (int i = 0; i < string.length(); i = string.offsetByCodePoints(i, 1)) {
+                destination[offset++] = string.codePointAt(i);
+            }
+            return offset;
+        }
+    }
+
+    // The entries are sorted by code point rather than by UTF-16 char like String#compareTo,
+    // so that the comparisons with the code point arrays are consistent.
+    static int compareCodePoints(@Nonnull final String a, @Nonnull final String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            final int codePointA = a.codePointAt(i);
+            final int codePointB = b.codePointAt(j);
+            if (codePointA != codePointB) {
+                return codePointA < codePointB ? -1 : 1;
+            }
+            i += Character.charCount(codePointA);
+            j += Character.charCount(codePointB);
+        }
+        return (i < a.length() ? 1 : 0) - (j < b.length() ? 1 : 0);
+    }
+
+    static int compareCodePoints(@Nonnull final int[] codePoints, final int start, final int end,
+            @Nonnull final String string) {
+        int i = start;
+        int j = 0;
+        while (i < end && j < string.length()) {
+            final int codePoint = string.codePointAt(j);
+            if (codePoints[i] != codePoint) {
+                return codePoints[i] < codePoint ? -1 : 1;
+            }
+            i++;
+            j += Character.charCount(codePoint);
+        }
+        return (i < end ? 1 : 0) - (j < string.length() ? 1 : 0);
+    }
+
+    static int compareCodePoints(@Nonnull final int[] a, final int startA, final int endA,
+            @Nonnull final int[] b, final int startB, final int endB) {
+        int i = startA;
+        int j = startB;
+        while (i < endA && j < endB) {
+            if (a[i] != b[j]) {
+                return a[i] < b[j] ? -1 : 1;
+            }
+            i++;
+            j++;
+        }
+        return (i < endA ? 1 : 0) - (j < endB ? 1 : 0);
+    }
+}
@@ -19,6 +19,7 @@ package org.dslul.openboard.inputmethod.latin;
 import org.dslul.openboard.inputmethod.latin.SuggestedWords.SuggestedWordInfo;
 import org.dslul.openboard.inputmethod.latin.common.ComposedData;
 import org.dslul.openboard.inputmethod.latin.settings.SettingsValuesForSuggestion;
+import org.dslul.openboard.inputmethod.latin.utils.ProcessResourceUsage;
 
 import java.util.ArrayList;
 import java.util.Locale;
@@ -37,18 +38,28 @@ public final class ReadOnlyBinaryDictionary extends Dictionary {
     private final ReentrantReadWriteLock mLock = new ReentrantReadWriteLock();
 
     private final BinaryDictionary mBinaryDictionary;
+    private final DictionaryStats mDictionaryStats;
 
     public ReadOnlyBinaryDictionary(final String filename, final long offset, final long length,
             final boolean useFullEditDistance, final Locale locale, final String dictType) {
         super(dictType, locale);
+        // The native side maps the file read-only, so opening only faults in the
+        // header pages. Record what the open actually cost to be able to check that.
+        final ProcessResourceUsage usageBeforeOpen = ProcessResourceUsage.sample();
         mBinaryDictionary = new BinaryDictionary(filename, offset, length, useFullEditDistance,
                 locale, dictType, false /* isUpdatable */);
+        mDictionaryStats = new DictionaryStats(locale, dictType, filename, length,
+                ProcessResourceUsage.sample().since(usageBeforeOpen));
     }
 
     public boolean isValidDictionary() {
         return mBinaryDictionary.isValidDictionary();
     }
 
+    public DictionaryStats getDictionaryStats() {
+        return mDictionaryStats;
+    }
+
     @Override
     public ArrayList<SuggestedWordInfo> getSuggestions(final ComposedData composedData,
             final NgramContext ngramContext, final long proximityInfoHandle,
@@ -461,6 +461,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
 
     private void detectLaggyConnection(final int operation, final long timeout, final long startTime) {
         final long duration = SystemClock.uptimeMillis() - startTime;
+        StatsUtils.onInputConnectionOperation(operation, duration);
         if (duration >= timeout) {
             final String operationName = OPERATION_NAMES[operation];
             Log.w(TAG, "Slow InputConnection: " + operationName + " took " + duration + " ms.");
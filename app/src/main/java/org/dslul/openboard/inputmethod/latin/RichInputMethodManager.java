@@ -36,6 +36,7 @@ import org.dslul.openboard.inputmethod.latin.utils.DeviceProtectedUtils;
 import org.dslul.openboard.inputmethod.latin.utils.LanguageOnSpacebarUtils;
 import org.dslul.openboard.inputmethod.latin.utils.SubtypeLocaleUtils;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -67,6 +68,8 @@ public class RichInputMethodManager {
     private InputMethodManagerCompatWrapper mImmWrapper;
     private InputMethodInfoCache mInputMethodInfoCache;
     private RichInputMethodSubtype mCurrentRichInputMethodSubtype;
+    // The locale of the subtype that was in use before the current one, if it differs.
+    @Nullable private Locale mPreviousSubtypeLocale;
     private InputMethodInfo mShortcutInputMethodInfo;
     private InputMethodSubtype mShortcutSubtype;
 
@@ -320,7 +323,12 @@ public class RichInputMethodManager {
     }
 
     public void onSubtypeChanged(@Nonnull final InputMethodSubtype newSubtype) {
+        final RichInputMethodSubtype oldSubtype = mCurrentRichInputMethodSubtype;
         updateCurrentSubtype(newSubtype);
+        if (null != oldSubtype && !oldSubtype.isNoLanguage()
+                && !oldSubtype.getLocale().equals(mCurrentRichInputMethodSubtype.getLocale())) {
+            mPreviousSubtypeLocale = oldSubtype.getLocale();
+        }
         updateShortcutIme();
         if (DEBUG) {
             Log.w(TAG, "onSubtypeChanged: " + mCurrentRichInputMethodSubtype.getNameForLogging());
@@ -351,6 +359,66 @@ public class RichInputMethodManager {
     }
 
 
+    /**
+     * Returns the distinct locales of the enabled subtypes of this IME, in the order of the
+     * subtypes, ignoring the subtypes without a language.
+     */
+    @Nonnull
+    public List<Locale> getEnabledSubtypeLocales() {
+        final ArrayList<Locale> locales = new ArrayList<>();
+        for (final InputMethodSubtype subtype : getMyEnabledInputMethodSubtypeList(
+                true /* allowsImplicitlySelectedSubtypes */)) {
+            if (subtype.isAuxiliary()
+                    || SubtypeLocaleUtils.NO_LANGUAGE.equals(subtype.getLocale())) {
+                continue;
+            }
+            final Locale locale = SubtypeLocaleUtils.getSubtypeLocale(subtype);
+            if (!locales.contains(locale)) {
+                locales.add(locale);
+            }
+        }
+        return locales;
+    }
+
+    /**
+     * Predicts the locale the user is most likely to switch to from the current subtype.
+     *
+     * This is the locale of the previously used subtype if it is still enabled, since users
+     * typing in two languages tend to go back and forth between them. Otherwise it is the
+     * locale of the subtype the language switch key would go to next.
+     * @return the predicted locale, or null if no other locale is enabled.
+     */
+    @Nullable
+    public Locale getPredictedNextSubtypeLocale() {
+        final Locale currentLocale = getCurrentSubtypeLocale();
+        final List<InputMethodSubtype> enabledSubtypes = getMyEnabledInputMethodSubtypeList(
+                true /* allowsImplicitlySelectedSubtypes */);
+        final Locale previousLocale = mPreviousSubtypeLocale;
+        if (null != previousLocale && !previousLocale.equals(currentLocale)) {
+            for (final InputMethodSubtype subtype : enabledSubtypes) {
+                if (previousLocale.equals(SubtypeLocaleUtils.getSubtypeLocale(subtype))) {
+                    return previousLocale;
+                }
+            }
+        }
+        final int count = enabledSubtypes.size();
+        final int currentIndex = getSubtypeIndexInList(
+                getCurrentSubtype().getRawSubtype(), enabledSubtypes);
+        for (int i = 1; i < count; i++) {
+            final InputMethodSubtype subtype =
+                    enabledSubtypes.get((currentIndex + i + count) % count);
+            if (subtype.isAuxiliary()
+                    || SubtypeLocaleUtils.NO_LANGUAGE.equals(subtype.getLocale())) {
+                continue;
+            }
+            final Locale locale = SubtypeLocaleUtils.getSubtypeLocale(subtype);
+            if (!locale.equals(currentLocale)) {
+                return locale;
+            }
+        }
+        return null;
+    }
+
     public String getCombiningRulesExtraValueOfCurrentSubtype() {
         return SubtypeLocaleUtils.getCombiningRulesExtraValue(getCurrentSubtype().getRawSubtype());
     }
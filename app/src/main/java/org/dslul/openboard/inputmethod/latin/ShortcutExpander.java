@@ -0,0 +1,201 @@
+package org.dslul.openboard.inputmethod.latin;
+
+import android.content.Context;
+import android.text.TextUtils;
+
+import org.dslul.openboard.inputmethod.latin.PersonalDictionaryIndex.LocaleEntries;
+import org.dslul.openboard.inputmethod.latin.common.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Expands the shortcuts of the personal dictionary as they are typed, like "gm" to
+ * "General Motors".
+ *
+ * The shortcuts that apply to the current locale are compiled into a trie stored in int arrays,
+ * with the children of each node sorted by code point, so that finding the expansion of the word
+ * being committed walks it once, whatever the number of shortcuts. The trie is rebuilt when the
+ * locale changes or when the {@link PersonalDictionaryIndex} has been updated.
+ *
+ * Expansions may span several lines: the two characters "\n" in the word of a shortcut stand for
+ * a line break, since the personal dictionary settings only take a single line.
+ *
+ * This class is not thread safe; it is used from the UI thread by the input logic.
+ */
+public final class ShortcutExpander {
+    private static final String LINE_BREAK_ESCAPE = "\\n";
+    private static final int NO_EXPANSION = -1;
+
+    private static final Comparator<int[]> EDGE_COMPARATOR = new Comparator<int[]>() {
+        @Override
+        public int compare(final int[] a, final int[] b) {
+            return Integer.compare(a[0], b[0]);
+        }
+    };
+
+    private final PersonalDictionaryIndex mIndex;
+
+    // The index entries and the locale the trie was built from.
+    private Map<String, LocaleEntries> mBuiltEntries;
+    private Locale mBuiltLocale;
+
+    // Node n has the children mChildNodes[mChildStarts[n]..mChildStarts[n + 1]), reached with
+    // the code points at the same positions in mChildCodePoints. Node 0 is the root.
+    private int[] mChildStarts = new int[] { 0, 0 };
+    private int[] mChildCodePoints = new int[0];
+    private int[] mChildNodes = new int[0];
+    // The index in mExpansions of the expansion of the shortcut ending at each node, or
+    // NO_EXPANSION.
+    private int[] mNodeExpansions = new int[] { NO_EXPANSION };
+    private String[] mExpansions = new String[0];
+
+    public ShortcutExpander(@Nonnull final Context context) {
+        mIndex = PersonalDictionaryIndex.getInstance(context);
+    }
+
+    /**
+     * Finds the expansion of a typed word.
+     *
+     * The word has to match a shortcut exactly, or, if only its first letter is capitalized as
+     * at the start of a sentence, match it in lower case, in which case the first letter of the
+     * expansion is capitalized too.
+     *
+     * @param typedWord the word being committed.
+     * @param locale the locale to expand the shortcuts of.
+     * @return the expansion, or null if the word is not a shortcut.
+     */
+    @Nullable
+    public String getExpansion(@Nonnull final String typedWord, @Nonnull final Locale locale) {
+        final Map<String, LocaleEntries> entries = mIndex.getEntriesIfLoaded();
+        if (entries != mBuiltEntries || !locale.equals(mBuiltLocale)) {
+            build(entries, locale);
+        }
+        if (mExpansions.length == 0) {
+            // Exit as early as possible. Most users don't use shortcuts.
+            return null;
+        }
+        final int expansionIndex = findExpansion(typedWord);
+        if (expansionIndex != NO_EXPANSION) {
+            return mExpansions[expansionIndex];
+        }
+        if (StringUtils.getCapitalizationType(typedWord) != StringUtils.CAPITALIZE_FIRST) {
+            return null;
+        }
+        final int lowerCaseExpansionIndex = findExpansion(typedWord.toLowerCase(locale));
+        if (lowerCaseExpansionIndex == NO_EXPANSION) {
+            return null;
+        }
+        return StringUtils.capitalizeFirstCodePoint(mExpansions[lowerCaseExpansionIndex], locale);
+    }
+
+    private int findExpansion(@Nonnull final String word) {
+        int node = 0;
+        for (int i = 0; i < word.length(); i = word.offsetByCodePoints(i, 1)) {
+            final int childIndex = Arrays.binarySearch(mChildCodePoints, mChildStarts[node],
+                    mChildStarts[node + 1], word.codePointAt(i));
+            if (childIndex < 0) {
+                return NO_EXPANSION;
+            }
+            node = mChildNodes[childIndex];
+        }
+        return mNodeExpansions[node];
+    }
+
+    private void build(@Nonnull final Map<String, LocaleEntries> entries,
+            @Nonnull final Locale locale) {
+        final TrieBuilder builder = new TrieBuilder();
+        // Add the shortcuts from the most general locale to the most specific one, so that a
+        // shortcut defined for several of them expands to the most specific expansion.
+        builder.addShortcuts(entries.get(PersonalDictionaryIndex.ALL_LOCALES));
+        builder.addShortcuts(entries.get(locale.getLanguage()));
+        if (!TextUtils.isEmpty(locale.getCountry())) {
+            builder.addShortcuts(entries.get(locale.toString()));
+        }
+        builder.compile();
+        mBuiltEntries = entries;
+        mBuiltLocale = locale;
+    }
+
+    private final class TrieBuilder {
+        // The children of each node, as pairs of code point and node, in insertion order.
+        private final ArrayList<ArrayList<int[]>> mChildren = new ArrayList<>();
+        private final ArrayList<Integer> mExpansionIndices = new ArrayList<>();
+        private final ArrayList<String> mExpansionList = new ArrayList<>();
+
+        TrieBuilder() {
+            addNode();
+        }
+
+        private int addNode() {
+            mChildren.add(new ArrayList<int[]>());
+            mExpansionIndices.add(NO_EXPANSION);
+            return mChildren.size() - 1;
+        }
+
+        void addShortcuts(@Nullable final LocaleEntries localeEntries) {
+            if (localeEntries == null) {
+                return;
+            }
+            for (int i = 0; i < localeEntries.size(); i++) {
+                final String shortcut = localeEntries.getShortcut(i);
+                if (shortcut != null) {
+                    add(shortcut, localeEntries.getWord(i).replace(LINE_BREAK_ESCAPE, "\n"));
+                }
+            }
+        }
+
+        private void add(@Nonnull final String shortcut, @Nonnull final String expansion) {
+            int node = 0;
+            for (int i = 0; i < shortcut.length(); i = shortcut.offsetByCodePoints(i, 1)) {
+                final int codePoint = shortcut.codePointAt(i);
+                int child = -1;
+                for (final int[] edge : mChildren.get(node)) {
+                    if (edge[0] == codePoint) {
+                        child = edge[1];
+                        break;
+                    }
+                }
+                if (child < 0) {
+                    child = addNode();
+                    mChildren.get(node).add(new int[] { codePoint, child });
+                }
+                node = child;
+            }
+            mExpansionList.add(expansion);
+            mExpansionIndices.set(node, mExpansionList.size() - 1);
+        }
+
+        void compile() {
+            final int nodeCount = mChildren.size();
+            final int[] childStarts = new int[nodeCount + 1];
+            final int[] childCodePoints = new int[nodeCount - 1];
+            final int[] childNodes = new int[nodeCount - 1];
+            final int[] nodeExpansions = new int[nodeCount];
+            int edgeCount = 0;
+            for (int node = 0; node < nodeCount; node++) {
+                final int[][] edges = mChildren.get(node).toArray(new int[0][]);
+                Arrays.sort(edges, EDGE_COMPARATOR);
+                childStarts[node] = edgeCount;
+                for (final int[] edge : edges) {
+                    childCodePoints[edgeCount] = edge[0];
+                    childNodes[edgeCount] = edge[1];
+                    edgeCount++;
+                }
+                nodeExpansions[node] = mExpansionIndices.get(node);
+            }
+            childStarts[nodeCount] = edgeCount;
+            mChildStarts = childStarts;
+            mChildCodePoints = childCodePoints;
+            mChildNodes = childNodes;
+            mNodeExpansions = nodeExpansions;
+            mExpansions = mExpansionList.toArray(new String[mExpansionList.size()]);
+        }
+    }
+}
@@ -18,19 +18,24 @@ package org.dslul.openboard.inputmethod.latin;
 
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.LruCache;
 
 import org.dslul.openboard.inputmethod.keyboard.Keyboard;
 import org.dslul.openboard.inputmethod.keyboard.KeyboardId;
 import org.dslul.openboard.inputmethod.latin.SuggestedWords.SuggestedWordInfo;
+import org.dslul.openboard.inputmethod.latin.common.ComposedData;
 import org.dslul.openboard.inputmethod.latin.common.Constants;
+import org.dslul.openboard.inputmethod.latin.common.InputPointers;
 import org.dslul.openboard.inputmethod.latin.common.StringUtils;
 import org.dslul.openboard.inputmethod.latin.define.DebugFlags;
+import org.dslul.openboard.inputmethod.latin.define.DecoderSpecificConstants;
 import org.dslul.openboard.inputmethod.latin.settings.SettingsValuesForSuggestion;
 import org.dslul.openboard.inputmethod.latin.utils.AutoCorrectionUtils;
 import org.dslul.openboard.inputmethod.latin.utils.BinaryDictionaryUtils;
 import org.dslul.openboard.inputmethod.latin.utils.SuggestionResults;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Locale;
 
@@ -68,8 +73,67 @@ public final class Suggest {
                 MAXIMUM_AUTO_CORRECT_LENGTH_FOR_GERMAN);
     }
 
+    // Predictions for the next word only depend on its n-gram context, so the raw results are
+    // kept for the last few contexts: the one computed ahead of time when a word is committed,
+    // and the ones the user may go back to by deleting the words after them.
+    private static final int PREDICTION_CACHE_SIZE = 8;
+
     private float mAutoCorrectionThreshold;
     private float mPlausibilityThreshold;
+    private final LruCache<PredictionSnapshot, CachedPredictions> mPredictionCache =
+            new LruCache<>(PREDICTION_CACHE_SIZE);
+
+    /**
+     * What the predictions for the next word are computed from, captured on the UI thread so
+     * that they can be computed on another thread without reading the input state there.
+     */
+    public static final class PredictionSnapshot {
+        @Nonnull public final NgramContext mNgramContext;
+        @Nonnull public final Keyboard mKeyboard;
+        @Nonnull public final SettingsValuesForSuggestion mSettingsValuesForSuggestion;
+        public final int mCapsMode;
+
+        public PredictionSnapshot(@Nonnull final NgramContext ngramContext,
+                @Nonnull final Keyboard keyboard,
+                @Nonnull final SettingsValuesForSuggestion settingsValuesForSuggestion,
+                final int capsMode) {
+            mNgramContext = ngramContext;
+            mKeyboard = keyboard;
+            mSettingsValuesForSuggestion = settingsValuesForSuggestion;
+            mCapsMode = capsMode;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new Object[] { mNgramContext, mKeyboard.mId,
+                    mSettingsValuesForSuggestion.mBlockPotentiallyOffensive, mCapsMode });
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof PredictionSnapshot)) return false;
+            final PredictionSnapshot other = (PredictionSnapshot) o;
+            return mNgramContext.equals(other.mNgramContext)
+                    && mKeyboard.mId.equals(other.mKeyboard.mId)
+                    && mSettingsValuesForSuggestion.mBlockPotentiallyOffensive
+                            == other.mSettingsValuesForSuggestion.mBlockPotentiallyOffensive
+                    && mCapsMode == other.mCapsMode;
+        }
+    }
+
+    private static final class CachedPredictions {
+        final Locale mLocale;
+        final int mReloadGeneration;
+        final SuggestionResults mSuggestionResults;
+
+        CachedPredictions(final Locale locale, final int reloadGeneration,
+                final SuggestionResults suggestionResults) {
+            mLocale = locale;
+            mReloadGeneration = reloadGeneration;
+            mSuggestionResults = suggestionResults;
+        }
+    }
 
     public Suggest(final DictionaryFacilitator dictionaryFacilitator) {
         mDictionaryFacilitator = dictionaryFacilitator;
@@ -93,6 +157,15 @@ public final class Suggest {
         mPlausibilityThreshold = threshold;
     }
 
+    /**
+     * Forget the cached predictions, for when the dictionaries or the settings they depend on
+     * change, or when words are learned or unlearned. Reloads of the personal dictionary, the
+     * contacts and the other dynamic dictionaries are detected by the cache itself.
+     */
+    public void clearPredictionCache() {
+        mPredictionCache.evictAll();
+    }
+
     public interface OnGetSuggestedWordsCallback {
         void onGetSuggestedWords(final SuggestedWords suggestedWords);
     }
@@ -120,7 +193,7 @@ public final class Suggest {
         final boolean isOnlyFirstCharCapitalized =
                 wordComposer.isOrWillBeOnlyFirstCharCapitalized();
 
-        final ArrayList<SuggestedWordInfo> suggestionsContainer = new ArrayList<>(results);
+        final ArrayList<SuggestedWordInfo> suggestionsContainer = results.getSortedSuggestions();
         final int suggestionsCount = suggestionsContainer.size();
         if (isOnlyFirstCharCapitalized || shouldMakeSuggestionsAllUpperCase
                 || 0 != trailingSingleQuotesCount) {
@@ -163,9 +236,12 @@ public final class Suggest {
                 ? typedWordString.substring(0, typedWordString.length() - trailingSingleQuotesCount)
                 : typedWordString;
 
-        final SuggestionResults suggestionResults = mDictionaryFacilitator.getSuggestionResults(
-                wordComposer.getComposedDataSnapshot(), ngramContext, keyboard,
-                settingsValuesForSuggestion, SESSION_ID_TYPING, inputStyleIfNotPrediction);
+        final SuggestionResults suggestionResults = wordComposer.isComposingWord()
+                ? mDictionaryFacilitator.getSuggestionResults(
+                        wordComposer.getComposedDataSnapshot(), ngramContext, keyboard,
+                        settingsValuesForSuggestion, SESSION_ID_TYPING, inputStyleIfNotPrediction)
+                : getPredictionResults(new PredictionSnapshot(ngramContext, keyboard,
+                        settingsValuesForSuggestion, wordComposer.getCapitalizedMode()));
         final Locale locale = mDictionaryFacilitator.getLocale();
         final ArrayList<SuggestedWordInfo> suggestionsContainer =
                 getTransformedSuggestedWordInfoList(wordComposer, suggestionResults,
@@ -290,6 +366,34 @@ public final class Suggest {
                 false /* isObsoleteSuggestions */, inputStyle, sequenceNumber));
     }
 
+    /**
+     * Retrieves the predictions for the next word from the cache, or from the dictionaries.
+     * This only reads the given snapshot, so it can be called on any thread.
+     */
+    public SuggestionResults getPredictionResults(@Nonnull final PredictionSnapshot snapshot) {
+        final Locale locale = mDictionaryFacilitator.getLocale();
+        // Read before computing, so that results racing with a reload are not reused after it.
+        final int reloadGeneration = ExpandableBinaryDictionary.getReloadGeneration();
+        final CachedPredictions cachedPredictions = mPredictionCache.get(snapshot);
+        if (null != cachedPredictions && null != locale && locale.equals(cachedPredictions.mLocale)
+                && reloadGeneration == cachedPredictions.mReloadGeneration) {
+            return cachedPredictions.mSuggestionResults;
+        }
+        final ComposedData composedData = new ComposedData(
+                new InputPointers(DecoderSpecificConstants.DICTIONARY_MAX_WORD_LENGTH),
+                false /* isBatchMode */, "" /* typedWord */);
+        final SuggestionResults suggestionResults = mDictionaryFacilitator.getSuggestionResults(
+                composedData, snapshot.mNgramContext, snapshot.mKeyboard,
+                snapshot.mSettingsValuesForSuggestion, SESSION_ID_TYPING,
+                SuggestedWords.INPUT_STYLE_PREDICTION);
+        // Don't keep the predictions made while the main dictionary is still loading.
+        if (null != locale && mDictionaryFacilitator.hasAtLeastOneInitializedMainDictionary()) {
+            mPredictionCache.put(snapshot,
+                    new CachedPredictions(locale, reloadGeneration, suggestionResults));
+        }
+        return suggestionResults;
+    }
+
     // Retrieves suggestions for the batch input
     // and calls the callback function with the suggestions.
     private void getSuggestedWordsForBatchInput(final WordComposer wordComposer,
@@ -304,7 +408,7 @@ public final class Suggest {
         // For transforming words that don't come from a dictionary, because it's our best bet
         final Locale locale = mDictionaryFacilitator.getLocale();
         final ArrayList<SuggestedWordInfo> suggestionsContainer =
-                new ArrayList<>(suggestionResults);
+                suggestionResults.getSortedSuggestions();
         final int suggestionsCount = suggestionsContainer.size();
         final boolean isFirstCharCapitalized = wordComposer.wasShiftedNoLock();
         final boolean isAllUpperCase = wordComposer.isAllUpperCase();
@@ -392,33 +392,26 @@ public class SuggestedWords {
             if (candidates.isEmpty()) {
                 return -1;
             }
+            final boolean hasTypedWord = !TextUtils.isEmpty(typedWord);
             int firstOccurrenceOfWord = -1;
-            if (!TextUtils.isEmpty(typedWord)) {
-                firstOccurrenceOfWord = removeSuggestedWordInfoFromList(
-                        typedWord, candidates, -1 /* startIndexExclusive */);
-            }
-            for (int i = 0; i < candidates.size(); ++i) {
-                removeSuggestedWordInfoFromList(
-                        candidates.get(i).mWord, candidates, i /* startIndexExclusive */);
-            }
-            return firstOccurrenceOfWord;
-        }
-
-        private static int removeSuggestedWordInfoFromList(
-                @Nonnull final String word,
-                @Nonnull final ArrayList<SuggestedWordInfo> candidates,
-                final int startIndexExclusive) {
-            int firstOccurrenceOfWord = -1;
-            for (int i = startIndexExclusive + 1; i < candidates.size(); ++i) {
-                final SuggestedWordInfo previous = candidates.get(i);
-                if (word.equals(previous.mWord)) {
+            final HashSet<String> alreadySeen = new HashSet<>();
+            // Compact the list in place, in a single pass.
+            int keptCount = 0;
+            final int candidatesCount = candidates.size();
+            for (int i = 0; i < candidatesCount; ++i) {
+                final SuggestedWordInfo candidate = candidates.get(i);
+                if (hasTypedWord && typedWord.equals(candidate.mWord)) {
                     if (firstOccurrenceOfWord == -1) {
                         firstOccurrenceOfWord = i;
                     }
-                    candidates.remove(i);
-                    --i;
+                    continue;
+                }
+                if (alreadySeen.add(candidate.mWord)) {
+                    candidates.set(keptCount, candidate);
+                    ++keptCount;
                 }
             }
+            candidates.subList(keptCount, candidatesCount).clear();
             return firstOccurrenceOfWord;
         }
     }
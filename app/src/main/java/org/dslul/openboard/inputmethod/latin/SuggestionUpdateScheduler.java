@@ -0,0 +1,124 @@
+package org.dslul.openboard.inputmethod.latin;
+
+/**
+ * Chooses how long to wait before updating the suggestion strip after an input, from the
+ * measured typing speed and the measured time it takes to update the strip.
+ *
+ * The strip is updated synchronously on the UI thread, so an update done in the middle of a
+ * burst of typing delays the handling of the next key, and is obsolete as soon as it is shown.
+ * Updates are debounced: each input postpones the pending update. When the average interval
+ * between inputs leaves enough time to update the strip before the next input, the delay is
+ * short so that the strip follows the typing closely. Otherwise the user is typing in a burst,
+ * and the delay is made a bit longer than the average interval, so that the strip is not
+ * updated until the typing pauses, and then catches up in a single update. An update is never
+ * postponed for more than {@link #MAX_DEFERRAL_FACTOR} times the base delay.
+ *
+ * This class is not thread safe; it is used from the UI thread.
+ */
+final class SuggestionUpdateScheduler {
+    private static final long NOT_A_TIME = -1;
+
+    // The weight of a new sample in the moving averages is 1 / (1 << AVERAGE_SHIFT).
+    private static final int AVERAGE_SHIFT = 2;
+    // Longer intervals between inputs are pauses rather than typing, and are not averaged.
+    private static final long MAX_TYPING_INTERVAL_MS = 1000;
+    // How much longer than the average interval a gap has to be to be a pause in a burst.
+    private static final int PAUSE_FACTOR_PERCENT = 150;
+    // The bounds of the delay, and the longest an update can be postponed, relative to the base
+    // delay.
+    private static final int MIN_DELAY_DIVISOR = 4;
+    private static final int MAX_DELAY_FACTOR = 3;
+    private static final int MAX_DEFERRAL_FACTOR = 8;
+
+    private long mBaseDelay;
+    private long mLastInputTime = NOT_A_TIME;
+    private long mFirstPendingRequestTime = NOT_A_TIME;
+    private long mLastRequestTime = NOT_A_TIME;
+    // Moving averages, or 0 until there is a sample.
+    private long mAverageInputInterval;
+    private long mAverageUpdateDuration;
+
+    /**
+     * @param baseDelay the delay to use when nothing has been measured yet, which is also the
+     * margin to leave between the end of an update and the next input.
+     */
+    public void setBaseDelay(final int baseDelay) {
+        mBaseDelay = baseDelay;
+    }
+
+    /**
+     * Called when an update of the suggestion strip is requested.
+     * @param now the current uptime.
+     * @param inputStyle the input style of the update. Updates that follow typing, including
+     * the typing of a space after which the predictions are computed ahead of time, are
+     * measured and debounced adaptively. Those predictions are shown right away unless the user
+     * is typing in a burst.
+     * @return the delay after which to update the strip.
+     */
+    public long onUpdateRequested(final long now, final int inputStyle) {
+        mLastRequestTime = now;
+        if (NOT_A_TIME == mFirstPendingRequestTime) {
+            mFirstPendingRequestTime = now;
+        }
+        if (SuggestedWords.INPUT_STYLE_TYPING != inputStyle
+                && SuggestedWords.INPUT_STYLE_PREDICTION != inputStyle) {
+            return mBaseDelay;
+        }
+        if (NOT_A_TIME != mLastInputTime) {
+            final long interval = now - mLastInputTime;
+            if (interval <= MAX_TYPING_INTERVAL_MS) {
+                mAverageInputInterval = average(mAverageInputInterval, interval);
+            }
+        }
+        mLastInputTime = now;
+        final long deferralLeft =
+                mFirstPendingRequestTime + mBaseDelay * MAX_DEFERRAL_FACTOR - now;
+        final long typingDelay = getTypingDelay();
+        if (SuggestedWords.INPUT_STYLE_PREDICTION == inputStyle
+                && typingDelay < mBaseDelay) {
+            return 0;
+        }
+        return Math.max(0, Math.min(typingDelay, deferralLeft));
+    }
+
+    private long getTypingDelay() {
+        if (0 == mAverageInputInterval) {
+            return mBaseDelay;
+        }
+        final long minDelay = mBaseDelay / MIN_DELAY_DIVISOR;
+        if (minDelay + mAverageUpdateDuration + mBaseDelay <= mAverageInputInterval) {
+            // There is time to update the strip between two inputs.
+            return minDelay;
+        }
+        // Wait for a pause in the burst.
+        return Math.max(mBaseDelay, Math.min(mBaseDelay * MAX_DELAY_FACTOR,
+                mAverageInputInterval * PAUSE_FACTOR_PERCENT / 100));
+    }
+
+    /**
+     * Called when the suggestion strip has been updated.
+     * @param duration the time the update took.
+     */
+    public void onUpdatePerformed(final long duration) {
+        mAverageUpdateDuration = average(mAverageUpdateDuration, duration);
+        mFirstPendingRequestTime = NOT_A_TIME;
+    }
+
+    /**
+     * Called when the pending update of the suggestion strip is cancelled.
+     */
+    public void onUpdateCancelled() {
+        mFirstPendingRequestTime = NOT_A_TIME;
+    }
+
+    public long getLastRequestTime() {
+        return mLastRequestTime;
+    }
+
+    private static long average(final long average, final long sample) {
+        if (0 == average) {
+            return sample;
+        }
+        return average + ((sample - average) >> AVERAGE_SHIFT);
+    }
+}
@@ -83,7 +83,7 @@ public final class WordComposer {
     private boolean mIsOnlyFirstCharCapitalized;
 
     public WordComposer() {
-        mCombinerChain = new CombinerChain("");
+        mCombinerChain = new CombinerChain("", null /* combiningSpec */);
         mEvents = new ArrayList<>();
         mAutoCorrection = null;
         mIsResumed = false;
@@ -105,7 +105,8 @@ public final class WordComposer {
         final String nonNullCombiningSpec = null == combiningSpec ? "" : combiningSpec;
         if (!nonNullCombiningSpec.equals(mCombiningSpec)) {
             mCombinerChain = new CombinerChain(
-                    mCombinerChain.getComposingWordWithCombiningFeedback().toString());
+                    mCombinerChain.getComposingWordWithCombiningFeedback().toString(),
+                    nonNullCombiningSpec);
             mCombiningSpec = nonNullCombiningSpec;
         }
     }
@@ -128,7 +129,12 @@ public final class WordComposer {
     }
 
     private final void refreshTypedWordCache() {
-        mTypedWordCache = mCombinerChain.getComposingWordWithCombiningFeedback();
+        final CharSequence typedWord = mCombinerChain.getComposingWordWithCombiningFeedback();
+        if (typedWord == mTypedWordCache) {
+            // The combiner chain returns the same instance as long as the word did not change.
+            return;
+        }
+        mTypedWordCache = typedWord;
         mCodePointSize = Character.codePointCount(mTypedWordCache, 0, mTypedWordCache.length());
     }
 
@@ -383,6 +389,14 @@ public final class WordComposer {
         }
     }
 
+    /**
+     * Returns the capitalized mode, as set when the word was started or advised since.
+     * @return one of the CAPS_MODE_* constants
+     */
+    public int getCapitalizedMode() {
+        return mCapitalizedMode;
+    }
+
     /**
      * Returns whether the word was automatically capitalized.
      * @return whether the word was automatically capitalized
@@ -417,15 +431,16 @@ public final class WordComposer {
     // committedWord should contain suggestion spans if applicable.
     public LastComposedWord commitWord(final int type, final CharSequence committedWord,
             final String separatorString, final NgramContext ngramContext) {
-        // Note: currently, we come here whenever we commit a word. If it's a MANUAL_PICK
-        // or a DECIDED_WORD we may cancel the commit later; otherwise, we should deactivate
+        // Note: currently, we come here whenever we commit a word. If it's a MANUAL_PICK,
+        // a DECIDED_WORD or a SHORTCUT_EXPANSION we may cancel the commit later; otherwise, we should deactivate
         // the last composed word to ensure this does not happen.
         final LastComposedWord lastComposedWord = new LastComposedWord(mEvents,
                 mInputPointers, mTypedWordCache.toString(), committedWord, separatorString,
-                ngramContext, mCapitalizedMode);
+                ngramContext, mCapitalizedMode, type);
         mInputPointers.reset();
         if (type != LastComposedWord.COMMIT_TYPE_DECIDED_WORD
-                && type != LastComposedWord.COMMIT_TYPE_MANUAL_PICK) {
+                && type != LastComposedWord.COMMIT_TYPE_MANUAL_PICK
+                && type != LastComposedWord.COMMIT_TYPE_SHORTCUT_EXPANSION) {
             lastComposedWord.deactivate();
         }
         mCapsCount = 0;
@@ -37,6 +37,23 @@ public class FileUtils {
         return path.delete();
     }
 
+    /**
+     * Returns the total size of a file, or of the files in a directory and its subdirectories.
+     */
+    public static long getTotalSize(final File path) {
+        if (!path.isDirectory()) {
+            return path.length();
+        }
+        long size = 0;
+        final File[] files = path.listFiles();
+        if (files != null) {
+            for (final File child : files) {
+                size += getTotalSize(child);
+            }
+        }
+        return size;
+    }
+
     public static boolean deleteFilteredFiles(final File dir, final FilenameFilter fileNameFilter) {
         if (!dir.isDirectory()) {
             return false;
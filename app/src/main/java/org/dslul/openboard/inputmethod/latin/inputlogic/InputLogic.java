@@ -40,6 +40,7 @@ import org.dslul.openboard.inputmethod.latin.LastComposedWord;
 import org.dslul.openboard.inputmethod.latin.LatinIME;
 import org.dslul.openboard.inputmethod.latin.NgramContext;
 import org.dslul.openboard.inputmethod.latin.RichInputConnection;
+import org.dslul.openboard.inputmethod.latin.ShortcutExpander;
 import org.dslul.openboard.inputmethod.latin.Suggest;
 import org.dslul.openboard.inputmethod.latin.Suggest.OnGetSuggestedWordsCallback;
 import org.dslul.openboard.inputmethod.latin.SuggestedWords;
@@ -86,6 +87,7 @@ public final class InputLogic {
     public SuggestedWords mSuggestedWords = SuggestedWords.getEmptyInstance();
     public final Suggest mSuggest;
     private final DictionaryFacilitator mDictionaryFacilitator;
+    private final ShortcutExpander mShortcutExpander;
 
     public LastComposedWord mLastComposedWord = LastComposedWord.NOT_A_COMPOSED_WORD;
     // This has package visibility so it can be accessed from InputLogicHandler.
@@ -93,6 +95,10 @@ public final class InputLogic {
     public final RichInputConnection mConnection;
     private final RecapitalizeStatus mRecapitalizeStatus = new RecapitalizeStatus();
 
+    // The predictions being computed ahead of time on the suggestion thread, or null. This is
+    // only used on the UI thread.
+    private Suggest.PredictionSnapshot mPrecomputingPredictions;
+
     private int mDeleteCount;
     private long mLastKeyTime;
     public final TreeSet<Long> mCurrentlyPressedHardwareKeys = new TreeSet<>();
@@ -126,6 +132,7 @@ public final class InputLogic {
         mInputLogicHandler = InputLogicHandler.NULL_HANDLER;
         mSuggest = new Suggest(dictionaryFacilitator);
         mDictionaryFacilitator = dictionaryFacilitator;
+        mShortcutExpander = new ShortcutExpander(latinIME);
     }
 
     /**
@@ -163,6 +170,7 @@ public final class InputLogic {
         } else {
             mInputLogicHandler.reset();
         }
+        mPrecomputingPredictions = null;
 
         if (settingsValues.mShouldShowLxxSuggestionUi) {
             mConnection.requestCursorUpdates(true /* enableMonitor */,
@@ -208,6 +216,7 @@ public final class InputLogic {
         }
         resetComposingState(true /* alsoResetLastComposedWord */);
         mInputLogicHandler.reset();
+        mPrecomputingPredictions = null;
     }
 
     // Normally this class just gets out of scope after the process ends, but in unit tests, we
@@ -322,6 +331,7 @@ public final class InputLogic {
         commitChosenWord(settingsValues, suggestion, LastComposedWord.COMMIT_TYPE_MANUAL_PICK,
                 LastComposedWord.NOT_A_SEPARATOR);
         mConnection.endBatchEdit();
+        mDictionaryFacilitator.switchMostProbableLanguage(suggestionInfo.mSourceDict.mLocale);
         // Don't allow cancellation of manual pick
         mLastComposedWord.deactivate();
         // Space state must be updated before calling updateShiftState
@@ -626,6 +636,10 @@ public final class InputLogic {
             setComposingTextInternal(mWordComposer.getTypedWord(), 1);
             inputTransaction.setDidAffectContents();
             inputTransaction.setRequiresUpdateSuggestions();
+        } else if (Constants.CODE_DELETE == event.getMKeyCode()) {
+            // The combiner deleted the last of its state, which was all of the composing text.
+            setComposingTextInternal("", 1);
+            inputTransaction.setDidAffectContents();
         }
     }
 
@@ -923,7 +937,20 @@ public final class InputLogic {
         }
         // isComposingWord() may have changed since we stored wasComposing
         if (mWordComposer.isComposingWord()) {
-            if (settingsValues.mAutoCorrectionEnabledPerUserSettings) {
+            final String expansion = settingsValues.mShortcutExpansionEnabled
+                    && !mWordComposer.isBatchMode()
+                    ? mShortcutExpander.getExpansion(mWordComposer.getTypedWord(),
+                            getDictionaryFacilitatorLocale())
+                    : null;
+            if (null != expansion && !expansion.equals(mWordComposer.getTypedWord())) {
+                // Commit the expansion so that backspace reverts it to the shortcut that was
+                // typed, without learning it.
+                handler.cancelUpdateSuggestionStrip();
+                commitChosenWord(settingsValues, expansion,
+                        LastComposedWord.COMMIT_TYPE_SHORTCUT_EXPANSION, shouldAvoidSendingCode
+                                ? LastComposedWord.NOT_A_SEPARATOR
+                                : StringUtils.newSingleCodePointString(codePoint));
+            } else if (settingsValues.mAutoCorrectionEnabledPerUserSettings) {
                 final String separator = shouldAvoidSendingCode ? LastComposedWord.NOT_A_SEPARATOR
                         : StringUtils.newSingleCodePointString(codePoint);
                 commitCurrentAutoCorrection(settingsValues, separator, handler);
@@ -979,6 +1006,12 @@ public final class InputLogic {
             if (!shouldAvoidSendingCode) {
                 sendKeyCodePoint(settingsValues, codePoint);
             }
+            if (wasComposingWord && settingsValues.needsToLookupSuggestions()
+                    && settingsValues.mBigramPredictionEnabled) {
+                // Compute the predictions for the next word on the suggestion thread right
+                // away, rather than when the suggestion strip is updated.
+                inputTransaction.setRequiresPrecomputedPredictions();
+            }
         } else {
             if ((SpaceState.PHANTOM == inputTransaction.getMSpaceState()
                     && settingsValues.isUsuallyFollowedBySpace(codePoint))
@@ -1266,6 +1299,7 @@ public final class InputLogic {
             settingsValues.mSpacingAndPunctuations, 2);
         final long timeStampInSeconds = TimeUnit.MILLISECONDS.toSeconds(
             System.currentTimeMillis());
+        mSuggest.clearPredictionCache();
         mDictionaryFacilitator.unlearnFromUserHistory(
             word, ngramContext, timeStampInSeconds, eventType);
     }
@@ -1476,6 +1510,8 @@ public final class InputLogic {
                 mWordComposer.wasAutoCapitalized() && !mWordComposer.isMostlyCaps();
         final int timeStampInSeconds = (int)TimeUnit.MILLISECONDS.toSeconds(
                 System.currentTimeMillis());
+        // The predictions following the previous words may change with what is learned.
+        mSuggest.clearPredictionCache();
         mDictionaryFacilitator.addToUserHistory(suggestion, wasAutoCapitalized,
                 ngramContext, timeStampInSeconds, settingsValues.mBlockPotentiallyOffensive);
     }
@@ -1695,7 +1731,8 @@ public final class InputLogic {
             }
         }
         mConnection.deleteTextBeforeCursor(deleteLength);
-        if (!TextUtils.isEmpty(committedWord)) {
+        if (!TextUtils.isEmpty(committedWord) && mLastComposedWord.mCommitType
+                != LastComposedWord.COMMIT_TYPE_SHORTCUT_EXPANSION) {
             unlearnWord(committedWordString, inputTransaction.getMSettingsValues(),
                     Constants.EVENT_REVERT);
         }
@@ -2143,6 +2180,10 @@ public final class InputLogic {
             final boolean isBatchMode = mWordComposer.isBatchMode();
             commitChosenWord(settingsValues, stringToCommit,
                     LastComposedWord.COMMIT_TYPE_DECIDED_WORD, separator);
+            if (null != autoCorrectionOrNull) {
+                mDictionaryFacilitator.switchMostProbableLanguage(
+                        autoCorrectionOrNull.mSourceDict.mLocale);
+            }
             if (!typedWord.equals(stringToCommit)) {
                 // This will make the correction flash for a short while as a visual clue
                 // to the user that auto-correction happened. It has no other effect; in particular
@@ -2212,8 +2253,11 @@ public final class InputLogic {
                     + "Connection.commitText");
             startTimeMillis = System.currentTimeMillis();
         }
-        // Add the word to the user history dictionary
-        performAdditionToUserHistoryDictionary(settingsValues, chosenWord, ngramContext);
+        // Add the word to the user history dictionary. Shortcut expansions may be several words
+        // or lines, and are not learned.
+        if (commitType != LastComposedWord.COMMIT_TYPE_SHORTCUT_EXPANSION) {
+            performAdditionToUserHistoryDictionary(settingsValues, chosenWord, ngramContext);
+        }
         if (DebugFlags.DEBUG_ENABLED) {
             long runTimeMillis = System.currentTimeMillis() - startTimeMillis;
             Log.d(TAG, "commitChosenWord() : " + runTimeMillis + " ms to run "
@@ -2284,6 +2328,53 @@ public final class InputLogic {
                 inputStyle, sequenceNumber, callback);
     }
 
+    /**
+     * Start computing the predictions for the next word on the suggestion thread, so that they
+     * are in the cache of {@link Suggest} when the suggestion strip is updated. What they depend
+     * on is captured here, on the UI thread, so the suggestion thread does not read the input
+     * state while the user keeps typing.
+     * @param settingsValues the current values of the settings.
+     * @param keyboard the current keyboard.
+     * @param keyboardShiftMode the current shift mode of the keyboard.
+     */
+    // Called on the UI thread.
+    public void precomputePredictions(final SettingsValues settingsValues,
+            final Keyboard keyboard, final int keyboardShiftMode) {
+        final Suggest.PredictionSnapshot snapshot = new Suggest.PredictionSnapshot(
+                getNgramContextFromNthPreviousWordForSuggestion(
+                        settingsValues.mSpacingAndPunctuations, 1 /* nthPreviousWord */),
+                keyboard,
+                new SettingsValuesForSuggestion(settingsValues.mBlockPotentiallyOffensive),
+                getActualCapsMode(settingsValues, keyboardShiftMode));
+        mPrecomputingPredictions = snapshot;
+        mInputLogicHandler.precomputePredictions(snapshot);
+    }
+
+    /**
+     * Returns whether predictions are being computed ahead of time. An update of the suggestion
+     * strip showing predictions would then wait for them, and should rather be done once they
+     * are ready.
+     */
+    // Called on the UI thread.
+    public boolean isPrecomputingPredictions() {
+        return null != mPrecomputingPredictions;
+    }
+
+    /**
+     * Called when predictions computed ahead of time are ready.
+     * @param snapshot what the predictions were computed from.
+     * @return whether these are the predictions last requested, rather than ones superseded or
+     * requested before the input restarted.
+     */
+    // Called on the UI thread.
+    public boolean onPredictionsPrecomputed(final Suggest.PredictionSnapshot snapshot) {
+        if (snapshot != mPrecomputingPredictions) {
+            return false;
+        }
+        mPrecomputingPredictions = null;
+        return true;
+    }
+
     /**
      * Used as an injection point for each call of
      * {@link RichInputConnection#setComposingText(CharSequence, int)}.
@@ -21,6 +21,7 @@ import android.os.HandlerThread;
 import android.os.Message;
 
 import org.dslul.openboard.inputmethod.latin.LatinIME;
+import org.dslul.openboard.inputmethod.latin.Suggest;
 import org.dslul.openboard.inputmethod.latin.Suggest.OnGetSuggestedWordsCallback;
 import org.dslul.openboard.inputmethod.latin.SuggestedWords;
 import org.dslul.openboard.inputmethod.latin.common.InputPointers;
@@ -37,6 +38,7 @@ class InputLogicHandler implements Handler.Callback {
     private boolean mInBatchInput; // synchronized using {@link #mLock}.
 
     private static final int MSG_GET_SUGGESTED_WORDS = 1;
+    private static final int MSG_PRECOMPUTE_PREDICTIONS = 2;
 
     // A handler that never does anything. This is used for cases where events come before anything
     // is initialized, though probably only the monkey can actually do this.
@@ -58,6 +60,8 @@ class InputLogicHandler implements Handler.Callback {
         @Override
         public void getSuggestedWords(final int sessionId, final int sequenceNumber,
                 final OnGetSuggestedWordsCallback callback) {}
+        @Override
+        public void precomputePredictions(final Suggest.PredictionSnapshot snapshot) {}
     };
 
     InputLogicHandler() {
@@ -97,6 +101,13 @@ class InputLogicHandler implements Handler.Callback {
                 mLatinIME.getSuggestedWords(msg.arg1 /* inputStyle */,
                         msg.arg2 /* sequenceNumber */, (OnGetSuggestedWordsCallback) msg.obj);
                 break;
+            case MSG_PRECOMPUTE_PREDICTIONS:
+                // Only the snapshot taken on the UI thread is read here, and the results go to
+                // the cache of Suggest, where the suggestion strip update finds them.
+                final Suggest.PredictionSnapshot snapshot = (Suggest.PredictionSnapshot) msg.obj;
+                mInputLogic.mSuggest.getPredictionResults(snapshot);
+                mLatinIME.mHandler.postPredictionsPrecomputed(snapshot);
+                break;
         }
         return true;
     }
@@ -217,4 +228,10 @@ class InputLogicHandler implements Handler.Callback {
         mNonUIThreadHandler.obtainMessage(
                 MSG_GET_SUGGESTED_WORDS, inputStyle, sequenceNumber, callback).sendToTarget();
     }
+
+    // Called on the UI thread by InputLogic.
+    public void precomputePredictions(final Suggest.PredictionSnapshot snapshot) {
+        mNonUIThreadHandler.removeMessages(MSG_PRECOMPUTE_PREDICTIONS);
+        mNonUIThreadHandler.obtainMessage(MSG_PRECOMPUTE_PREDICTIONS, snapshot).sendToTarget();
+    }
 }
@@ -44,7 +44,8 @@ public class UserHistoryDictionary extends ExpandableBinaryDictionary {
     // TODO: Make this constructor private
     UserHistoryDictionary(final Context context, final Locale locale,
             @Nullable final String account) {
-        super(context, getUserHistoryDictName(NAME, locale, null /* dictFile */, account), locale, Dictionary.TYPE_USER_HISTORY, null);
+        super(context, getUserHistoryDictName(NAME, locale, null /* dictFile */, account), locale,
+                Dictionary.TYPE_USER_HISTORY, null /* dictFile */, true /* usesUpdateJournal */);
         if (mLocale != null && mLocale.toString().length() > 1) {
             reloadDictionaryIfRequired();
         }
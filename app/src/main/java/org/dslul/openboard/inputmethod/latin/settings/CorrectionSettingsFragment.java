@@ -23,12 +23,17 @@ import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.os.Bundle;
+import android.preference.MultiSelectListPreference;
 import android.preference.Preference;
 
 import org.dslul.openboard.inputmethod.latin.R;
 import org.dslul.openboard.inputmethod.latin.userdictionary.UserDictionaryList;
 import org.dslul.openboard.inputmethod.latin.userdictionary.UserDictionarySettings;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.TreeSet;
 
 /**
@@ -40,6 +45,7 @@ import java.util.TreeSet;
  * - Block offensive words
  * - Auto-correction
  * - Auto-correction confidence
+ * - Shortcut expansion and the apps excluded from it
  * - Show correction suggestions
  * - Personalized suggestions
  * - Suggest Contact names
@@ -70,6 +76,7 @@ public final class CorrectionSettingsFragment extends SubScreenFragment
             overwriteUserDictionaryPreference(editPersonalDictionary);
         }
 
+        setupShortcutExpansionExcludedAppsPreference(pm);
         refreshEnabledSettings();
     }
 
@@ -83,6 +90,39 @@ public final class CorrectionSettingsFragment extends SubScreenFragment
                 Settings.readAutoCorrectEnabled(getSharedPreferences(), getResources()));
     }
 
+    private void setupShortcutExpansionExcludedAppsPreference(final PackageManager pm) {
+        final MultiSelectListPreference pref = (MultiSelectListPreference)findPreference(
+                Settings.PREF_SHORTCUT_EXPANSION_EXCLUDED_APPS);
+        if (pref == null) {
+            return;
+        }
+        // Offer the apps that can be launched, sorted by label.
+        final Intent launcherIntent = new Intent(Intent.ACTION_MAIN);
+        launcherIntent.addCategory(Intent.CATEGORY_LAUNCHER);
+        final List<ResolveInfo> activities = pm.queryIntentActivities(launcherIntent, 0);
+        // Keyed by label then package name, so that apps with the same label are all listed.
+        final TreeMap<String, String> labelsToPackageNames = new TreeMap<>();
+        final HashSet<String> packageNames = new HashSet<>();
+        for (final ResolveInfo info : activities) {
+            final String packageName = info.activityInfo.packageName;
+            if (!packageNames.add(packageName)) {
+                continue;
+            }
+            labelsToPackageNames.put(info.loadLabel(pm) + "\u0000" + packageName, packageName);
+        }
+        final CharSequence[] entries = new CharSequence[labelsToPackageNames.size()];
+        final CharSequence[] entryValues = new CharSequence[labelsToPackageNames.size()];
+        int i = 0;
+        for (final Map.Entry<String, String> entry : labelsToPackageNames.entrySet()) {
+            final String key = entry.getKey();
+            entries[i] = key.substring(0, key.lastIndexOf('\u0000'));
+            entryValues[i] = entry.getValue();
+            i++;
+        }
+        pref.setEntries(entries);
+        pref.setEntryValues(entryValues);
+    }
+
     private void overwriteUserDictionaryPreference(final Preference userDictionaryPreference) {
         final Activity activity = getActivity();
         final TreeSet<String> localeList = UserDictionaryList.getUserDictionaryLocalesSet(activity);
@@ -16,6 +16,7 @@
 
 package org.dslul.openboard.inputmethod.latin.settings;
 
+import android.app.AlertDialog;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
@@ -24,6 +25,7 @@ import android.os.Bundle;
 import android.os.Process;
 import android.preference.Preference;
 import android.preference.Preference.OnPreferenceClickListener;
+import android.preference.PreferenceCategory;
 import android.preference.PreferenceGroup;
 import android.preference.TwoStatePreference;
 
@@ -31,7 +33,11 @@ import org.dslul.openboard.inputmethod.latin.DictionaryDumpBroadcastReceiver;
 import org.dslul.openboard.inputmethod.latin.DictionaryFacilitatorImpl;
 import org.dslul.openboard.inputmethod.latin.R;
 import org.dslul.openboard.inputmethod.latin.utils.ApplicationUtils;
+import org.dslul.openboard.inputmethod.latin.utils.DialogUtils;
+import org.dslul.openboard.inputmethod.latin.utils.MetricsRecorder;
+import org.dslul.openboard.inputmethod.latin.utils.MetricsSink;
 import org.dslul.openboard.inputmethod.latin.utils.ResourceUtils;
+import org.dslul.openboard.inputmethod.latin.utils.StatsUtils;
 
 import java.util.Locale;
 
@@ -44,6 +50,9 @@ public final class DebugSettingsFragment extends SubScreenFragment
         implements OnPreferenceClickListener {
     private static final String PREF_KEY_DUMP_DICTS = "pref_key_dump_dictionaries";
     private static final String PREF_KEY_DUMP_DICT_PREFIX = "pref_key_dump_dictionaries";
+    private static final String PREF_KEY_METRICS = "pref_key_metrics";
+    private static final String PREF_KEY_SHOW_METRICS = "pref_key_show_metrics";
+    private static final String PREF_KEY_EXPORT_METRICS = "pref_key_export_metrics";
 
     private boolean mServiceNeedsRestart = false;
     private TwoStatePreference mDebugMode;
@@ -64,6 +73,7 @@ public final class DebugSettingsFragment extends SubScreenFragment
             pref.setOnPreferenceClickListener(this);
             dictDumpPreferenceGroup.addPreference(pref);
         }
+        setupMetricsPreferences();
         final Resources res = getResources();
         setupKeyPreviewAnimationDuration(DebugSettings.PREF_KEY_PREVIEW_SHOW_UP_DURATION,
                 res.getInteger(R.integer.config_key_preview_show_up_duration));
@@ -112,9 +122,54 @@ public final class DebugSettingsFragment extends SubScreenFragment
             context.sendBroadcast(intent);
             return true;
         }
+        if (PREF_KEY_SHOW_METRICS.equals(pref.getKey())) {
+            new AlertDialog.Builder(DialogUtils.getPlatformDialogThemeContext(context))
+                    .setTitle(pref.getTitle())
+                    .setMessage(getMetricsSnapshot())
+                    .setPositiveButton(android.R.string.ok, null)
+                    .show();
+            return true;
+        }
+        if (PREF_KEY_EXPORT_METRICS.equals(pref.getKey())) {
+            final Intent intent = new Intent(Intent.ACTION_SEND)
+                    .setType("text/plain")
+                    .putExtra(Intent.EXTRA_SUBJECT, "Keyboard metrics")
+                    .putExtra(Intent.EXTRA_TEXT, getMetricsSnapshot());
+            startActivity(Intent.createChooser(intent, pref.getTitle()));
+            return true;
+        }
         return true;
     }
 
+    private void setupMetricsPreferences() {
+        final Context context = getActivity();
+        final PreferenceCategory metricsCategory = new PreferenceCategory(context);
+        metricsCategory.setKey(PREF_KEY_METRICS);
+        metricsCategory.setTitle("Metrics");
+        getPreferenceScreen().addPreference(metricsCategory);
+        final Preference showPref = new Preference(context);
+        showPref.setKey(PREF_KEY_SHOW_METRICS);
+        showPref.setTitle("Show metrics");
+        showPref.setSummary("Recorded while debug mode is on");
+        showPref.setOnPreferenceClickListener(this);
+        metricsCategory.addPreference(showPref);
+        final Preference exportPref = new Preference(context);
+        exportPref.setKey(PREF_KEY_EXPORT_METRICS);
+        exportPref.setTitle("Export metrics");
+        exportPref.setOnPreferenceClickListener(this);
+        metricsCategory.addPreference(exportPref);
+    }
+
+    // The metrics of the keyboard if it runs in this process, or the last snapshot it wrote.
+    private String getMetricsSnapshot() {
+        final MetricsSink metricsSink = StatsUtils.getMetricsSink();
+        if (metricsSink instanceof MetricsRecorder) {
+            return ((MetricsRecorder)metricsSink).getSnapshot();
+        }
+        final String snapshot = MetricsRecorder.readSnapshot(getActivity());
+        return snapshot != null ? snapshot : "No metrics recorded yet";
+    }
+
     @Override
     public void onStop() {
         super.onStop();
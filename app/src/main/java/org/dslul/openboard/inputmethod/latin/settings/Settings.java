@@ -93,9 +93,13 @@ public final class Settings implements SharedPreferences.OnSharedPreferenceChang
     public static final String PREF_SPACE_TRACKPAD = "pref_space_trackpad";
     public static final String PREF_DELETE_SWIPE = "pref_delete_swipe";
     public static final String PREF_AUTOSPACE_AFTER_PUNCTUATION = "pref_autospace_after_punctuation";
+    public static final String PREF_SHORTCUT_EXPANSION = "pref_key_shortcut_expansion";
+    public static final String PREF_SHORTCUT_EXPANSION_EXCLUDED_APPS =
+            "pref_key_shortcut_expansion_excluded_apps";
     public static final String PREF_ALWAYS_INCOGNITO_MODE =
             "pref_always_incognito_mode";
     public static final String PREF_BIGRAM_PREDICTIONS = "next_word_prediction";
+    public static final String PREF_MULTILINGUAL_TYPING = "pref_multilingual_typing";
     public static final String PREF_GESTURE_INPUT = "gesture_input";
     public static final String PREF_VIBRATION_DURATION_SETTINGS =
             "pref_vibration_duration_settings";
@@ -187,13 +191,29 @@ public final class Settings implements SharedPreferences.OnSharedPreferenceChang
                 Log.w(TAG, "onSharedPreferenceChanged called before loadSettings.");
                 return;
             }
-            loadSettings(mContext, mSettingsValues.mLocale, mSettingsValues.mInputAttributes);
+            if (isKeyboardStatePreference(key)) {
+                // Written by the keyboard itself while typing, no setting depends on it.
+                return;
+            }
+            // Only preferences changed, the locale did not: reuse what is derived from it rather
+            // than reading the resources again in that locale.
+            mSettingsValues = new SettingsValues(mContext, prefs, mRes, mSettingsValues);
             StatsUtils.onLoadSettings(mSettingsValues);
         } finally {
             mSettingsValuesLock.unlock();
         }
     }
 
+    private static boolean isKeyboardStatePreference(final String key) {
+        return null != key && (key.equals(PREF_EMOJI_RECENT_KEYS)
+                || key.startsWith(PREF_EMOJI_CATEGORY_LAST_TYPED_ID)
+                || key.equals(PREF_LAST_SHOWN_EMOJI_CATEGORY_ID)
+                || key.equals(PREF_LAST_SHOWN_EMOJI_CATEGORY_PAGE_ID)
+                || key.equals(PREF_LAST_USED_PERSONALIZATION_TOKEN)
+                || key.equals(PREF_LAST_PERSONALIZATION_DICT_WIPED_TIME)
+                || key.equals(PREF_CORPUS_HANDLES_FOR_PERSONALIZATION));
+    }
+
     public void loadSettings(final Context context, final Locale locale,
                              @Nonnull final InputAttributes inputAttributes) {
         mSettingsValuesLock.lock();
@@ -400,6 +420,15 @@ public final class Settings implements SharedPreferences.OnSharedPreferenceChang
         return prefs.getBoolean(PREF_AUTOSPACE_AFTER_PUNCTUATION, false);
     }
 
+    public static boolean readShortcutExpansionEnabled(final SharedPreferences prefs) {
+        return prefs.getBoolean(PREF_SHORTCUT_EXPANSION, false);
+    }
+
+    public static Set<String> readShortcutExpansionExcludedApps(final SharedPreferences prefs) {
+        return prefs.getStringSet(PREF_SHORTCUT_EXPANSION_EXCLUDED_APPS,
+                Collections.<String>emptySet());
+    }
+
     public static boolean readUseFullscreenMode(final Resources res) {
         return res.getBoolean(R.bool.config_use_fullscreen_mode);
     }
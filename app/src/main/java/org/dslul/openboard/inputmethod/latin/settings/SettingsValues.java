@@ -21,6 +21,7 @@ import android.content.SharedPreferences;
 import android.content.pm.PackageInfo;
 import android.content.res.Configuration;
 import android.content.res.Resources;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.inputmethod.EditorInfo;
 
@@ -82,12 +83,15 @@ public class SettingsValues {
     public final boolean mSpaceTrackpadEnabled;
     public final boolean mDeleteSwipeEnabled;
     public final boolean mAutospaceAfterPunctuationEnabled;
+    public final boolean mShortcutExpansionEnabled;
     public final boolean mClipboardHistoryEnabled;
     public final long mClipboardHistoryRetentionTime;
     public final boolean mOneHandedModeEnabled;
     public final int mOneHandedModeGravity;
     // Use bigrams to predict the next word when there is no input for it yet
     public final boolean mBigramPredictionEnabled;
+    // Also suggest words from the languages of the other enabled subtypes
+    public final boolean mMultilingualTypingEnabled;
     public final boolean mGestureInputEnabled;
     public final boolean mGestureTrailEnabled;
     public final boolean mGestureFloatingPreviewTextEnabled;
@@ -135,11 +139,29 @@ public class SettingsValues {
 
     public SettingsValues(final Context context, final SharedPreferences prefs, final Resources res,
                           @Nonnull final InputAttributes inputAttributes) {
-        mLocale = res.getConfiguration().locale;
+        this(context, prefs, res, inputAttributes, null /* previousValues */);
+    }
+
+    /**
+     * Re-reads the preferences after some of them changed. The locale, the input attributes and
+     * what is derived from them, like the spacing and punctuation rules or the application
+     * workarounds, are taken over from the previous values, so this does not need to run in the
+     * locale of the previous values.
+     */
+    public SettingsValues(final Context context, final SharedPreferences prefs, final Resources res,
+                          @Nonnull final SettingsValues previousValues) {
+        this(context, prefs, res, previousValues.mInputAttributes, previousValues);
+    }
+
+    private SettingsValues(final Context context, final SharedPreferences prefs,
+                           final Resources res, @Nonnull final InputAttributes inputAttributes,
+                           @Nullable final SettingsValues previousValues) {
+        mLocale = null != previousValues ? previousValues.mLocale : res.getConfiguration().locale;
         // Get the resources
         mDelayInMillisecondsToUpdateOldSuggestions =
                 res.getInteger(R.integer.config_delay_in_milliseconds_to_update_old_suggestions);
-        mSpacingAndPunctuations = new SpacingAndPunctuations(res);
+        mSpacingAndPunctuations = null != previousValues ? previousValues.mSpacingAndPunctuations
+                : SpacingAndPunctuations.getInstance(res);
 
         // Store the input attributes
         mInputAttributes = inputAttributes;
@@ -168,6 +190,7 @@ public class SettingsValues {
                 ? readAutoCorrectionThreshold(res, prefs)
                 : AUTO_CORRECTION_DISABLED_THRESHOLD;
         mBigramPredictionEnabled = readBigramPredictionEnabled(prefs, res);
+        mMultilingualTypingEnabled = prefs.getBoolean(Settings.PREF_MULTILINGUAL_TYPING, false);
         mDoubleSpacePeriodTimeout = res.getInteger(R.integer.config_double_space_period_timeout);
         mHasHardwareKeyboard = Settings.readHasHardwareKeyboard(res.getConfiguration());
         mEnableMetricsLogging = prefs.getBoolean(Settings.PREF_ENABLE_METRICS_LOGGING, true);
@@ -226,24 +249,66 @@ public class SettingsValues {
                 prefs, DebugSettings.PREF_KEY_PREVIEW_DISMISS_END_Y_SCALE,
                 defaultKeyPreviewDismissEndScale);
         mDisplayOrientation = res.getConfiguration().orientation;
-        mAppWorkarounds = new AsyncResultHolder<>("AppWorkarounds");
-        final PackageInfo packageInfo = TargetPackageInfoGetterTask.getCachedPackageInfo(
-                mInputAttributes.mTargetApplicationPackageName);
-        if (null != packageInfo) {
-            mAppWorkarounds.set(new AppWorkaroundsUtils(packageInfo));
+        if (null != previousValues) {
+            mAppWorkarounds = previousValues.mAppWorkarounds;
         } else {
-            new TargetPackageInfoGetterTask(context, mAppWorkarounds)
-                    .execute(mInputAttributes.mTargetApplicationPackageName);
+            mAppWorkarounds = new AsyncResultHolder<>("AppWorkarounds");
+            final PackageInfo packageInfo = TargetPackageInfoGetterTask.getCachedPackageInfo(
+                    mInputAttributes.mTargetApplicationPackageName);
+            if (null != packageInfo) {
+                mAppWorkarounds.set(new AppWorkaroundsUtils(packageInfo));
+            } else {
+                new TargetPackageInfoGetterTask(context, mAppWorkarounds)
+                        .execute(mInputAttributes.mTargetApplicationPackageName);
+            }
         }
         mSpaceTrackpadEnabled = Settings.readSpaceTrackpadEnabled(prefs);
         mDeleteSwipeEnabled = Settings.readDeleteSwipeEnabled(prefs);
         mAutospaceAfterPunctuationEnabled = Settings.readAutospaceAfterPunctuationEnabled(prefs);
+        mShortcutExpansionEnabled = Settings.readShortcutExpansionEnabled(prefs)
+                && !mInputAttributes.mIsPasswordField
+                && !Settings.readShortcutExpansionExcludedApps(prefs).contains(
+                        mInputAttributes.mTargetApplicationPackageName);
         mClipboardHistoryEnabled = Settings.readClipboardHistoryEnabled(prefs);
         mClipboardHistoryRetentionTime = Settings.readClipboardHistoryRetentionTime(prefs, res);
         mOneHandedModeEnabled = Settings.readOneHandedModeEnabled(prefs);
         mOneHandedModeGravity = Settings.readOneHandedModeGravity(prefs);
     }
 
+    /**
+     * Returns whether dictionaries set up with the other values serve these values as well, that
+     * is whether none of the values the dictionary facilitator is reset with changed.
+     */
+    public boolean hasSameDictionarySettings(@Nullable final SettingsValues other) {
+        return null != other
+                && mUsePersonalizedDicts == other.mUsePersonalizedDicts
+                && mMultilingualTypingEnabled == other.mMultilingualTypingEnabled
+                && mAutoCorrectionEnabledPerUserSettings
+                        == other.mAutoCorrectionEnabledPerUserSettings
+                && mAutoCorrectionThreshold == other.mAutoCorrectionThreshold
+                && mPlausibilityThreshold == other.mPlausibilityThreshold
+                && TextUtils.equals(mAccount, other.mAccount);
+    }
+
+    /**
+     * Returns whether a keyboard loaded with the other values looks the same with these values,
+     * that is whether none of the values keyboards are built or set up with changed.
+     */
+    public boolean hasSameKeyboardSettings(@Nullable final SettingsValues other) {
+        return null != other
+                && mShowsVoiceInputKey == other.mShowsVoiceInputKey
+                && mShowsNumberRow == other.mShowsNumberRow
+                && mShowsHints == other.mShowsHints
+                && mShowsLanguageSwitchKey == other.mShowsLanguageSwitchKey
+                && mIncludesOtherImesInLanguageSwitchList
+                        == other.mIncludesOtherImesInLanguageSwitchList
+                && mShowsEmojiKey == other.mShowsEmojiKey
+                && mIsSplitKeyboardEnabled == other.mIsSplitKeyboardEnabled
+                && mOneHandedModeEnabled == other.mOneHandedModeEnabled
+                && mHasKeyboardResize == other.mHasKeyboardResize
+                && mKeyboardHeightScale == other.mKeyboardHeightScale;
+    }
+
     public boolean isMetricsLoggingEnabled() {
         return mEnableMetricsLogging;
     }
@@ -403,10 +468,14 @@ public class SettingsValues {
         sb.append("" + mUsePersonalizedDicts);
         sb.append("\n   mUseDoubleSpacePeriod = ");
         sb.append("" + mUseDoubleSpacePeriod);
+        sb.append("\n   mShortcutExpansionEnabled = ");
+        sb.append("" + mShortcutExpansionEnabled);
         sb.append("\n   mBlockPotentiallyOffensive = ");
         sb.append("" + mBlockPotentiallyOffensive);
         sb.append("\n   mBigramPredictionEnabled = ");
         sb.append("" + mBigramPredictionEnabled);
+        sb.append("\n   mMultilingualTypingEnabled = ");
+        sb.append("" + mMultilingualTypingEnabled);
         sb.append("\n   mGestureInputEnabled = ");
         sb.append("" + mGestureInputEnabled);
         sb.append("\n   mGestureTrailEnabled = ");
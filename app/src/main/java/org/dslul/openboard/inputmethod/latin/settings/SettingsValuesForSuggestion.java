@@ -18,8 +18,17 @@ package org.dslul.openboard.inputmethod.latin.settings;
 
 public class SettingsValuesForSuggestion {
     public final boolean mBlockPotentiallyOffensive;
+    // Whether the native search should explore fewer candidates than for the language the user
+    // is most probably typing in, whatever the weight of the dictionary's language.
+    public final boolean mBoundsSearch;
 
     public SettingsValuesForSuggestion(final boolean blockPotentiallyOffensive) {
+        this(blockPotentiallyOffensive, false /* boundsSearch */);
+    }
+
+    public SettingsValuesForSuggestion(final boolean blockPotentiallyOffensive,
+            final boolean boundsSearch) {
         mBlockPotentiallyOffensive = blockPotentiallyOffensive;
+        mBoundsSearch = boundsSearch;
     }
 }
@@ -26,9 +26,13 @@ import org.dslul.openboard.inputmethod.latin.common.Constants;
 import org.dslul.openboard.inputmethod.latin.common.StringUtils;
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Locale;
 
 public final class SpacingAndPunctuations {
+    // Instances are immutable and only depend on the locale of the resources they are read from.
+    private static final HashMap<Locale, SpacingAndPunctuations> sInstances = new HashMap<>();
+
     private final int[] mSortedSymbolsPrecededBySpace;
     private final int[] mSortedSymbolsFollowedBySpace;
     private final int[] mSortedSymbolsClusteringTogether;
@@ -74,6 +78,22 @@ public final class SpacingAndPunctuations {
         mSuggestPuncList = PunctuationSuggestions.newPunctuationSuggestions(suggestPuncsSpec);
     }
 
+    /**
+     * Returns the instance for the locale of the given resources, reading the resources only the
+     * first time the locale is seen.
+     */
+    public static SpacingAndPunctuations getInstance(final Resources res) {
+        final Locale locale = res.getConfiguration().locale;
+        synchronized (sInstances) {
+            SpacingAndPunctuations instance = sInstances.get(locale);
+            if (instance == null) {
+                instance = new SpacingAndPunctuations(res);
+                sInstances.put(locale, instance);
+            }
+            return instance;
+        }
+    }
+
     @UsedForTesting
     public SpacingAndPunctuations(final SpacingAndPunctuations model,
             final int[] overrideSortedWordSeparators) {
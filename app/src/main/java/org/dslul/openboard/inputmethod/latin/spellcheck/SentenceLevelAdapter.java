@@ -82,7 +82,7 @@ public class SentenceLevelAdapter {
                     new RunInLocale<SpacingAndPunctuations>() {
                 @Override
                 protected SpacingAndPunctuations job(final Resources r) {
-                    return new SpacingAndPunctuations(r);
+                    return SpacingAndPunctuations.getInstance(r);
                 }
             };
             mSpacingAndPunctuations = job.runInLocale(res, locale);
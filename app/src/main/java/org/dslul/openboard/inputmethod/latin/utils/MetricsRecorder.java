@@ -0,0 +1,252 @@
+package org.dslul.openboard.inputmethod.latin.utils;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link MetricsSink} that keeps the metrics in memory, to be looked at on the device from the
+ * debug settings or exported as a text snapshot for offline analysis.
+ *
+ * All the state lives in preallocated {@link AtomicLongArray}s, so recording is a couple of
+ * atomic additions that neither lock nor allocate:
+ * - counters, since the recorder was created;
+ * - a rolling window of per-minute counters over the last {@link #WINDOW_MINUTES} minutes;
+ * - log-linear latency histograms, with {@link #SUB_BUCKET_COUNT} linear buckets per power of
+ *   two, which bounds the error of a percentile to 1/{@link #SUB_BUCKET_COUNT} of its value.
+ */
+public final class MetricsRecorder implements MetricsSink {
+    private static final String TAG = MetricsRecorder.class.getSimpleName();
+
+    private static final String SNAPSHOT_FILE_NAME = "metrics.txt";
+    private static final Charset SNAPSHOT_CHARSET = Charset.forName("UTF-8");
+
+    private static final long MINUTE_MS = 60 * 1000;
+    private static final int WINDOW_MINUTES = 60;
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // Durations of 2^MAX_EXPONENT ms and more, about two minutes, all go to the last bucket.
+    private static final int MAX_EXPONENT = 17;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final long mStartTime = SystemClock.uptimeMillis();
+    private final AtomicLongArray mCounters = new AtomicLongArray(COUNTER_COUNT);
+    // The minute since boot each slot of the window is counting, and its counters.
+    private final AtomicLongArray mWindowMinutes = new AtomicLongArray(WINDOW_MINUTES);
+    private final AtomicLongArray mWindowCounters =
+            new AtomicLongArray(WINDOW_MINUTES * COUNTER_COUNT);
+    private final AtomicLongArray mBuckets = new AtomicLongArray(HISTOGRAM_COUNT * BUCKET_COUNT);
+    private final AtomicLongArray mLatencySums = new AtomicLongArray(HISTOGRAM_COUNT);
+    private final AtomicLongArray mLatencyMaxes = new AtomicLongArray(HISTOGRAM_COUNT);
+
+    public MetricsRecorder() {
+        for (int slot = 0; slot < WINDOW_MINUTES; slot++) {
+            mWindowMinutes.set(slot, -1);
+        }
+    }
+
+    @Override
+    public void count(final int counter, final long amount) {
+        mCounters.addAndGet(counter, amount);
+        final long minute = SystemClock.uptimeMillis() / MINUTE_MS;
+        final int slot = (int)(minute % WINDOW_MINUTES);
+        final long slotMinute = mWindowMinutes.get(slot);
+        if (slotMinute != minute && mWindowMinutes.compareAndSet(slot, slotMinute, minute)) {
+            // The slot was last used an hour ago or more. A count made by another thread between
+            // the swap and the reset may be lost, which is fine for a rolling window.
+            final int base = slot * COUNTER_COUNT;
+            for (int i = 0; i < COUNTER_COUNT; i++) {
+                mWindowCounters.set(base + i, 0);
+            }
+        }
+        mWindowCounters.addAndGet(slot * COUNTER_COUNT + counter, amount);
+    }
+
+    @Override
+    public void recordLatency(final int histogram, final long durationMs) {
+        final long duration = Math.max(0, durationMs);
+        mBuckets.incrementAndGet(histogram * BUCKET_COUNT + getBucketIndex(duration));
+        mLatencySums.addAndGet(histogram, duration);
+        long max = mLatencyMaxes.get(histogram);
+        while (duration > max && !mLatencyMaxes.compareAndSet(histogram, max, duration)) {
+            max = mLatencyMaxes.get(histogram);
+        }
+    }
+
+    private static int getBucketIndex(final long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int)value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        final int subBucket =
+                (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    // The smallest value that goes to a bucket.
+    private static long getBucketLowerBound(final int index) {
+        if (index < 2 * SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        final long subBucket = index % SUB_BUCKET_COUNT;
+        return (SUB_BUCKET_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * Formats the current metrics as text, one metric per line, for the debug settings and for
+     * offline analysis. Counters recorded while this runs may or may not be included.
+     */
+    @Nonnull
+    public String getSnapshot() {
+        final long now = SystemClock.uptimeMillis();
+        final StringBuilder sb = new StringBuilder();
+        sb.append("time ").append(System.currentTimeMillis()).append('\n');
+        sb.append("recording_ms ").append(now - mStartTime).append('\n');
+
+        sb.append("# counter total last_").append(WINDOW_MINUTES).append("_minutes\n");
+        final long currentMinute = now / MINUTE_MS;
+        final long[] windowTotals = new long[COUNTER_COUNT];
+        for (int slot = 0; slot < WINDOW_MINUTES; slot++) {
+            final long slotMinute = mWindowMinutes.get(slot);
+            if (slotMinute < 0 || currentMinute - slotMinute >= WINDOW_MINUTES) {
+                continue;
+            }
+            for (int i = 0; i < COUNTER_COUNT; i++) {
+                windowTotals[i] += mWindowCounters.get(slot * COUNTER_COUNT + i);
+            }
+        }
+        for (int i = 0; i < COUNTER_COUNT; i++) {
+            sb.append(COUNTER_NAMES[i]).append(' ').append(mCounters.get(i)).append(' ')
+                    .append(windowTotals[i]).append('\n');
+        }
+
+        sb.append("# histogram count mean p50 p90 p99 max, then lower_bound:count per bucket\n");
+        final long[] buckets = new long[BUCKET_COUNT];
+        for (int h = 0; h < HISTOGRAM_COUNT; h++) {
+            long count = 0;
+            for (int b = 0; b < BUCKET_COUNT; b++) {
+                buckets[b] = mBuckets.get(h * BUCKET_COUNT + b);
+                count += buckets[b];
+            }
+            final long mean = count == 0 ? 0 : mLatencySums.get(h) / count;
+            sb.append(HISTOGRAM_NAMES[h]).append(' ').append(count).append(' ').append(mean)
+                    .append(' ').append(getPercentile(buckets, count, 50))
+                    .append(' ').append(getPercentile(buckets, count, 90))
+                    .append(' ').append(getPercentile(buckets, count, 99))
+                    .append(' ').append(mLatencyMaxes.get(h)).append('\n');
+            sb.append(HISTOGRAM_NAMES[h]).append(".buckets");
+            for (int b = 0; b < BUCKET_COUNT; b++) {
+                if (buckets[b] != 0) {
+                    sb.append(' ').append(getBucketLowerBound(b)).append(':').append(buckets[b]);
+                }
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    // Returns the lower bound of the bucket the percentile falls into.
+    private static long getPercentile(final long[] buckets, final long count,
+            final int percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = (count * percentile + 99) / 100;
+        long seen = 0;
+        for (int b = 0; b < buckets.length; b++) {
+            seen += buckets[b];
+            if (seen >= rank) {
+                return getBucketLowerBound(b);
+            }
+        }
+        return getBucketLowerBound(buckets.length - 1);
+    }
+
+    @Nonnull
+    public static File getSnapshotFile(@Nonnull final Context context) {
+        return new File(context.getFilesDir(), SNAPSHOT_FILE_NAME);
+    }
+
+    /**
+     * Writes a snapshot of the metrics to the snapshot file, replacing the previous one. This
+     * does I/O and must not be called on the UI thread.
+     */
+    public void writeSnapshot(@Nonnull final Context context) {
+        final File file = getSnapshotFile(context);
+        final File tempFile = new File(file.getPath() + ".tmp");
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(tempFile), SNAPSHOT_CHARSET);
+            writer.write(getSnapshot());
+            writer.close();
+            writer = null;
+            if (!tempFile.renameTo(file)) {
+                Log.e(TAG, "Cannot rename the metrics snapshot to " + file.getName());
+            }
+        } catch (final IOException e) {
+            Log.e(TAG, "Cannot write the metrics snapshot", e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (final IOException e) {
+                    // Nothing we can do.
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the last snapshot written by {@link #writeSnapshot(Context)}, for when the keyboard
+     * is not running in this process.
+     * @return the snapshot, or null if there is none.
+     */
+    @Nullable
+    public static String readSnapshot(@Nonnull final Context context) {
+        final File file = getSnapshotFile(context);
+        if (!file.exists()) {
+            return null;
+        }
+        final StringBuilder sb = new StringBuilder();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(file), SNAPSHOT_CHARSET));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                sb.append(line).append('\n');
+            }
+        } catch (final IOException e) {
+            Log.e(TAG, "Cannot read the metrics snapshot", e);
+            return null;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (final IOException e) {
+                    // Nothing we can do.
+                }
+            }
+        }
+        return sb.toString();
+    }
+}
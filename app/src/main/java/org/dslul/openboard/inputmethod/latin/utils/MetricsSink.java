@@ -0,0 +1,96 @@
+package org.dslul.openboard.inputmethod.latin.utils;
+
+/**
+ * A backend for the metrics reported through the {@link StatsUtils} hooks.
+ *
+ * The hooks translate what happened into counter and histogram ids, so a sink only ever sees
+ * numbers: counts, lengths and durations, never the text that was typed. Sinks are called on
+ * whatever thread the hook was called on, often the UI thread in the middle of handling a key,
+ * so they must be thread safe and must not block.
+ */
+public interface MetricsSink {
+    int COUNTER_SUGGESTION_PICKED_MANUALLY = 0;
+    int COUNTER_AUTO_CORRECTION = 1;
+    int COUNTER_REVERT_AUTO_CORRECT = 2;
+    int COUNTER_WORD_COMMIT_USER_TYPED = 3;
+    int COUNTER_WORD_COMMIT_AUTO_CORRECT = 4;
+    int COUNTER_WORD_COMMIT_SUGGESTION_PICKED = 5;
+    int COUNTER_WORD_COMMIT_BATCH_INPUT = 6;
+    int COUNTER_CHARS_COMMITTED = 7;
+    int COUNTER_BACKSPACE_PRESSED = 8;
+    int COUNTER_BACKSPACE_WORD_DELETE = 9;
+    int COUNTER_BACKSPACE_SELECTED_TEXT = 10;
+    int COUNTER_DELETE_MULTI_CHAR_INPUT = 11;
+    int COUNTER_CHARS_DELETED = 12;
+    int COUNTER_DOUBLE_SPACE_PERIOD = 13;
+    int COUNTER_REVERT_DOUBLE_SPACE_PERIOD = 14;
+    int COUNTER_REVERT_SWAP_PUNCTUATION = 15;
+    int COUNTER_INVALID_WORD_IDENTIFICATION = 16;
+    int COUNTER_CREATE_INPUT_VIEW = 17;
+    int COUNTER_START_INPUT_VIEW = 18;
+    int COUNTER_SUBTYPE_CHANGED = 19;
+    int COUNTER_SETTINGS_LOADED = 20;
+    int COUNTER_SETTINGS_ACTIVITY = 21;
+    int COUNTER_INPUT_CONNECTION_LAGGY = 22;
+    int COUNTER_DECODER_LAGGY = 23;
+    int COUNTER_SUGGESTION_UPDATE_REQUESTED = 24;
+    int COUNTER_SUGGESTION_UPDATE_PERFORMED = 25;
+    int COUNTER_COUNT = 26;
+
+    String[] COUNTER_NAMES = new String[] {
+            "suggestion_picked_manually",
+            "auto_correction",
+            "revert_auto_correct",
+            "word_commit_user_typed",
+            "word_commit_auto_correct",
+            "word_commit_suggestion_picked",
+            "word_commit_batch_input",
+            "chars_committed",
+            "backspace_pressed",
+            "backspace_word_delete",
+            "backspace_selected_text",
+            "delete_multi_char_input",
+            "chars_deleted",
+            "double_space_period",
+            "revert_double_space_period",
+            "revert_swap_punctuation",
+            "invalid_word_identification",
+            "create_input_view",
+            "start_input_view",
+            "subtype_changed",
+            "settings_loaded",
+            "settings_activity",
+            "input_connection_laggy",
+            "decoder_laggy",
+            "suggestion_update_requested",
+            "suggestion_update_performed"};
+
+    // Durations of every InputConnection read, and of the ones that were slow enough to be
+    // reported as laggy by the decoder. Durations of the suggestion strip updates, and the time
+    // from the last input that requested one to the strip being updated.
+    int HISTOGRAM_INPUT_CONNECTION = 0;
+    int HISTOGRAM_DECODER_LAGGY = 1;
+    int HISTOGRAM_SUGGESTION_UPDATE = 2;
+    int HISTOGRAM_SUGGESTION_STRIP_DELAY = 3;
+    int HISTOGRAM_COUNT = 4;
+
+    String[] HISTOGRAM_NAMES = new String[] {
+            "input_connection_ms",
+            "decoder_laggy_ms",
+            "suggestion_update_ms",
+            "suggestion_strip_delay_ms"};
+
+    /**
+     * Add to a counter.
+     * @param counter one of the COUNTER_* ids.
+     * @param amount the amount to add, usually 1.
+     */
+    void count(int counter, long amount);
+
+    /**
+     * Record a duration in a latency histogram.
+     * @param histogram one of the HISTOGRAM_* ids.
+     * @param durationMs the duration in milliseconds.
+     */
+    void recordLatency(int histogram, long durationMs);
+}
@@ -0,0 +1,92 @@
+package org.dslul.openboard.inputmethod.latin.utils;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * Immutable snapshot of the page fault counters and the resident set size of this process, as
+ * exposed by procfs. Used to measure what opening a dictionary actually costs.
+ */
+public final class ProcessResourceUsage {
+    private static final String TAG = ProcessResourceUsage.class.getSimpleName();
+
+    private static final String PROC_SELF_STAT = "/proc/self/stat";
+    private static final String PROC_SELF_STATUS = "/proc/self/status";
+    private static final String VM_RSS_PREFIX = "VmRSS:";
+    // Indices in /proc/self/stat, counted from the field following the command name.
+    // See proc(5): minflt is field 10 and majflt is field 12, the command name is field 2.
+    private static final int STAT_MINFLT_INDEX = 10 - 3;
+    private static final int STAT_MAJFLT_INDEX = 12 - 3;
+
+    public static final long NOT_AVAILABLE = -1;
+
+    public final long mUptimeMillis;
+    public final long mMinorFaults;
+    public final long mMajorFaults;
+    public final long mResidentKb;
+
+    private ProcessResourceUsage(final long uptimeMillis, final long minorFaults,
+            final long majorFaults, final long residentKb) {
+        mUptimeMillis = uptimeMillis;
+        mMinorFaults = minorFaults;
+        mMajorFaults = majorFaults;
+        mResidentKb = residentKb;
+    }
+
+    public static ProcessResourceUsage sample() {
+        long minorFaults = NOT_AVAILABLE;
+        long majorFaults = NOT_AVAILABLE;
+        try (final BufferedReader reader = new BufferedReader(new FileReader(PROC_SELF_STAT))) {
+            final String line = reader.readLine();
+            // The command name may contain spaces and parentheses, so skip to the last ')'.
+            final int commandEnd = null == line ? -1 : line.lastIndexOf(')');
+            if (commandEnd >= 0) {
+                final String[] fields = line.substring(commandEnd + 2).split(" ");
+                if (fields.length > STAT_MAJFLT_INDEX) {
+                    minorFaults = Long.parseLong(fields[STAT_MINFLT_INDEX]);
+                    majorFaults = Long.parseLong(fields[STAT_MAJFLT_INDEX]);
+                }
+            }
+        } catch (final IOException | NumberFormatException e) {
+            Log.w(TAG, "Cannot read page fault counters", e);
+        }
+        long residentKb = NOT_AVAILABLE;
+        try (final BufferedReader reader = new BufferedReader(new FileReader(PROC_SELF_STATUS))) {
+            for (String line = reader.readLine(); null != line; line = reader.readLine()) {
+                if (!line.startsWith(VM_RSS_PREFIX)) continue;
+                final String value = line.substring(VM_RSS_PREFIX.length()).trim();
+                final int unitStart = value.indexOf(' ');
+                residentKb = Long.parseLong(unitStart < 0 ? value : value.substring(0, unitStart));
+                break;
+            }
+        } catch (final IOException | NumberFormatException e) {
+            Log.w(TAG, "Cannot read the resident set size", e);
+        }
+        return new ProcessResourceUsage(SystemClock.uptimeMillis(), minorFaults, majorFaults,
+                residentKb);
+    }
+
+    private static long delta(final long before, final long after) {
+        if (NOT_AVAILABLE == before || NOT_AVAILABLE == after) return NOT_AVAILABLE;
+        return after - before;
+    }
+
+    /**
+     * Returns the usage accumulated between {@code before} and this snapshot.
+     */
+    public ProcessResourceUsage since(final ProcessResourceUsage before) {
+        return new ProcessResourceUsage(mUptimeMillis - before.mUptimeMillis,
+                delta(before.mMinorFaults, mMinorFaults), delta(before.mMajorFaults, mMajorFaults),
+                delta(before.mResidentKb, mResidentKb));
+    }
+
+    @Override
+    public String toString() {
+        return mUptimeMillis + " ms, " + mMajorFaults + " major / " + mMinorFaults
+                + " minor faults, RSS " + mResidentKb + " kb";
+    }
+}
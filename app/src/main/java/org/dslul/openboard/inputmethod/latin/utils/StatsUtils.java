@@ -23,13 +23,60 @@ import org.dslul.openboard.inputmethod.latin.RichInputMethodManager;
 import org.dslul.openboard.inputmethod.latin.SuggestedWords;
 import org.dslul.openboard.inputmethod.latin.settings.SettingsValues;
 
+import javax.annotation.Nullable;
+
+/**
+ * Hooks for the statistics of keyboard usage. They report to the installed {@link MetricsSink},
+ * if any, and return right away otherwise. Only counts, lengths and durations are reported, never
+ * the words themselves.
+ */
 @SuppressWarnings("unused")
 public final class StatsUtils {
+    private static volatile MetricsSink sMetricsSink;
 
     private StatsUtils() {
         // Intentional empty constructor.
     }
 
+    public static void setMetricsSink(@Nullable final MetricsSink metricsSink) {
+        sMetricsSink = metricsSink;
+    }
+
+    @Nullable
+    public static MetricsSink getMetricsSink() {
+        return sMetricsSink;
+    }
+
+    private static void count(final int counter) {
+        final MetricsSink sink = sMetricsSink;
+        if (sink != null) {
+            sink.count(counter, 1);
+        }
+    }
+
+    private static void countWordCommit(final int counter, final String commitWord,
+            final boolean isBatchMode) {
+        final MetricsSink sink = sMetricsSink;
+        if (sink == null) {
+            return;
+        }
+        sink.count(counter, 1);
+        if (isBatchMode) {
+            sink.count(MetricsSink.COUNTER_WORD_COMMIT_BATCH_INPUT, 1);
+        }
+        if (commitWord != null) {
+            sink.count(MetricsSink.COUNTER_CHARS_COMMITTED, commitWord.length());
+        }
+    }
+
+    private static void countDeletion(final int counter, final int deletedLength) {
+        final MetricsSink sink = sMetricsSink;
+        if (sink != null) {
+            sink.count(counter, 1);
+            sink.count(MetricsSink.COUNTER_CHARS_DELETED, deletedLength);
+        }
+    }
+
     public static void onCreate(final SettingsValues settingsValues,
             RichInputMethodManager richImm) {
     }
@@ -37,72 +84,127 @@ public final class StatsUtils {
     public static void onPickSuggestionManually(final SuggestedWords suggestedWords,
             final SuggestedWords.SuggestedWordInfo suggestionInfo,
             final DictionaryFacilitator dictionaryFacilitator) {
+        count(MetricsSink.COUNTER_SUGGESTION_PICKED_MANUALLY);
     }
 
     public static void onBackspaceWordDelete(int wordLength) {
+        countDeletion(MetricsSink.COUNTER_BACKSPACE_WORD_DELETE, wordLength);
     }
 
     public static void onBackspacePressed(int lengthToDelete) {
+        countDeletion(MetricsSink.COUNTER_BACKSPACE_PRESSED, lengthToDelete);
     }
 
     public static void onBackspaceSelectedText(int selectedTextLength) {
+        countDeletion(MetricsSink.COUNTER_BACKSPACE_SELECTED_TEXT, selectedTextLength);
     }
 
     public static void onDeleteMultiCharInput(int multiCharLength) {
+        countDeletion(MetricsSink.COUNTER_DELETE_MULTI_CHAR_INPUT, multiCharLength);
     }
 
     public static void onRevertAutoCorrect() {
+        count(MetricsSink.COUNTER_REVERT_AUTO_CORRECT);
     }
 
     public static void onRevertDoubleSpacePeriod() {
+        count(MetricsSink.COUNTER_REVERT_DOUBLE_SPACE_PERIOD);
     }
 
     public static void onRevertSwapPunctuation() {
+        count(MetricsSink.COUNTER_REVERT_SWAP_PUNCTUATION);
     }
 
     public static void onFinishInputView() {
     }
 
     public static void onCreateInputView() {
+        count(MetricsSink.COUNTER_CREATE_INPUT_VIEW);
     }
 
     public static void onStartInputView(int inputType, int displayOrientation, boolean restarting) {
+        count(MetricsSink.COUNTER_START_INPUT_VIEW);
     }
 
     public static void onAutoCorrection(final String typedWord, final String autoCorrectionWord,
             final boolean isBatchInput, final DictionaryFacilitator dictionaryFacilitator,
             final String prevWordsContext) {
+        count(MetricsSink.COUNTER_AUTO_CORRECTION);
     }
 
     public static void onWordCommitUserTyped(final String commitWord, final boolean isBatchMode) {
+        countWordCommit(MetricsSink.COUNTER_WORD_COMMIT_USER_TYPED, commitWord, isBatchMode);
     }
 
     public static void onWordCommitAutoCorrect(final String commitWord, final boolean isBatchMode) {
+        countWordCommit(MetricsSink.COUNTER_WORD_COMMIT_AUTO_CORRECT, commitWord, isBatchMode);
     }
 
     public static void onWordCommitSuggestionPickedManually(
             final String commitWord, final boolean isBatchMode) {
+        countWordCommit(MetricsSink.COUNTER_WORD_COMMIT_SUGGESTION_PICKED, commitWord,
+                isBatchMode);
     }
 
     public static void onDoubleSpacePeriod() {
+        count(MetricsSink.COUNTER_DOUBLE_SPACE_PERIOD);
     }
 
     public static void onLoadSettings(SettingsValues settingsValues) {
+        count(MetricsSink.COUNTER_SETTINGS_LOADED);
     }
 
     public static void onInvalidWordIdentification(final String invalidWord) {
+        count(MetricsSink.COUNTER_INVALID_WORD_IDENTIFICATION);
     }
 
     public static void onSubtypeChanged(final InputMethodSubtype oldSubtype,
             final InputMethodSubtype newSubtype) {
+        count(MetricsSink.COUNTER_SUBTYPE_CHANGED);
     }
 
     public static void onSettingsActivity(final String entryPoint) {
+        count(MetricsSink.COUNTER_SETTINGS_ACTIVITY);
+    }
+
+    /**
+     * Called after every read from the InputConnection, slow or not.
+     */
+    public static void onInputConnectionOperation(final int operation, final long duration) {
+        final MetricsSink sink = sMetricsSink;
+        if (sink != null) {
+            sink.recordLatency(MetricsSink.HISTOGRAM_INPUT_CONNECTION, duration);
+        }
     }
 
     public static void onInputConnectionLaggy(final int operation, final long duration) {
+        count(MetricsSink.COUNTER_INPUT_CONNECTION_LAGGY);
     }
 
     public static void onDecoderLaggy(final int operation, final long duration) {
+        final MetricsSink sink = sMetricsSink;
+        if (sink != null) {
+            sink.count(MetricsSink.COUNTER_DECODER_LAGGY, 1);
+            sink.recordLatency(MetricsSink.HISTOGRAM_DECODER_LAGGY, duration);
+        }
+    }
+
+    public static void onSuggestionUpdateRequested() {
+        count(MetricsSink.COUNTER_SUGGESTION_UPDATE_REQUESTED);
+    }
+
+    /**
+     * Called after the suggestion strip has been updated.
+     * @param duration the time it took to compute the suggestions and show them.
+     * @param delaySinceRequest the time since the last input that requested an update.
+     */
+    public static void onSuggestionUpdatePerformed(final long duration,
+            final long delaySinceRequest) {
+        final MetricsSink sink = sMetricsSink;
+        if (sink != null) {
+            sink.count(MetricsSink.COUNTER_SUGGESTION_UPDATE_PERFORMED, 1);
+            sink.recordLatency(MetricsSink.HISTOGRAM_SUGGESTION_UPDATE, duration);
+            sink.recordLatency(MetricsSink.HISTOGRAM_SUGGESTION_STRIP_DELAY, delaySinceRequest);
+        }
     }
 }
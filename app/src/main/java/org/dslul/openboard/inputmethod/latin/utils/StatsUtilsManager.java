@@ -20,14 +20,23 @@ package org.dslul.openboard.inputmethod.latin.utils;
 import android.content.Context;
 
 import org.dslul.openboard.inputmethod.latin.DictionaryFacilitator;
+import org.dslul.openboard.inputmethod.latin.settings.DebugSettings;
 import org.dslul.openboard.inputmethod.latin.settings.SettingsValues;
 
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
 @SuppressWarnings("unused")
 public class StatsUtilsManager {
 
     private static final StatsUtilsManager sInstance = new StatsUtilsManager();
     private static StatsUtilsManager sTestInstance = null;
 
+    private static final long METRICS_SNAPSHOT_INTERVAL_MINUTES = 5;
+
+    private MetricsRecorder mMetricsRecorder;
+    private ScheduledFuture<?> mMetricsSnapshotFuture;
+
     /**
      * @return the singleton instance of {@link StatsUtilsManager}.
      */
@@ -39,7 +48,27 @@ public class StatsUtilsManager {
         sTestInstance = testInstance;
     }
 
+    /**
+     * Installs a {@link MetricsRecorder} behind the {@link StatsUtils} hooks when debug mode is
+     * on, and snapshots it to a file periodically. Without it, the hooks do nothing.
+     */
     public void onCreate(final Context context, final DictionaryFacilitator dictionaryFacilitator) {
+        if (!DeviceProtectedUtils.getSharedPreferences(context)
+                .getBoolean(DebugSettings.PREF_DEBUG_MODE, false)) {
+            return;
+        }
+        final MetricsRecorder metricsRecorder = new MetricsRecorder();
+        final Context appContext = context.getApplicationContext();
+        mMetricsRecorder = metricsRecorder;
+        StatsUtils.setMetricsSink(metricsRecorder);
+        mMetricsSnapshotFuture = ExecutorUtils.getBackgroundExecutor(ExecutorUtils.KEYBOARD)
+                .scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        metricsRecorder.writeSnapshot(appContext);
+                    }
+                }, METRICS_SNAPSHOT_INTERVAL_MINUTES, METRICS_SNAPSHOT_INTERVAL_MINUTES,
+                        TimeUnit.MINUTES);
     }
 
     public void onLoadSettings(final Context context, final SettingsValues settingsValues) {
@@ -52,5 +81,20 @@ public class StatsUtilsManager {
     }
 
     public void onDestroy(final Context context) {
+        final MetricsRecorder metricsRecorder = mMetricsRecorder;
+        if (metricsRecorder == null) {
+            return;
+        }
+        StatsUtils.setMetricsSink(null);
+        mMetricsRecorder = null;
+        mMetricsSnapshotFuture.cancel(false /* mayInterruptIfRunning */);
+        mMetricsSnapshotFuture = null;
+        final Context appContext = context.getApplicationContext();
+        ExecutorUtils.getBackgroundExecutor(ExecutorUtils.KEYBOARD).execute(new Runnable() {
+            @Override
+            public void run() {
+                metricsRecorder.writeSnapshot(appContext);
+            }
+        });
     }
 }
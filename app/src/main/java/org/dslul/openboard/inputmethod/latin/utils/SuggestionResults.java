@@ -19,16 +19,26 @@ package org.dslul.openboard.inputmethod.latin.utils;
 import org.dslul.openboard.inputmethod.latin.SuggestedWords.SuggestedWordInfo;
 import org.dslul.openboard.inputmethod.latin.define.ProductionFlags;
 
+import java.util.AbstractCollection;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.TreeSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
- * A TreeSet of SuggestedWordInfo that is bounded in size and throws everything that's smaller
- * than its limit
+ * A collection of SuggestedWordInfo that is bounded in size and throws everything that's smaller
+ * than its limit. Only the best suggestion for each word is kept, and the suggestions are iterated
+ * from the best to the worst.
+ *
+ * Suggestions from all dictionaries are added for every keystroke, so this avoids allocating for
+ * each of them: they are kept in a fixed-capacity sorted array, where most suggestions only need
+ * to be compared with the last one, and an open-addressing hash table from words to suggestions
+ * finds the suggestion already kept for a word without scanning the others.
  */
-public final class SuggestionResults extends TreeSet<SuggestedWordInfo> {
+public final class SuggestionResults extends AbstractCollection<SuggestedWordInfo> {
     public final ArrayList<SuggestedWordInfo> mRawSuggestions;
     // TODO: Instead of a boolean , we may want to include the context of this suggestion results,
     // such as {@link NgramContext}.
@@ -36,16 +46,16 @@ public final class SuggestionResults extends TreeSet<SuggestedWordInfo> {
     public final boolean mFirstSuggestionExceedsConfidenceThreshold;
     private final int mCapacity;
 
-    public SuggestionResults(final int capacity, final boolean isBeginningOfSentence,
-            final boolean firstSuggestionExceedsConfidenceThreshold) {
-        this(sSuggestedWordInfoComparator, capacity, isBeginningOfSentence,
-                firstSuggestionExceedsConfidenceThreshold);
-    }
+    // The suggestions from the best to the worst, as ordered by sSuggestedWordInfoComparator.
+    private final SuggestedWordInfo[] mSuggestions;
+    private int mSize;
+    // A hash table with linear probing from the words of the suggestions to the suggestions. It
+    // is kept at most half full so that probe sequences stay short.
+    private final SuggestedWordInfo[] mSlots;
+    private final int mSlotMask;
 
-    private SuggestionResults(final Comparator<SuggestedWordInfo> comparator, final int capacity,
-            final boolean isBeginningOfSentence,
+    public SuggestionResults(final int capacity, final boolean isBeginningOfSentence,
             final boolean firstSuggestionExceedsConfidenceThreshold) {
-        super(comparator);
         mCapacity = capacity;
         if (ProductionFlags.INCLUDE_RAW_SUGGESTIONS) {
             mRawSuggestions = new ArrayList<>();
@@ -54,21 +64,117 @@ public final class SuggestionResults extends TreeSet<SuggestedWordInfo> {
         }
         mIsBeginningOfSentence = isBeginningOfSentence;
         mFirstSuggestionExceedsConfidenceThreshold = firstSuggestionExceedsConfidenceThreshold;
+        mSuggestions = new SuggestedWordInfo[capacity];
+        final int tableSize = Integer.highestOneBit(Math.max(capacity, 1) * 2) * 2;
+        mSlots = new SuggestedWordInfo[tableSize];
+        mSlotMask = tableSize - 1;
     }
 
     @Override
     public boolean add(final SuggestedWordInfo e) {
-        if (size() < mCapacity) return super.add(e);
-        if (comparator().compare(e, last()) > 0) return false;
-        super.add(e);
-        pollLast(); // removes the last element
+        // Once full, most suggestions are not better than the worst one, and neither are they
+        // better than a suggestion already kept for the same word.
+        if (mSize == mCapacity && (mCapacity == 0
+                || sSuggestedWordInfoComparator.compare(e, mSuggestions[mSize - 1]) >= 0)) {
+            return false;
+        }
+        int slot = findSlot(e.mWord);
+        final SuggestedWordInfo sameWordInfo = mSlots[slot];
+        if (null != sameWordInfo) {
+            // Keep the best of the two suggestions for the word.
+            if (sSuggestedWordInfoComparator.compare(e, sameWordInfo) >= 0) return false;
+            removeAt(Arrays.binarySearch(
+                    mSuggestions, 0, mSize, sameWordInfo, sSuggestedWordInfoComparator));
+        } else if (mSize == mCapacity) {
+            // Make room by throwing away the worst suggestion. Removing it from the table may
+            // move other entries, so look for the slot of the new word again.
+            removeSlot(findSlot(mSuggestions[mSize - 1].mWord));
+            removeAt(mSize - 1);
+            slot = findSlot(e.mWord);
+        }
+        mSlots[slot] = e;
+        final int index = -1 - Arrays.binarySearch(
+                mSuggestions, 0, mSize, e, sSuggestedWordInfoComparator);
+        System.arraycopy(mSuggestions, index, mSuggestions, index + 1, mSize - index);
+        mSuggestions[index] = e;
+        mSize++;
         return true;
     }
 
     @Override
     public boolean addAll(final Collection<? extends SuggestedWordInfo> e) {
         if (null == e) return false;
-        return super.addAll(e);
+        boolean modified = false;
+        for (final SuggestedWordInfo info : e) {
+            modified |= add(info);
+        }
+        return modified;
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    public Iterator<SuggestedWordInfo> iterator() {
+        return Collections.unmodifiableList(
+                Arrays.asList(mSuggestions).subList(0, mSize)).iterator();
+    }
+
+    /**
+     * Returns the best suggestion.
+     * @throws NoSuchElementException if there are no suggestions.
+     */
+    public SuggestedWordInfo first() {
+        if (mSize == 0) {
+            throw new NoSuchElementException();
+        }
+        return mSuggestions[0];
+    }
+
+    /**
+     * Returns a new list of the suggestions, from the best to the worst.
+     */
+    public ArrayList<SuggestedWordInfo> getSortedSuggestions() {
+        return new ArrayList<>(Arrays.asList(mSuggestions).subList(0, mSize));
+    }
+
+    private void removeAt(final int index) {
+        mSize--;
+        System.arraycopy(mSuggestions, index + 1, mSuggestions, index, mSize - index);
+        mSuggestions[mSize] = null;
+    }
+
+    private int getHomeSlot(final String word) {
+        final int hashCode = word.hashCode();
+        return (hashCode ^ (hashCode >>> 16)) & mSlotMask;
+    }
+
+    // Returns the slot of the word in the table, or the empty slot where it would go.
+    private int findSlot(final String word) {
+        int slot = getHomeSlot(word);
+        while (null != mSlots[slot] && !word.equals(mSlots[slot].mWord)) {
+            slot = (slot + 1) & mSlotMask;
+        }
+        return slot;
+    }
+
+    // Empties a slot of the table, moving back the entries that probed past it so that they can
+    // still be found.
+    private void removeSlot(int slot) {
+        mSlots[slot] = null;
+        int next = (slot + 1) & mSlotMask;
+        while (null != mSlots[next]) {
+            final int homeSlot = getHomeSlot(mSlots[next].mWord);
+            if (((next - homeSlot) & mSlotMask) >= ((next - slot) & mSlotMask)) {
+                // The empty slot is between the home slot of this entry and the entry.
+                mSlots[slot] = mSlots[next];
+                mSlots[next] = null;
+                slot = next;
+            }
+            next = (next + 1) & mSlotMask;
+        }
     }
 
     static final class SuggestedWordInfoComparator implements Comparator<SuggestedWordInfo> {
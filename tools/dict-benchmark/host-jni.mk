@@ -0,0 +1,32 @@
+# Builds libjni_latinime for the host, so that the dictionary benchmark can load the native
+# suggestion engine in a desktop JVM. The sources are the ones listed in NativeFileList.mk for the
+# device library; JNI headers come from the JDK.
+#
+# usage: make -f host-jni.mk [JAVA_HOME=<jdk>] [OUT=<dir>] [-j<jobs>]
+
+JNI_DIR := ../../app/src/main/jni
+LATIN_IME_SRC_DIR := $(JNI_DIR)/src
+OUT ?= build/host
+JAVA_HOME ?= $(shell dirname $$(dirname $$(readlink -f $$(which javac))))
+
+include $(JNI_DIR)/NativeFileList.mk
+
+SRC_FILES := \
+    $(addprefix $(JNI_DIR)/, $(LATIN_IME_JNI_SRC_FILES)) \
+    $(addprefix $(LATIN_IME_SRC_DIR)/, $(LATIN_IME_CORE_SRC_FILES))
+OBJ_FILES := $(patsubst $(JNI_DIR)/%.cpp, $(OUT)/obj/%.o, $(SRC_FILES))
+
+CXX ?= g++
+CXXFLAGS += -std=c++11 -O2 -fPIC -DNDEBUG -Wall -Wno-unused-parameter -Wno-unused-function \
+    -I$(LATIN_IME_SRC_DIR) -I$(JAVA_HOME)/include -I$(JAVA_HOME)/include/linux
+
+$(OUT)/libjni_latinime.so: $(OBJ_FILES)
+	$(CXX) -shared -o $@ $^ -ldl
+
+$(OUT)/obj/%.o: $(JNI_DIR)/%.cpp
+	@mkdir -p $(dir $@)
+	$(CXX) $(CXXFLAGS) -c $< -o $@
+
+.PHONY: clean
+clean:
+	rm -rf $(OUT)
@@ -0,0 +1,365 @@
+package com.android.inputmethod.dictionary.tools;
+
+import org.dslul.openboard.inputmethod.latin.BinaryDictionary;
+import org.dslul.openboard.inputmethod.latin.DicTraverseSession;
+import org.dslul.openboard.inputmethod.keyboard.ProximityInfo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Opens a binary dictionary with the native engine in a desktop JVM, checks it, and replays a
+ * corpus of words typed on a {@link SyntheticKeyboard}, querying suggestions after every letter
+ * as the keyboard does. Reports throughput, latency percentiles, how often the intended word is
+ * the first suggestion, and how much the process grew in native memory. Optionally compares
+ * searches continued from the previous input with searches from the root, see
+ * {@link IncrementalSearchComparison}.
+ *
+ * The native library must be built for the host first, see host-jni.mk.
+ */
+public class DictBenchmark {
+    private static final String JNI_LIB_NAME = "jni_latinime";
+    private static final String COMBINED_WORD_PREFIX = " word=";
+    private static final String LOCALE_ATTRIBUTE = "locale";
+    private static final String PROC_SELF_STATUS = "/proc/self/status";
+    private static final String VM_RSS_PREFIX = "VmRSS:";
+    private static final int TOUCH_INTERVAL_MILLIS = 150;
+    private static final int MAX_REPORTED_MISSING_WORDS = 10;
+
+    // Indices of the options array, see NativeSuggestOptions in the app.
+    private static final int BLOCK_OFFENSIVE_WORDS = 2;
+    private static final int WEIGHT_FOR_LOCALE_IN_THOUSANDS = 4;
+    private static final int SUGGEST_OPTIONS_SIZE = 5;
+
+    static class Options {
+        private static final String OPTION_DICT = "-dict";
+        private static final String OPTION_CORPUS = "-corpus";
+        private static final String OPTION_LIBRARY = "-library";
+        private static final String OPTION_WORDS = "-words";
+        private static final String OPTION_WARMUP = "-warmup";
+        private static final String OPTION_NOISE = "-noise";
+        private static final String OPTION_SEED = "-seed";
+        private static final String OPTION_COMPARE_INCREMENTAL = "-compare-incremental";
+
+        public final String mDict;
+        public final String mCorpus;
+        public final String mLibrary;
+        public final int mWords;
+        public final int mWarmup;
+        public final float mNoise;
+        public final long mSeed;
+        public final boolean mCompareIncremental;
+
+        public static void usage(String message) {
+            if (message != null) {
+                System.err.println(message);
+            }
+            System.err.println("usage: dict-benchmark " + OPTION_DICT + " <main.dict> "
+                    + OPTION_CORPUS + " <text file or word_list.combined[.gz]> ["
+                    + OPTION_LIBRARY + " <libjni_latinime.so>] [" + OPTION_WORDS + " <count>] ["
+                    + OPTION_WARMUP + " <count>] [" + OPTION_NOISE + " <key fraction>] ["
+                    + OPTION_SEED + " <seed>] [" + OPTION_COMPARE_INCREMENTAL + "]");
+            System.exit(1);
+        }
+
+        public Options(final String[] argsArray) {
+            final LinkedList<String> args = new LinkedList<>(Arrays.asList(argsArray));
+            String arg = null;
+            String dict = null;
+            String corpus = null;
+            String library = null;
+            int words = 2000;
+            int warmup = 200;
+            float noise = 0.25f;
+            long seed = 1;
+            boolean compareIncremental = false;
+            try {
+                while (!args.isEmpty()) {
+                    arg = args.removeFirst();
+                    if (arg.equals(OPTION_DICT)) {
+                        dict = args.removeFirst();
+                    } else if (arg.equals(OPTION_CORPUS)) {
+                        corpus = args.removeFirst();
+                    } else if (arg.equals(OPTION_LIBRARY)) {
+                        library = args.removeFirst();
+                    } else if (arg.equals(OPTION_WORDS)) {
+                        words = Integer.parseInt(args.removeFirst());
+                    } else if (arg.equals(OPTION_WARMUP)) {
+                        warmup = Integer.parseInt(args.removeFirst());
+                    } else if (arg.equals(OPTION_NOISE)) {
+                        noise = Float.parseFloat(args.removeFirst());
+                    } else if (arg.equals(OPTION_SEED)) {
+                        seed = Long.parseLong(args.removeFirst());
+                    } else if (arg.equals(OPTION_COMPARE_INCREMENTAL)) {
+                        compareIncremental = true;
+                    } else {
+                        usage("Unknown option: " + arg);
+                    }
+                }
+            } catch (NoSuchElementException e) {
+                usage("Option " + arg + " needs argument");
+            } catch (NumberFormatException e) {
+                usage("Option " + arg + " needs a number");
+            }
+            if (dict == null || corpus == null) {
+                usage("Both " + OPTION_DICT + " and " + OPTION_CORPUS + " are required");
+            }
+
+            mDict = dict;
+            mCorpus = corpus;
+            mLibrary = library;
+            mWords = words;
+            mWarmup = warmup;
+            mNoise = noise;
+            mSeed = seed;
+            mCompareIncremental = compareIncremental;
+        }
+    }
+
+    private static BufferedReader openReader(final String path) throws IOException {
+        InputStream in = new FileInputStream(path);
+        if (path.endsWith(".gz")) {
+            in = new GZIPInputStream(in);
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads the words of a combined word list in file order, which is by decreasing frequency,
+     * or the tokens of any other text file in reading order.
+     */
+    private static ArrayList<String> readCorpus(final String path, final int maxCount)
+            throws IOException {
+        final ArrayList<String> words = new ArrayList<>();
+        final boolean isCombined = path.contains(".combined");
+        try (final BufferedReader reader = openReader(path)) {
+            for (String line = reader.readLine(); line != null && words.size() < maxCount;
+                    line = reader.readLine()) {
+                if (isCombined) {
+                    if (!line.startsWith(COMBINED_WORD_PREFIX)) continue;
+                    final int end = line.indexOf(',');
+                    words.add(line.substring(COMBINED_WORD_PREFIX.length(),
+                            end < 0 ? line.length() : end));
+                    continue;
+                }
+                for (final String token : line.split("[^\\p{L}']+")) {
+                    if (!token.isEmpty() && words.size() < maxCount) {
+                        words.add(token);
+                    }
+                }
+            }
+        }
+        return words;
+    }
+
+    private static int[] toCodePoints(final String string) {
+        return string.codePoints().toArray();
+    }
+
+    private static String toString(final int[] codePoints) {
+        return new String(codePoints, 0, codePoints.length);
+    }
+
+    private static long readResidentKb() {
+        try (final BufferedReader reader = openReader(PROC_SELF_STATUS)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (!line.startsWith(VM_RSS_PREFIX)) continue;
+                final String value = line.substring(VM_RSS_PREFIX.length()).trim();
+                return Long.parseLong(value.substring(0, value.indexOf(' ')));
+            }
+        } catch (final IOException | RuntimeException e) {
+            // Not on Linux: memory is not reported.
+        }
+        return -1;
+    }
+
+    private static long percentile(final long[] sortedValues, final int count,
+            final double fraction) {
+        if (count == 0) return 0;
+        return sortedValues[Math.min(count - 1, (int) Math.ceil(fraction * count) - 1)];
+    }
+
+    private static double toMillis(final long nanos) {
+        return nanos / 1e6;
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final Options options = new Options(args);
+        if (options.mLibrary != null) {
+            System.load(new File(options.mLibrary).getAbsolutePath());
+        } else {
+            System.loadLibrary(JNI_LIB_NAME);
+        }
+        final ArrayList<String> corpus = readCorpus(options.mCorpus,
+                options.mWords + options.mWarmup);
+
+        // Open and verify the dictionary.
+        final File dictFile = new File(options.mDict);
+        final long residentBeforeOpen = readResidentKb();
+        final long openStart = System.nanoTime();
+        final long dict = BinaryDictionary.openNative(dictFile.getAbsolutePath(), 0,
+                dictFile.length(), false /* isUpdatable */);
+        final long openTime = System.nanoTime() - openStart;
+        if (dict == 0) {
+            System.err.println("Cannot open " + options.mDict);
+            System.exit(1);
+        }
+        final int[] headerSize = new int[1];
+        final int[] formatVersion = new int[1];
+        final ArrayList<int[]> keys = new ArrayList<>();
+        final ArrayList<int[]> values = new ArrayList<>();
+        BinaryDictionary.getHeaderInfoNative(dict, headerSize, formatVersion, keys, values);
+        String locale = "";
+        final StringBuilder header = new StringBuilder();
+        for (int i = 0; i < keys.size(); i++) {
+            final String key = toString(keys.get(i));
+            final String value = toString(values.get(i));
+            header.append(i == 0 ? "" : ", ").append(key).append('=').append(value);
+            if (LOCALE_ATTRIBUTE.equals(key)) {
+                locale = value;
+            }
+        }
+        System.out.println(options.mDict + ": version " + formatVersion[0] + ", header "
+                + headerSize[0] + " bytes (" + header + "), " + dictFile.length() + " bytes");
+        System.out.println("opened in " + String.format(Locale.ROOT, "%.2f", toMillis(openTime))
+                + " ms, corrupted: " + BinaryDictionary.isCorruptedNative(dict));
+        int missingCount = 0;
+        for (final String word : corpus) {
+            if (BinaryDictionary.getProbabilityNative(dict, toCodePoints(word))
+                    != BinaryDictionary.NOT_A_PROBABILITY) continue;
+            if (missingCount++ < MAX_REPORTED_MISSING_WORDS) {
+                System.out.println("  not in dictionary: " + word);
+            }
+        }
+        System.out.println(missingCount + " of " + corpus.size() + " corpus words are missing");
+
+        // Replay the corpus.
+        final SyntheticKeyboard keyboard = new SyntheticKeyboard();
+        final long proximityInfo = keyboard.createNativeProximityInfo();
+        final long session = DicTraverseSession.setDicTraverseSessionNative(locale,
+                dictFile.length());
+        DicTraverseSession.initDicTraverseSessionNative(session, dict, null, 0);
+        final long residentAfterOpen = readResidentKb();
+
+        final int maxLength = BinaryDictionary.DICTIONARY_MAX_WORD_LENGTH;
+        final int maxResults = BinaryDictionary.MAX_RESULTS;
+        final int[] xCoordinates = new int[maxLength];
+        final int[] yCoordinates = new int[maxLength];
+        final int[] times = new int[maxLength];
+        final int[] pointerIds = new int[maxLength];
+        final int[] inputCodePoints = new int[maxLength];
+        final int[] suggestOptions = new int[SUGGEST_OPTIONS_SIZE];
+        suggestOptions[BLOCK_OFFENSIVE_WORDS] = 1;
+        suggestOptions[WEIGHT_FOR_LOCALE_IN_THOUSANDS] = 1000;
+        final int[][] prevWordCodePointArrays =
+                new int[BinaryDictionary.MAX_PREV_WORD_COUNT_FOR_N_GRAM][];
+        final boolean[] isBeginningOfSentenceArray =
+                new boolean[BinaryDictionary.MAX_PREV_WORD_COUNT_FOR_N_GRAM];
+        final int[] outputSuggestionCount = new int[1];
+        final int[] outputCodePoints = new int[maxLength * maxResults];
+        final int[] outputScores = new int[maxResults];
+        final int[] outputIndices = new int[maxResults];
+        final int[] outputTypes = new int[maxResults];
+        final int[] outputAutoCommitFirstWordConfidence = new int[1];
+        final float[] weightOfLangModelVsSpatialModel = new float[1];
+        for (int i = 0; i < maxLength; i++) {
+            times[i] = i * TOUCH_INTERVAL_MILLIS;
+        }
+
+        final Random random = new Random(options.mSeed);
+        final long[] latencies = new long[options.mWords * maxLength];
+        int queryCount = 0;
+        int typedWordCount = 0;
+        int skippedWordCount = 0;
+        int firstSuggestionHits = 0;
+        int anySuggestionHits = 0;
+        long totalTime = 0;
+        for (int w = 0; w < corpus.size(); w++) {
+            final String word = corpus.get(w);
+            final String typed = word.toLowerCase(Locale.ROOT);
+            final boolean isWarmup = w < options.mWarmup;
+            if (typed.length() > maxLength || !keyboard.canType(typed)) {
+                if (!isWarmup) skippedWordCount++;
+                continue;
+            }
+            keyboard.touch(typed, options.mNoise, random, xCoordinates, yCoordinates);
+            for (int i = 0; i < typed.length(); i++) {
+                inputCodePoints[i] = keyboard.getCodeAt(xCoordinates[i], yCoordinates[i]);
+            }
+            for (int inputSize = 1; inputSize <= typed.length(); inputSize++) {
+                weightOfLangModelVsSpatialModel[0] =
+                        BinaryDictionary.NOT_A_WEIGHT_OF_LANG_MODEL_VS_SPATIAL_MODEL;
+                final long start = System.nanoTime();
+                BinaryDictionary.getSuggestionsNative(dict, proximityInfo, session,
+                        xCoordinates, yCoordinates, times, pointerIds, inputCodePoints,
+                        inputSize, suggestOptions, prevWordCodePointArrays,
+                        isBeginningOfSentenceArray, 0 /* prevWordCount */, outputSuggestionCount,
+                        outputCodePoints, outputScores, outputIndices, outputTypes,
+                        outputAutoCommitFirstWordConfidence, weightOfLangModelVsSpatialModel);
+                final long latency = System.nanoTime() - start;
+                if (!isWarmup) {
+                    latencies[queryCount++] = latency;
+                    totalTime += latency;
+                }
+            }
+            if (isWarmup) continue;
+            typedWordCount++;
+            // Suggestions come out by increasing score, the app sorts them afterwards.
+            int bestScore = Integer.MIN_VALUE;
+            int intendedScore = Integer.MIN_VALUE;
+            for (int j = 0; j < outputSuggestionCount[0]; j++) {
+                bestScore = Math.max(bestScore, outputScores[j]);
+                int length = 0;
+                while (length < maxLength && outputCodePoints[j * maxLength + length] != 0) {
+                    length++;
+                }
+                if (word.equals(new String(outputCodePoints, j * maxLength, length))) {
+                    intendedScore = Math.max(intendedScore, outputScores[j]);
+                }
+            }
+            if (intendedScore != Integer.MIN_VALUE) {
+                anySuggestionHits++;
+                if (intendedScore == bestScore) firstSuggestionHits++;
+            }
+        }
+        final long residentAfterReplay = readResidentKb();
+        DicTraverseSession.releaseDicTraverseSessionNative(session);
+        if (options.mCompareIncremental) {
+            IncrementalSearchComparison.run(dict, locale, dictFile.length(), proximityInfo,
+                    keyboard, corpus, options.mWarmup, options.mNoise, options.mSeed);
+        }
+        ProximityInfo.releaseProximityInfoNative(proximityInfo);
+        BinaryDictionary.closeNative(dict);
+
+        Arrays.sort(latencies, 0, queryCount);
+        System.out.println(typedWordCount + " words typed with noise " + options.mNoise
+                + " (" + skippedWordCount + " skipped, " + options.mWarmup + " warm-up), "
+                + queryCount + " queries");
+        System.out.println(String.format(Locale.ROOT,
+                "%.0f suggestions/s, latency p50 %.3f ms, p99 %.3f ms, max %.3f ms",
+                queryCount / (totalTime / 1e9), toMillis(percentile(latencies, queryCount, 0.5)),
+                toMillis(percentile(latencies, queryCount, 0.99)),
+                toMillis(percentile(latencies, queryCount, 1.0))));
+        System.out.println(String.format(Locale.ROOT,
+                "intended word first: %.1f%%, in suggestions: %.1f%%",
+                100.0 * firstSuggestionHits / Math.max(1, typedWordCount),
+                100.0 * anySuggestionHits / Math.max(1, typedWordCount)));
+        if (residentBeforeOpen >= 0) {
+            System.out.println("RSS +" + (residentAfterOpen - residentBeforeOpen)
+                    + " kB after open, +" + (residentAfterReplay - residentBeforeOpen)
+                    + " kB after replay");
+        }
+    }
+}
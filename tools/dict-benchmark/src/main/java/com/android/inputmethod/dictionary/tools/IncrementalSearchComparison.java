@@ -0,0 +1,220 @@
+package com.android.inputmethod.dictionary.tools;
+
+import org.dslul.openboard.inputmethod.latin.BinaryDictionary;
+import org.dslul.openboard.inputmethod.latin.DicTraverseSession;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Replays a corpus the way it is typed and corrected, one letter at a time, then two backspaces
+ * and the two letters again, and runs every search twice: once on a new traverse session, which
+ * searches from the root of the dictionary, and once on a session kept for the whole corpus, as
+ * the keyboard does, which continues from the dicNodes cached by its previous search when the
+ * native code finds the input points continue the previous ones. Reports how long each took and
+ * how many of the continued searches returned other suggestions than the searches from the root.
+ */
+final class IncrementalSearchComparison {
+    // Indices of the options array, see NativeSuggestOptions in the app.
+    private static final int BLOCK_OFFENSIVE_WORDS = 2;
+    private static final int WEIGHT_FOR_LOCALE_IN_THOUSANDS = 4;
+    private static final int SUGGEST_OPTIONS_SIZE = 5;
+    private static final int TOUCH_INTERVAL_MILLIS = 150;
+    private static final int BACKSPACE_COUNT = 2;
+    private static final int MAX_REPORTED_DIFFERENCES = 10;
+
+    private static final int MODE_ROOT = 0;
+    private static final String[] MODE_NAMES = { "root", "continued" };
+
+    private static final int MAX_LENGTH = BinaryDictionary.DICTIONARY_MAX_WORD_LENGTH;
+    private static final int MAX_RESULTS = BinaryDictionary.MAX_RESULTS;
+
+    /** The input and output buffers of one traverse session. */
+    private static final class Search {
+        long mSession;
+        final int[] mSuggestOptions = new int[SUGGEST_OPTIONS_SIZE];
+        final int[] mOutputSuggestionCount = new int[1];
+        final int[] mOutputCodePoints = new int[MAX_LENGTH * MAX_RESULTS];
+        final int[] mOutputScores = new int[MAX_RESULTS];
+        final int[] mOutputIndices = new int[MAX_RESULTS];
+        final int[] mOutputTypes = new int[MAX_RESULTS];
+        final int[] mOutputAutoCommitFirstWordConfidence = new int[1];
+        final float[] mWeightOfLangModelVsSpatialModel = new float[1];
+        long mTotalTime;
+        int mDifferentQueryCount;
+        int mDifferentAfterBackspaceCount;
+        final ArrayList<String> mDifferentWords = new ArrayList<>();
+
+        Search(final long dict, final String locale, final long dictSize) {
+            mSession = createSession(dict, locale, dictSize);
+            mSuggestOptions[BLOCK_OFFENSIVE_WORDS] = 1;
+            mSuggestOptions[WEIGHT_FOR_LOCALE_IN_THOUSANDS] = 1000;
+        }
+
+        /** Searches the given input and returns how long it took, in nanoseconds. */
+        long run(final long dict, final long proximityInfo, final int[] xCoordinates,
+                final int[] yCoordinates, final int[] times, final int[] pointerIds,
+                final int[] inputCodePoints, final int inputSize,
+                final int[][] prevWordCodePointArrays,
+                final boolean[] isBeginningOfSentenceArray) {
+            mWeightOfLangModelVsSpatialModel[0] =
+                    BinaryDictionary.NOT_A_WEIGHT_OF_LANG_MODEL_VS_SPATIAL_MODEL;
+            final long start = System.nanoTime();
+            BinaryDictionary.getSuggestionsNative(dict, proximityInfo, mSession, xCoordinates,
+                    yCoordinates, times, pointerIds, inputCodePoints, inputSize,
+                    mSuggestOptions, prevWordCodePointArrays, isBeginningOfSentenceArray,
+                    0 /* prevWordCount */, mOutputSuggestionCount, mOutputCodePoints,
+                    mOutputScores, mOutputIndices, mOutputTypes,
+                    mOutputAutoCommitFirstWordConfidence, mWeightOfLangModelVsSpatialModel);
+            return System.nanoTime() - start;
+        }
+
+        boolean hasSameSuggestions(final Search other) {
+            final int count = mOutputSuggestionCount[0];
+            return count == other.mOutputSuggestionCount[0]
+                    && Arrays.equals(Arrays.copyOf(mOutputScores, count),
+                            Arrays.copyOf(other.mOutputScores, count))
+                    && Arrays.equals(Arrays.copyOf(mOutputCodePoints, count * MAX_LENGTH),
+                            Arrays.copyOf(other.mOutputCodePoints, count * MAX_LENGTH));
+        }
+
+        private static long createSession(final long dict, final String locale,
+                final long dictSize) {
+            final long session = DicTraverseSession.setDicTraverseSessionNative(locale, dictSize);
+            DicTraverseSession.initDicTraverseSessionNative(session, dict, null, 0);
+            return session;
+        }
+
+        void renewSession(final long dict, final String locale, final long dictSize) {
+            release();
+            mSession = createSession(dict, locale, dictSize);
+        }
+
+        void release() {
+            DicTraverseSession.releaseDicTraverseSessionNative(mSession);
+        }
+    }
+
+    private IncrementalSearchComparison() {
+        // This utility class is not publicly instantiable.
+    }
+
+    /**
+     * Returns the input sizes of the searches for a word of the given length: one more letter at
+     * a time, then {@link #BACKSPACE_COUNT} backspaces and the same letters again.
+     */
+    private static int[] getInputSizes(final int length) {
+        final int backspaceCount = Math.min(BACKSPACE_COUNT, length - 1);
+        final int[] inputSizes = new int[length + 2 * backspaceCount];
+        int i = 0;
+        for (int inputSize = 1; inputSize <= length; inputSize++) {
+            inputSizes[i++] = inputSize;
+        }
+        for (int b = 1; b <= backspaceCount; b++) {
+            inputSizes[i++] = length - b;
+        }
+        for (int b = backspaceCount - 1; b >= 0; b--) {
+            inputSizes[i++] = length - b;
+        }
+        return inputSizes;
+    }
+
+    public static void run(final long dict, final String locale, final long dictSize,
+            final long proximityInfo, final SyntheticKeyboard keyboard,
+            final ArrayList<String> corpus, final int warmupCount, final float noise,
+            final long seed) {
+        final Search[] searches = new Search[MODE_NAMES.length];
+        for (int mode = 0; mode < searches.length; mode++) {
+            searches[mode] = new Search(dict, locale, dictSize);
+        }
+        final int[] xCoordinates = new int[MAX_LENGTH];
+        final int[] yCoordinates = new int[MAX_LENGTH];
+        final int[] times = new int[MAX_LENGTH];
+        final int[] pointerIds = new int[MAX_LENGTH];
+        final int[] inputCodePoints = new int[MAX_LENGTH];
+        final int[][] prevWordCodePointArrays =
+                new int[BinaryDictionary.MAX_PREV_WORD_COUNT_FOR_N_GRAM][];
+        final boolean[] isBeginningOfSentenceArray =
+                new boolean[BinaryDictionary.MAX_PREV_WORD_COUNT_FOR_N_GRAM];
+        for (int i = 0; i < MAX_LENGTH; i++) {
+            times[i] = i * TOUCH_INTERVAL_MILLIS;
+        }
+
+        final Random random = new Random(seed);
+        int wordCount = 0;
+        int queryCount = 0;
+        boolean isWarmup = warmupCount > 0;
+        for (int w = 0; w < corpus.size(); w++) {
+            final String word = corpus.get(w).toLowerCase(Locale.ROOT);
+            if (word.length() > MAX_LENGTH || !keyboard.canType(word)) {
+                continue;
+            }
+            if (isWarmup && w >= warmupCount) {
+                isWarmup = false;
+                for (final Search search : searches) {
+                    search.mTotalTime = 0;
+                    search.mDifferentQueryCount = 0;
+                    search.mDifferentAfterBackspaceCount = 0;
+                    search.mDifferentWords.clear();
+                }
+                wordCount = 0;
+                queryCount = 0;
+            }
+            keyboard.touch(word, noise, random, xCoordinates, yCoordinates);
+            for (int i = 0; i < word.length(); i++) {
+                inputCodePoints[i] = keyboard.getCodeAt(xCoordinates[i], yCoordinates[i]);
+            }
+            final boolean[] isDifferentWord = new boolean[searches.length];
+            int lastInputSize = 0;
+            for (final int inputSize : getInputSizes(word.length())) {
+                final boolean isAfterBackspace = inputSize < lastInputSize;
+                lastInputSize = inputSize;
+                // The queue sizes and the sampled input points a session keeps from its previous
+                // searches change the results even of searches that start from the root, so the
+                // reference searches each run on a new session.
+                final Search rootSearch = searches[MODE_ROOT];
+                rootSearch.renewSession(dict, locale, dictSize);
+                // Alternate the order of the modes, so that neither always runs with the
+                // dictionary pages just touched by the other.
+                for (int m = 0; m < searches.length; m++) {
+                    final Search search = searches[(w + m) % searches.length];
+                    search.mTotalTime += search.run(dict, proximityInfo, xCoordinates,
+                            yCoordinates, times, pointerIds, inputCodePoints, inputSize,
+                            prevWordCodePointArrays, isBeginningOfSentenceArray);
+                }
+                queryCount++;
+                for (int mode = 0; mode < searches.length; mode++) {
+                    final Search search = searches[mode];
+                    if (search.hasSameSuggestions(rootSearch)) continue;
+                    search.mDifferentQueryCount++;
+                    if (isAfterBackspace) search.mDifferentAfterBackspaceCount++;
+                    isDifferentWord[mode] = true;
+                }
+            }
+            wordCount++;
+            for (int mode = 0; mode < searches.length; mode++) {
+                if (isDifferentWord[mode]) searches[mode].mDifferentWords.add(word);
+            }
+        }
+
+        System.out.println("incremental search comparison: " + wordCount + " words typed with "
+                + BACKSPACE_COUNT + " backspaces each, " + queryCount + " queries per mode");
+        final long rootTime = searches[MODE_ROOT].mTotalTime;
+        for (int mode = 0; mode < searches.length; mode++) {
+            final Search search = searches[mode];
+            final ArrayList<String> differentWords = search.mDifferentWords;
+            System.out.println(String.format(Locale.ROOT,
+                    "  %-11s %.3f ms/query (%+.1f%% vs root), %d queries differ from root"
+                            + " (%d after a backspace), %d words%s",
+                    MODE_NAMES[mode], search.mTotalTime / 1e6 / Math.max(1, queryCount),
+                    100.0 * (search.mTotalTime - rootTime) / Math.max(1, rootTime),
+                    search.mDifferentQueryCount, search.mDifferentAfterBackspaceCount,
+                    differentWords.size(), differentWords.isEmpty() ? "" : ": "
+                            + differentWords.subList(0, Math.min(MAX_REPORTED_DIFFERENCES,
+                                    differentWords.size()))));
+            search.release();
+        }
+    }
+}
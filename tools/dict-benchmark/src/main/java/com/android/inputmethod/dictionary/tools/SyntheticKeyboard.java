@@ -0,0 +1,150 @@
+package com.android.inputmethod.dictionary.tools;
+
+import org.dslul.openboard.inputmethod.keyboard.ProximityInfo;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A plain QWERTY layout with phone-like key sizes, used to feed the native ProximityInfo and to
+ * turn intended letters into noisy touch coordinates. The proximity grid is computed the same way
+ * as ProximityInfo.computeNearestNeighbors() does in the app, without the cell pre-selection.
+ */
+final class SyntheticKeyboard {
+    private static final String[] LETTER_ROWS = { "qwertyuiop", "asdfghjkl", "zxcvbnm" };
+    private static final float[] LETTER_ROW_OFFSETS = { 0.0f, 0.5f, 1.5f };
+    private static final int SPACE_KEY_START = 3;
+    private static final int SPACE_KEY_COUNT = 4;
+    private static final int CODE_SPACE = ' ';
+    private static final int NOT_A_CODE = -1;
+
+    public static final int KEY_WIDTH = 108;
+    public static final int KEY_HEIGHT = 160;
+    public static final int WIDTH = KEY_WIDTH * 10;
+    public static final int HEIGHT = KEY_HEIGHT * 4;
+    // Same as the grid size the app uses for its keyboards.
+    private static final int GRID_WIDTH = 32;
+    private static final int GRID_HEIGHT = 16;
+    // Same as ProximityInfo.SEARCH_DISTANCE.
+    private static final float SEARCH_DISTANCE = 1.2f;
+
+    private final int[] mKeyX;
+    private final int[] mKeyY;
+    private final int[] mKeyWidth;
+    private final int[] mKeyHeight;
+    private final int[] mKeyCode;
+
+    public SyntheticKeyboard() {
+        int keyCount = 1 /* space */;
+        for (final String row : LETTER_ROWS) {
+            keyCount += row.length();
+        }
+        mKeyX = new int[keyCount];
+        mKeyY = new int[keyCount];
+        mKeyWidth = new int[keyCount];
+        mKeyHeight = new int[keyCount];
+        mKeyCode = new int[keyCount];
+        int key = 0;
+        for (int row = 0; row < LETTER_ROWS.length; row++) {
+            for (int column = 0; column < LETTER_ROWS[row].length(); column++) {
+                setKey(key++, (int) ((LETTER_ROW_OFFSETS[row] + column) * KEY_WIDTH),
+                        row * KEY_HEIGHT, KEY_WIDTH, LETTER_ROWS[row].charAt(column));
+            }
+        }
+        setKey(key, SPACE_KEY_START * KEY_WIDTH, LETTER_ROWS.length * KEY_HEIGHT,
+                SPACE_KEY_COUNT * KEY_WIDTH, CODE_SPACE);
+    }
+
+    private void setKey(final int key, final int x, final int y, final int width,
+            final int code) {
+        mKeyX[key] = x;
+        mKeyY[key] = y;
+        mKeyWidth[key] = width;
+        mKeyHeight[key] = KEY_HEIGHT;
+        mKeyCode[key] = code;
+    }
+
+    private int squaredDistanceToEdge(final int key, final int x, final int y) {
+        final int left = mKeyX[key];
+        final int right = left + mKeyWidth[key];
+        final int top = mKeyY[key];
+        final int bottom = top + mKeyHeight[key];
+        final int edgeX = x < left ? left : Math.min(x, right);
+        final int edgeY = y < top ? top : Math.min(y, bottom);
+        final int dx = x - edgeX;
+        final int dy = y - edgeY;
+        return dx * dx + dy * dy;
+    }
+
+    private int findKey(final int code) {
+        for (int key = 0; key < mKeyCode.length; key++) {
+            if (mKeyCode[key] == code) return key;
+        }
+        return -1;
+    }
+
+    public boolean canType(final String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (findKey(word.charAt(i)) < 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the code of the key a touch at (x, y) lands on: the key containing it, or else the
+     * closest one, as the key detector would report.
+     */
+    public int getCodeAt(final int x, final int y) {
+        int nearestKey = 0;
+        int nearestDistance = Integer.MAX_VALUE;
+        for (int key = 0; key < mKeyCode.length; key++) {
+            final int distance = squaredDistanceToEdge(key, x, y);
+            if (distance < nearestDistance) {
+                nearestDistance = distance;
+                nearestKey = key;
+            }
+        }
+        return mKeyCode[nearestKey];
+    }
+
+    /**
+     * Writes a touch for each letter of the word into the coordinate arrays, aiming at the key
+     * center with a gaussian error of standard deviation noise times the key size.
+     */
+    public void touch(final String word, final float noise, final Random random,
+            final int[] outX, final int[] outY) {
+        for (int i = 0; i < word.length(); i++) {
+            final int key = findKey(word.charAt(i));
+            final double x = mKeyX[key] + mKeyWidth[key] / 2.0
+                    + random.nextGaussian() * noise * KEY_WIDTH;
+            final double y = mKeyY[key] + mKeyHeight[key] / 2.0
+                    + random.nextGaussian() * noise * KEY_HEIGHT;
+            outX[i] = (int) Math.max(0, Math.min(WIDTH - 1, x));
+            outY[i] = (int) Math.max(0, Math.min(HEIGHT - 1, y));
+        }
+    }
+
+    public long createNativeProximityInfo() {
+        final int cellWidth = (WIDTH + GRID_WIDTH - 1) / GRID_WIDTH;
+        final int cellHeight = (HEIGHT + GRID_HEIGHT - 1) / GRID_HEIGHT;
+        final int threshold = (int) (KEY_WIDTH * SEARCH_DISTANCE);
+        final int thresholdSquared = threshold * threshold;
+        final int maxChars = ProximityInfo.MAX_PROXIMITY_CHARS_SIZE;
+        final int[] proximityChars = new int[GRID_WIDTH * GRID_HEIGHT * maxChars];
+        Arrays.fill(proximityChars, NOT_A_CODE);
+        for (int cell = 0; cell < GRID_WIDTH * GRID_HEIGHT; cell++) {
+            final int centerX = (cell % GRID_WIDTH) * cellWidth + cellWidth / 2;
+            final int centerY = (cell / GRID_WIDTH) * cellHeight + cellHeight / 2;
+            int index = cell * maxChars;
+            for (int key = 0; key < mKeyCode.length && index < (cell + 1) * maxChars; key++) {
+                if (squaredDistanceToEdge(key, centerX, centerY) < thresholdSquared) {
+                    proximityChars[index++] = mKeyCode[key];
+                }
+            }
+        }
+        return ProximityInfo.setProximityInfoNative(WIDTH, HEIGHT, GRID_WIDTH, GRID_HEIGHT,
+                KEY_WIDTH, KEY_HEIGHT, proximityChars, mKeyCode.length, mKeyX, mKeyY, mKeyWidth,
+                mKeyHeight, mKeyCode, null /* sweetSpotCenterXs */, null /* sweetSpotCenterYs */,
+                null /* sweetSpotRadii */);
+    }
+}
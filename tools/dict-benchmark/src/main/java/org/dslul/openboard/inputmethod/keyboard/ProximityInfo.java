@@ -0,0 +1,21 @@
+package org.dslul.openboard.inputmethod.keyboard;
+
+/**
+ * Host stand-in for the app class of the same name, declaring the natives that
+ * org_dslul_openboard_inputmethod_keyboard_ProximityInfo.cpp registers on it.
+ */
+public final class ProximityInfo {
+    // Must be equal to MAX_PROXIMITY_CHARS_SIZE in native/jni/src/defines.h
+    public static final int MAX_PROXIMITY_CHARS_SIZE = 16;
+
+    private ProximityInfo() {
+        // Only the natives are used.
+    }
+
+    public static native long setProximityInfoNative(int displayWidth, int displayHeight,
+            int gridWidth, int gridHeight, int mostCommonKeyWidth, int mostCommonKeyHeight,
+            int[] proximityCharsArray, int keyCount, int[] keyXCoordinates, int[] keyYCoordinates,
+            int[] keyWidths, int[] keyHeights, int[] keyCharCodes, float[] sweetSpotCenterXs,
+            float[] sweetSpotCenterYs, float[] sweetSpotRadii);
+    public static native void releaseProximityInfoNative(long nativeProximityInfo);
+}
@@ -0,0 +1,76 @@
+package org.dslul.openboard.inputmethod.latin;
+
+import org.dslul.openboard.inputmethod.latin.utils.WordInputEventForPersonalization;
+
+import java.util.ArrayList;
+
+/**
+ * Host stand-in for the app class of the same name. JNI_OnLoad registers the natives of
+ * org_dslul_openboard_inputmethod_latin_BinaryDictionary.cpp on this class name, so every
+ * method of that table must be declared here with the same signature, even the unused ones.
+ */
+public final class BinaryDictionary {
+    // Must be equal to MAX_RESULTS in native/jni/src/defines.h
+    public static final int MAX_RESULTS = 18;
+    // Must be equal to MAX_WORD_LENGTH in native/jni/src/defines.h
+    public static final int DICTIONARY_MAX_WORD_LENGTH = 48;
+    // Must be equal to MAX_PREV_WORD_COUNT_FOR_N_GRAM in native/jni/src/defines.h
+    public static final int MAX_PREV_WORD_COUNT_FOR_N_GRAM = 3;
+    public static final int NOT_A_PROBABILITY = -1;
+    public static final float NOT_A_WEIGHT_OF_LANG_MODEL_VS_SPATIAL_MODEL = -1.0f;
+
+    private BinaryDictionary() {
+        // Only the natives are used.
+    }
+
+    public static native long openNative(String sourceDir, long dictOffset, long dictSize,
+            boolean isUpdatable);
+    public static native long createOnMemoryNative(long formatVersion,
+            String locale, String[] attributeKeyStringArray, String[] attributeValueStringArray);
+    public static native void getHeaderInfoNative(long dict, int[] outHeaderSize,
+            int[] outFormatVersion, ArrayList<int[]> outAttributeKeys,
+            ArrayList<int[]> outAttributeValues);
+    public static native boolean flushNative(long dict, String filePath);
+    public static native boolean needsToRunGCNative(long dict, boolean mindsBlockByGC);
+    public static native boolean flushWithGCNative(long dict, String filePath);
+    public static native void closeNative(long dict);
+    public static native int getFormatVersionNative(long dict);
+    public static native int getProbabilityNative(long dict, int[] word);
+    public static native int getMaxProbabilityOfExactMatchesNative(long dict, int[] word);
+    public static native int getNgramProbabilityNative(long dict, int[][] prevWordCodePointArrays,
+            boolean[] isBeginningOfSentenceArray, int[] word);
+    public static native void getWordPropertyNative(long dict, int[] word,
+            boolean isBeginningOfSentence, int[] outCodePoints, boolean[] outFlags,
+            int[] outProbabilityInfo, ArrayList<int[][]> outNgramPrevWordsArray,
+            ArrayList<boolean[]> outNgramPrevWordIsBeginningOfSentenceArray,
+            ArrayList<int[]> outNgramTargets, ArrayList<int[]> outNgramProbabilityInfo,
+            ArrayList<int[]> outShortcutTargets, ArrayList<Integer> outShortcutProbabilities);
+    public static native int getNextWordNative(long dict, int token, int[] outCodePoints,
+            boolean[] outIsBeginningOfSentence);
+    public static native void getSuggestionsNative(long dict, long proximityInfo,
+            long traverseSession, int[] xCoordinates, int[] yCoordinates, int[] times,
+            int[] pointerIds, int[] inputCodePoints, int inputSize, int[] suggestOptions,
+            int[][] prevWordCodePointArrays, boolean[] isBeginningOfSentenceArray,
+            int prevWordCount, int[] outputSuggestionCount, int[] outputCodePoints,
+            int[] outputScores, int[] outputIndices, int[] outputTypes,
+            int[] outputAutoCommitFirstWordConfidence,
+            float[] inOutWeightOfLangModelVsSpatialModel);
+    public static native boolean addUnigramEntryNative(long dict, int[] word, int probability,
+            int[] shortcutTarget, int shortcutProbability, boolean isBeginningOfSentence,
+            boolean isNotAWord, boolean isPossiblyOffensive, int timestamp);
+    public static native boolean removeUnigramEntryNative(long dict, int[] word);
+    public static native boolean addNgramEntryNative(long dict,
+            int[][] prevWordCodePointArrays, boolean[] isBeginningOfSentenceArray,
+            int[] word, int probability, int timestamp);
+    public static native boolean removeNgramEntryNative(long dict,
+            int[][] prevWordCodePointArrays, boolean[] isBeginningOfSentenceArray, int[] word);
+    public static native boolean updateEntriesForWordWithNgramContextNative(long dict,
+            int[][] prevWordCodePointArrays, boolean[] isBeginningOfSentenceArray,
+            int[] word, boolean isValidWord, int count, int timestamp);
+    public static native int updateEntriesForInputEventsNative(long dict,
+            WordInputEventForPersonalization[] inputEvents, int startIndex);
+    public static native String getPropertyNative(long dict, String query);
+    public static native boolean isCorruptedNative(long dict);
+    public static native boolean migrateNative(long dict, String dictFilePath,
+            long newFormatVersion);
+}
@@ -0,0 +1,16 @@
+package org.dslul.openboard.inputmethod.latin;
+
+/**
+ * Host stand-in for the app class of the same name, declaring the natives that
+ * org_dslul_openboard_inputmethod_latin_DicTraverseSession.cpp registers on it.
+ */
+public final class DicTraverseSession {
+    private DicTraverseSession() {
+        // Only the natives are used.
+    }
+
+    public static native long setDicTraverseSessionNative(String locale, long dictSize);
+    public static native void initDicTraverseSessionNative(long nativeDicTraverseSession,
+            long dictionary, int[] previousWord, int previousWordLength);
+    public static native void releaseDicTraverseSessionNative(long nativeDicTraverseSession);
+}
@@ -0,0 +1,16 @@
+package org.dslul.openboard.inputmethod.latin.utils;
+
+/**
+ * Host stand-in for the app class of the same name, declaring the natives that
+ * org_dslul_openboard_inputmethod_latin_BinaryDictionaryUtils.cpp registers on it.
+ */
+public final class BinaryDictionaryUtils {
+    private BinaryDictionaryUtils() {
+        // Only the natives are used.
+    }
+
+    public static native boolean createEmptyDictFileNative(String filePath, long dictVersion,
+            String locale, String[] attributeKeyStringArray, String[] attributeValueStringArray);
+    public static native float calcNormalizedScoreNative(int[] before, int[] after, int score);
+    public static native int setCurrentTimeForTestNative(int currentTime);
+}
@@ -0,0 +1,10 @@
+package org.dslul.openboard.inputmethod.latin.utils;
+
+/**
+ * Host stand-in for the app class of the same name. It only needs to exist for the signature of
+ * BinaryDictionary.updateEntriesForInputEventsNative to resolve; the benchmark never calls it.
+ */
+public final class WordInputEventForPersonalization {
+    private WordInputEventForPersonalization() {
+    }
+}
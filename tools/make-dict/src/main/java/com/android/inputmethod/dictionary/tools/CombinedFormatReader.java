@@ -0,0 +1,139 @@
+package com.android.inputmethod.dictionary.tools;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streams a word list in the combined format (see dictionaries/sample.combined) into a
+ * {@link WordList}. Files ending in ".gz" are decompressed on the fly.
+ *
+ * The first non-comment line holds the header attributes. Each word line is indented by one
+ * space, and its shortcut and bigram lines by two spaces. All lines are comma separated
+ * key=value pairs.
+ */
+final class CombinedFormatReader {
+    private static final String GZIP_SUFFIX = ".gz";
+    private static final String COMMENT_PREFIX = "#";
+    private static final String ATTRIBUTE_SEPARATOR = ",";
+    private static final char KEY_VALUE_SEPARATOR = '=';
+
+    private static final String WORD_TAG = "word";
+    private static final String SHORTCUT_TAG = "shortcut";
+    private static final String BIGRAM_TAG = "bigram";
+    private static final String PROBABILITY_TAG = "f";
+    private static final String NOT_A_WORD_TAG = "not_a_word";
+    private static final String POSSIBLY_OFFENSIVE_TAG = "possibly_offensive";
+    private static final String TRUE_VALUE = "true";
+    private static final String WHITELIST_VALUE = "whitelist";
+
+    // Mirror FormatSpec.MAX_TERMINAL_FREQUENCY, MAX_BIGRAM_FREQUENCY and
+    // SHORTCUT_WHITELIST_FREQUENCY.
+    private static final int MAX_PROBABILITY = 255;
+    private static final int MAX_SHORTCUT_PROBABILITY = 14;
+    private static final int WHITELIST_SHORTCUT_PROBABILITY = 15;
+
+    private CombinedFormatReader() {
+        // This utility class is not publicly instantiable.
+    }
+
+    public static WordList read(final String path) throws IOException {
+        InputStream in = new FileInputStream(path);
+        try {
+            if (path.endsWith(GZIP_SUFFIX)) {
+                in = new GZIPInputStream(in, 1 << 16);
+            }
+            return read(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8),
+                    1 << 16));
+        } finally {
+            in.close();
+        }
+    }
+
+    private static WordList read(final BufferedReader reader) throws IOException {
+        final WordList wordList = new WordList();
+        boolean hasReadHeader = false;
+        int lineNumber = 0;
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            lineNumber++;
+            final String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith(COMMENT_PREFIX)) continue;
+            final String[] attributes = trimmed.split(ATTRIBUTE_SEPARATOR);
+            if (!hasReadHeader) {
+                for (final String attribute : attributes) {
+                    wordList.setHeaderAttribute(getKey(attribute), getValue(attribute));
+                }
+                hasReadHeader = true;
+                continue;
+            }
+            final String tag = getKey(attributes[0]);
+            final String value = getValue(attributes[0]);
+            try {
+                if (WORD_TAG.equals(tag)) {
+                    readWord(wordList, value, attributes);
+                } else if (SHORTCUT_TAG.equals(tag)) {
+                    final String probability = findAttribute(attributes, PROBABILITY_TAG);
+                    wordList.addShortcut(value, WHITELIST_VALUE.equals(probability)
+                            ? WHITELIST_SHORTCUT_PROBABILITY
+                            : clamp(Integer.parseInt(probability), MAX_SHORTCUT_PROBABILITY));
+                } else if (BIGRAM_TAG.equals(tag)) {
+                    wordList.addBigram(value, clamp(Integer.parseInt(
+                            findAttribute(attributes, PROBABILITY_TAG)), MAX_PROBABILITY));
+                } else {
+                    throw new IOException("Unknown entry \"" + tag + "\"");
+                }
+            } catch (final NumberFormatException e) {
+                throw new IOException("Line " + lineNumber + ": missing or invalid "
+                        + PROBABILITY_TAG + " in \"" + trimmed + "\"", e);
+            }
+        }
+        if (!hasReadHeader) {
+            throw new IOException("No header line found");
+        }
+        return wordList;
+    }
+
+    private static void readWord(final WordList wordList, final String word,
+            final String[] attributes) {
+        final int probability = clamp(
+                Integer.parseInt(findAttribute(attributes, PROBABILITY_TAG)), MAX_PROBABILITY);
+        int flags = 0;
+        if (TRUE_VALUE.equals(findAttribute(attributes, NOT_A_WORD_TAG))) {
+            flags |= WordList.FLAG_NOT_A_WORD;
+        }
+        if (TRUE_VALUE.equals(findAttribute(attributes, POSSIBLY_OFFENSIVE_TAG))) {
+            flags |= WordList.FLAG_POSSIBLY_OFFENSIVE;
+        }
+        if (!wordList.addWord(word, probability, flags)) {
+            System.err.println("Skipping word that is empty or longer than "
+                    + WordList.MAX_WORD_LENGTH + " code points: " + word);
+        }
+    }
+
+    private static int clamp(final int value, final int max) {
+        return Math.max(0, Math.min(value, max));
+    }
+
+    private static String findAttribute(final String[] attributes, final String key) {
+        for (int i = 1; i < attributes.length; i++) {
+            if (key.equals(getKey(attributes[i]))) {
+                return getValue(attributes[i]);
+            }
+        }
+        return null;
+    }
+
+    private static String getKey(final String attribute) {
+        final int separator = attribute.indexOf(KEY_VALUE_SEPARATOR);
+        return separator < 0 ? attribute : attribute.substring(0, separator);
+    }
+
+    private static String getValue(final String attribute) {
+        final int separator = attribute.indexOf(KEY_VALUE_SEPARATOR);
+        return separator < 0 ? "" : attribute.substring(separator + 1);
+    }
+}
@@ -0,0 +1,43 @@
+package com.android.inputmethod.dictionary.tools;
+
+import java.util.Arrays;
+
+/**
+ * Growable array of primitive ints, so that large word lists don't box every value.
+ */
+final class IntList {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] mArray = new int[INITIAL_CAPACITY];
+    private int mSize;
+
+    public int size() {
+        return mSize;
+    }
+
+    public int get(final int index) {
+        if (index >= mSize) {
+            throw new ArrayIndexOutOfBoundsException("index=" + index + " size=" + mSize);
+        }
+        return mArray[index];
+    }
+
+    public void set(final int index, final int value) {
+        if (index >= mSize) {
+            throw new ArrayIndexOutOfBoundsException("index=" + index + " size=" + mSize);
+        }
+        mArray[index] = value;
+    }
+
+    public int add(final int value) {
+        if (mSize == mArray.length) {
+            mArray = Arrays.copyOf(mArray, mArray.length * 2);
+        }
+        mArray[mSize] = value;
+        return mSize++;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(mArray, mSize);
+    }
+}
@@ -0,0 +1,149 @@
+package com.android.inputmethod.dictionary.tools;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compiles a word list in the combined format into a binary dictionary that can be shipped in
+ * res/raw, and reports how long it took and how much heap it needed.
+ *
+ * The not-a-word and possibly-offensive flags are written exactly as the word list gives them.
+ * The shipped main_en.dict lacks the not-a-word flag that en_wordlist sets on "i", so
+ * recompiling it differs in that byte as well as in the header attribute order.
+ */
+public class MakeDict {
+    private static final int VERSION2 = 2;
+    private static final int VERSION202 = 202;
+    private static final int VERSION402 = 402;
+    private static final int VERSION403 = 403;
+    private static final long BYTES_PER_MB = 1024 * 1024;
+
+    static class Options {
+        private static final String OPTION_INPUT = "-input";
+        private static final String OPTION_OUTPUT = "-output";
+        private static final String OPTION_VERSION = "-version";
+        private static final String OPTION_THREADS = "-threads";
+
+        public final String mInput;
+        public final String mOutput;
+        public final int mThreads;
+
+        public static void usage(String message) {
+            if (message != null) {
+                System.err.println(message);
+            }
+            System.err.println("usage: make-dict " + OPTION_INPUT + " <word_list.combined[.gz]> "
+                    + OPTION_OUTPUT + " <main.dict> [" + OPTION_VERSION + " 202] ["
+                    + OPTION_THREADS + " <count>]");
+            System.exit(1);
+        }
+
+        public Options(final String[] argsArray) {
+            final LinkedList<String> args = new LinkedList<>(Arrays.asList(argsArray));
+            String arg = null;
+            String input = null;
+            String output = null;
+            int version = VERSION202;
+            int threads = Runtime.getRuntime().availableProcessors();
+            try {
+                while (!args.isEmpty()) {
+                    arg = args.removeFirst();
+                    if (arg.equals(OPTION_INPUT)) {
+                        input = args.removeFirst();
+                    } else if (arg.equals(OPTION_OUTPUT)) {
+                        output = args.removeFirst();
+                    } else if (arg.equals(OPTION_VERSION)) {
+                        version = Integer.parseInt(args.removeFirst());
+                    } else if (arg.equals(OPTION_THREADS)) {
+                        threads = Integer.parseInt(args.removeFirst());
+                    } else {
+                        usage("Unknown option: " + arg);
+                    }
+                }
+            } catch (NoSuchElementException e) {
+                usage("Option " + arg + " needs argument");
+            } catch (NumberFormatException e) {
+                usage("Option " + arg + " needs a number");
+            }
+            if (input == null || output == null) {
+                usage("Both " + OPTION_INPUT + " and " + OPTION_OUTPUT + " are required");
+            }
+            if (version == VERSION402 || version == VERSION403) {
+                // Version 4 dictionaries are directories of separate files that only the native
+                // engine creates and updates, for user history and personal dictionaries.
+                usage("Version " + version + " dictionaries are created on the device by the"
+                        + " native engine and cannot be shipped as a main dictionary");
+            } else if (version != VERSION2 && version != VERSION202) {
+                usage("Unsupported format version: " + version);
+            }
+            if (threads < 1) {
+                usage("Option " + OPTION_THREADS + " needs a positive count");
+            }
+
+            mInput = input;
+            mOutput = output;
+            mThreads = threads;
+        }
+    }
+
+    private static long getPeakHeapUsage() {
+        long peak = 0;
+        for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final Options options = new Options(args);
+        final long startTime = System.nanoTime();
+        final WordList wordList = CombinedFormatReader.read(options.mInput);
+        wordList.prepare();
+        final long readTime = System.nanoTime();
+        final PatriciaTrie trie = new PatriciaTrie(wordList);
+        final long buildTime = System.nanoTime();
+        final ForkJoinPool pool = new ForkJoinPool(options.mThreads);
+        final Ver2DictEncoder encoder = new Ver2DictEncoder(trie, pool);
+        final byte[] dictionary;
+        try {
+            dictionary = encoder.encode();
+        } finally {
+            pool.shutdown();
+        }
+        final long encodeTime = System.nanoTime();
+        Ver2DictEncoder.writeToFile(dictionary, options.mOutput);
+        final long endTime = System.nanoTime();
+
+        if (wordList.getSkippedWordCount() > 0) {
+            System.err.println("Skipped " + wordList.getSkippedWordCount() + " invalid words");
+        }
+        if (wordList.getDuplicateWordCount() > 0) {
+            System.err.println("Merged " + wordList.getDuplicateWordCount() + " duplicate words");
+        }
+        if (wordList.getUnknownBigramTargetCount() > 0) {
+            System.err.println("Dropped " + wordList.getUnknownBigramTargetCount()
+                    + " bigrams to words missing from the list");
+        }
+        System.out.println(options.mOutput + ": " + wordList.getSortedWordIds().length
+                + " words, " + trie.getNodeCount() + " PtNodes in "
+                + encoder.getPtNodeArrayCount() + " arrays, " + dictionary.length + " bytes");
+        System.out.println("read " + toMillis(readTime - startTime) + " ms, trie "
+                + toMillis(buildTime - readTime) + " ms, encode " + toMillis(encodeTime - buildTime)
+                + " ms (" + encoder.getLayoutIterationCount() + " layout passes, "
+                + options.mThreads + " threads), write " + toMillis(endTime - encodeTime)
+                + " ms, total " + toMillis(endTime - startTime) + " ms, peak heap "
+                + getPeakHeapUsage() / BYTES_PER_MB + " MB");
+    }
+
+    private static long toMillis(final long nanos) {
+        return nanos / 1000000;
+    }
+}
@@ -0,0 +1,148 @@
+package com.android.inputmethod.dictionary.tools;
+
+import java.util.Arrays;
+
+/**
+ * Patricia trie over a prepared {@link WordList}, stored in parallel primitive arrays indexed by
+ * PtNode id. Siblings get consecutive ids so that each PtNode array is the id range
+ * [getFirstChild(parent), getFirstChild(parent) + getChildCount(parent)). The root PtNode array
+ * starts at id 0.
+ *
+ * The trie is built from the sorted words in a single pass: the words sharing a prefix form a
+ * contiguous range, so the characters of a PtNode are the common prefix of the first and the
+ * last word of its range, and the first word of the range is the only one that can end there.
+ */
+final class PatriciaTrie {
+    // Mirrors FormatSpec.MAX_PTNODES_IN_A_PT_NODE_ARRAY.
+    private static final int MAX_PTNODES_IN_A_PT_NODE_ARRAY = 0x7FFF;
+    public static final int NOT_A_PTNODE_ID = -1;
+
+    private final WordList mWordList;
+    private final int[] mSortedWordIds;
+
+    // The characters of a PtNode are those of the word mNodeWord in [mNodeDepth, mNodeEnd).
+    private final IntList mNodeWord = new IntList();
+    private final IntList mNodeDepth = new IntList();
+    private final IntList mNodeEnd = new IntList();
+    private final IntList mNodeTerminalWord = new IntList();
+    private final IntList mNodeFirstChild = new IntList();
+    private final IntList mNodeChildCount = new IntList();
+    // Range of sorted words below each PtNode, only needed while building.
+    private final IntList mNodeRangeStart = new IntList();
+    private final IntList mNodeRangeEnd = new IntList();
+    private final int mRootChildCount;
+    private final int[] mWordTerminalNode;
+
+    public PatriciaTrie(final WordList wordList) {
+        mWordList = wordList;
+        mSortedWordIds = wordList.getSortedWordIds();
+        mRootChildCount = buildPtNodeArray(0, mSortedWordIds.length, 0);
+        mWordTerminalNode = new int[wordList.getWordCount()];
+        Arrays.fill(mWordTerminalNode, NOT_A_PTNODE_ID);
+        for (int nodeId = 0; nodeId < getNodeCount(); nodeId++) {
+            final int wordId = mNodeTerminalWord.get(nodeId);
+            if (WordList.NOT_A_WORD_ID != wordId) {
+                mWordTerminalNode[wordId] = nodeId;
+            }
+        }
+    }
+
+    private int getCodePointOfSortedWord(final int index, final int depth) {
+        return mWordList.getCodePoint(mSortedWordIds[index], depth);
+    }
+
+    /**
+     * Creates the PtNode array for the sorted words in [start, end), which share their first
+     * depth code points and are all longer than that. Returns the number of PtNodes created,
+     * the first of which has the id that was the node count when this method was called.
+     */
+    private int buildPtNodeArray(final int start, final int end, final int depth) {
+        final int firstNodeId = getNodeCount();
+        // Allocate all siblings before any child so that the array is contiguous.
+        for (int groupStart = start; groupStart < end; ) {
+            final int codePoint = getCodePointOfSortedWord(groupStart, depth);
+            int groupEnd = groupStart + 1;
+            while (groupEnd < end && getCodePointOfSortedWord(groupEnd, depth) == codePoint) {
+                groupEnd++;
+            }
+            mNodeRangeStart.add(groupStart);
+            mNodeRangeEnd.add(groupEnd);
+            mNodeWord.add(mSortedWordIds[groupStart]);
+            mNodeDepth.add(depth);
+            mNodeEnd.add(depth);
+            mNodeTerminalWord.add(WordList.NOT_A_WORD_ID);
+            mNodeFirstChild.add(NOT_A_PTNODE_ID);
+            mNodeChildCount.add(0);
+            groupStart = groupEnd;
+        }
+        final int childCount = getNodeCount() - firstNodeId;
+        if (childCount > MAX_PTNODES_IN_A_PT_NODE_ARRAY) {
+            throw new IllegalStateException("Too many PtNodes in one array: " + childCount);
+        }
+        for (int nodeId = firstNodeId; nodeId < firstNodeId + childCount; nodeId++) {
+            final int rangeStart = mNodeRangeStart.get(nodeId);
+            final int rangeEnd = mNodeRangeEnd.get(nodeId);
+            final int firstWord = mSortedWordIds[rangeStart];
+            final int lastWord = mSortedWordIds[rangeEnd - 1];
+            final int firstWordLength = mWordList.getLength(firstWord);
+            int nodeEnd = depth + 1;
+            while (nodeEnd < firstWordLength && mWordList.getCodePoint(firstWord, nodeEnd)
+                    == mWordList.getCodePoint(lastWord, nodeEnd)) {
+                nodeEnd++;
+            }
+            mNodeEnd.set(nodeId, nodeEnd);
+            int childrenStart = rangeStart;
+            if (nodeEnd == firstWordLength) {
+                mNodeTerminalWord.set(nodeId, firstWord);
+                childrenStart++;
+            }
+            if (childrenStart < rangeEnd) {
+                mNodeFirstChild.set(nodeId, getNodeCount());
+                mNodeChildCount.set(nodeId, buildPtNodeArray(childrenStart, rangeEnd, nodeEnd));
+            }
+        }
+        return childCount;
+    }
+
+    public WordList getWordList() {
+        return mWordList;
+    }
+
+    public int getNodeCount() {
+        return mNodeWord.size();
+    }
+
+    public int getRootChildCount() {
+        return mRootChildCount;
+    }
+
+    public int getCharCount(final int nodeId) {
+        return mNodeEnd.get(nodeId) - mNodeDepth.get(nodeId);
+    }
+
+    public int getCodePoint(final int nodeId, final int index) {
+        return mWordList.getCodePoint(mNodeWord.get(nodeId), mNodeDepth.get(nodeId) + index);
+    }
+
+    /**
+     * Returns the id of the word ending at this PtNode, or WordList.NOT_A_WORD_ID.
+     */
+    public int getTerminalWord(final int nodeId) {
+        return mNodeTerminalWord.get(nodeId);
+    }
+
+    public int getFirstChild(final int nodeId) {
+        return mNodeFirstChild.get(nodeId);
+    }
+
+    public int getChildCount(final int nodeId) {
+        return mNodeChildCount.get(nodeId);
+    }
+
+    /**
+     * Returns the PtNode where the word ends, or NOT_A_PTNODE_ID if it was dropped as a duplicate.
+     */
+    public int getTerminalNode(final int wordId) {
+        return mWordTerminalNode[wordId];
+    }
+}
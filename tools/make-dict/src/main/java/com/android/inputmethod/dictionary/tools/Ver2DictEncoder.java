@@ -0,0 +1,471 @@
+package com.android.inputmethod.dictionary.tools;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Writes a {@link PatriciaTrie} as a static version 2 (202) dictionary, the format of the main
+ * dictionaries in res/raw. See FormatSpec for the layout.
+ *
+ * PtNode arrays are laid out depth-first so that children always follow their parent, as the
+ * reader expects unsigned children offsets. Address fields are as short as the offsets they hold,
+ * which depend on the sizes of the PtNodes in between: the layout starts with the largest
+ * addresses and shrinks them until the positions stop moving. Since sizes never grow, this
+ * terminates. PtNode sizes and the final bytes are computed in parallel, with one sequential pass
+ * per iteration to assign positions.
+ */
+final class Ver2DictEncoder {
+    // These must stay in sync with FormatSpec.
+    private static final int MAGIC_NUMBER = 0x9BC13AFE;
+    private static final int VERSION202 = 202;
+    private static final int NO_OPTIONS_FLAGS = 0;
+    private static final int HEADER_FIXED_SIZE = 4 + 2 + 2 + 4;
+
+    private static final int FLAG_CHILDREN_ADDRESS_TYPE_ONEBYTE = 0x40;
+    private static final int FLAG_CHILDREN_ADDRESS_TYPE_TWOBYTES = 0x80;
+    private static final int FLAG_CHILDREN_ADDRESS_TYPE_THREEBYTES = 0xC0;
+    private static final int FLAG_HAS_MULTIPLE_CHARS = 0x20;
+    private static final int FLAG_IS_TERMINAL = 0x10;
+    private static final int FLAG_HAS_SHORTCUT_TARGETS = 0x08;
+    private static final int FLAG_HAS_BIGRAMS = 0x04;
+    private static final int FLAG_IS_NOT_A_WORD = 0x02;
+    private static final int FLAG_IS_POSSIBLY_OFFENSIVE = 0x01;
+
+    private static final int FLAG_BIGRAM_SHORTCUT_ATTR_HAS_NEXT = 0x80;
+    private static final int FLAG_BIGRAM_ATTR_OFFSET_NEGATIVE = 0x40;
+    private static final int FLAG_BIGRAM_ATTR_ADDRESS_TYPE_ONEBYTE = 0x10;
+    private static final int FLAG_BIGRAM_ATTR_ADDRESS_TYPE_TWOBYTES = 0x20;
+    private static final int FLAG_BIGRAM_ATTR_ADDRESS_TYPE_THREEBYTES = 0x30;
+    private static final int FLAG_BIGRAM_SHORTCUT_ATTR_FREQUENCY = 0x0F;
+
+    private static final int PTNODE_CHARACTERS_TERMINATOR = 0x1F;
+    private static final int PTNODE_SHORTCUT_LIST_SIZE_SIZE = 2;
+    private static final int PTNODE_MAX_ADDRESS_SIZE = 3;
+    private static final int MAX_PTNODES_FOR_ONE_BYTE_PTNODE_COUNT = 0x7F;
+    private static final int LARGE_PTNODE_ARRAY_SIZE_FIELD_SIZE_FLAG = 0x8000;
+    private static final int MAX_SHORTCUT_LIST_SIZE_IN_A_PTNODE = 0xFFFF;
+    private static final int MAX_TERMINAL_FREQUENCY = 255;
+    private static final int MAX_BIGRAM_FREQUENCY = 15;
+    private static final int UINT8_MAX = 0xFF;
+    private static final int UINT16_MAX = 0xFFFF;
+    private static final int UINT24_MAX = 0xFFFFFF;
+    private static final int MINIMAL_ONE_BYTE_CHARACTER_VALUE = 0x20;
+    private static final int MAXIMAL_ONE_BYTE_CHARACTER_VALUE = 0xFF;
+
+    private final PatriciaTrie mTrie;
+    private final WordList mWordList;
+    private final ForkJoinPool mPool;
+    // First PtNode id and PtNode count of each PtNode array, in file order.
+    private final int[] mArrayFirstNode;
+    private final int[] mArrayNodeCount;
+    private final int[] mNodeStaticSize;
+    private final int[] mNodeSize;
+    private final int[] mNodePos;
+    private int mTrieSize;
+    private int mLayoutIterationCount;
+
+    public Ver2DictEncoder(final PatriciaTrie trie, final ForkJoinPool pool) {
+        mTrie = trie;
+        mWordList = trie.getWordList();
+        mPool = pool;
+        final int nodeCount = trie.getNodeCount();
+        mNodeStaticSize = new int[nodeCount];
+        mNodeSize = new int[nodeCount];
+        mNodePos = new int[nodeCount];
+        final IntList arrayFirstNode = new IntList();
+        final IntList arrayNodeCount = new IntList();
+        // The root PtNode array is written even when empty, for the reader to find no words.
+        arrayFirstNode.add(0);
+        arrayNodeCount.add(trie.getRootChildCount());
+        final IntList stack = new IntList();
+        int stackSize = pushChildArrays(stack, 0, 0, trie.getRootChildCount());
+        while (stackSize > 0) {
+            final int count = stack.get(--stackSize);
+            final int first = stack.get(--stackSize);
+            arrayFirstNode.add(first);
+            arrayNodeCount.add(count);
+            stackSize = pushChildArrays(stack, stackSize, first, count);
+        }
+        mArrayFirstNode = arrayFirstNode.toArray();
+        mArrayNodeCount = arrayNodeCount.toArray();
+    }
+
+    /**
+     * Pushes the child arrays of the PtNodes in [first, first + count) in reverse, so that the
+     * children of the first PtNode are popped and written next. Returns the new stack size.
+     */
+    private int pushChildArrays(final IntList stack, int stackSize, final int first,
+            final int count) {
+        for (int nodeId = first + count - 1; nodeId >= first; nodeId--) {
+            if (mTrie.getChildCount(nodeId) == 0) continue;
+            stackSize = push(stack, stackSize, mTrie.getFirstChild(nodeId));
+            stackSize = push(stack, stackSize, mTrie.getChildCount(nodeId));
+        }
+        return stackSize;
+    }
+
+    private static int push(final IntList stack, final int stackSize, final int value) {
+        if (stackSize < stack.size()) {
+            stack.set(stackSize, value);
+        } else {
+            stack.add(value);
+        }
+        return stackSize + 1;
+    }
+
+    private void parallelFor(final int count, final IntConsumer action) {
+        try {
+            mPool.submit(() -> IntStream.range(0, count).parallel().forEach(action)).get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static int getCharSize(final int codePoint) {
+        return codePoint >= MINIMAL_ONE_BYTE_CHARACTER_VALUE
+                && codePoint <= MAXIMAL_ONE_BYTE_CHARACTER_VALUE ? 1 : 3;
+    }
+
+    private static int getPtNodeCountSize(final int count) {
+        return count > MAX_PTNODES_FOR_ONE_BYTE_PTNODE_COUNT ? 2 : 1;
+    }
+
+    private static int getOffsetSize(final int offset) {
+        final int magnitude = Math.abs(offset);
+        if (magnitude <= UINT8_MAX) return 1;
+        if (magnitude <= UINT16_MAX) return 2;
+        if (magnitude <= UINT24_MAX) return 3;
+        throw new IllegalStateException("Offset too large for a version 2 dictionary: " + offset);
+    }
+
+    private int getCharsSize(final int nodeId) {
+        final int charCount = mTrie.getCharCount(nodeId);
+        int size = charCount > 1 ? 1 /* terminator */ : 0;
+        for (int i = 0; i < charCount; i++) {
+            size += getCharSize(mTrie.getCodePoint(nodeId, i));
+        }
+        return size;
+    }
+
+    private int getShortcutListSize(final int wordId) {
+        final int end = mWordList.getShortcutEnd(wordId);
+        if (mWordList.getFirstShortcut(wordId) == end) return 0;
+        int size = PTNODE_SHORTCUT_LIST_SIZE_SIZE;
+        for (int shortcut = mWordList.getFirstShortcut(wordId); shortcut < end; shortcut++) {
+            size += 1 /* flags */ + 1 /* terminator */;
+            for (int i = 0; i < mWordList.getShortcutLength(shortcut); i++) {
+                size += getCharSize(mWordList.getShortcutCodePoint(shortcut, i));
+            }
+        }
+        if (size > MAX_SHORTCUT_LIST_SIZE_IN_A_PTNODE) {
+            throw new IllegalStateException("Shortcut list too large for word id " + wordId);
+        }
+        return size;
+    }
+
+    private boolean hasBigrams(final int wordId) {
+        for (int bigram = mWordList.getFirstBigram(wordId);
+                bigram < mWordList.getBigramEnd(wordId); bigram++) {
+            if (isWrittenBigram(bigram)) return true;
+        }
+        return false;
+    }
+
+    private boolean isWrittenBigram(final int bigram) {
+        return WordList.NOT_A_WORD_ID != mWordList.getBigramTargetWordId(bigram);
+    }
+
+    private int getBigramTargetPos(final int bigram) {
+        return mNodePos[mTrie.getTerminalNode(mWordList.getBigramTargetWordId(bigram))];
+    }
+
+    /**
+     * Size of the flags, characters, probability and shortcut list, which don't depend on the
+     * layout.
+     */
+    private int computeStaticSize(final int nodeId) {
+        final int wordId = mTrie.getTerminalWord(nodeId);
+        int size = 1 /* flags */ + getCharsSize(nodeId);
+        if (WordList.NOT_A_WORD_ID != wordId) {
+            size += 1 /* probability */ + getShortcutListSize(wordId);
+        }
+        return size;
+    }
+
+    private int getChildrenAddressFieldPos(final int nodeId) {
+        return mNodePos[nodeId] + 1 /* flags */ + getCharsSize(nodeId)
+                + (WordList.NOT_A_WORD_ID != mTrie.getTerminalWord(nodeId) ? 1 : 0);
+    }
+
+    private int getChildrenOffset(final int nodeId) {
+        final int childCount = mTrie.getChildCount(nodeId);
+        final int childArrayPos =
+                mNodePos[mTrie.getFirstChild(nodeId)] - getPtNodeCountSize(childCount);
+        return childArrayPos - getChildrenAddressFieldPos(nodeId);
+    }
+
+    private int computeSize(final int nodeId, final boolean isFirstLayout) {
+        int size = mNodeStaticSize[nodeId];
+        if (mTrie.getChildCount(nodeId) > 0) {
+            size += isFirstLayout ? PTNODE_MAX_ADDRESS_SIZE
+                    : getOffsetSize(getChildrenOffset(nodeId));
+        }
+        final int wordId = mTrie.getTerminalWord(nodeId);
+        if (WordList.NOT_A_WORD_ID == wordId) return size;
+        // Bigram offsets are relative to their own address field, which follows every field
+        // counted so far.
+        int pos = mNodePos[nodeId] + size;
+        for (int bigram = mWordList.getFirstBigram(wordId);
+                bigram < mWordList.getBigramEnd(wordId); bigram++) {
+            if (!isWrittenBigram(bigram)) continue;
+            final int addressSize = isFirstLayout ? PTNODE_MAX_ADDRESS_SIZE
+                    : getOffsetSize(getBigramTargetPos(bigram) - (pos + 1));
+            pos += 1 /* flags */ + addressSize;
+        }
+        return pos - mNodePos[nodeId];
+    }
+
+    private void layOut() {
+        int pos = 0;
+        for (int array = 0; array < mArrayFirstNode.length; array++) {
+            final int first = mArrayFirstNode[array];
+            final int count = mArrayNodeCount[array];
+            pos += getPtNodeCountSize(count);
+            for (int nodeId = first; nodeId < first + count; nodeId++) {
+                mNodePos[nodeId] = pos;
+                pos += mNodeSize[nodeId];
+            }
+        }
+        mTrieSize = pos;
+    }
+
+    private void computeLayout() {
+        parallelFor(mNodeSize.length, nodeId -> {
+            mNodeStaticSize[nodeId] = computeStaticSize(nodeId);
+            mNodeSize[nodeId] = computeSize(nodeId, true /* isFirstLayout */);
+        });
+        layOut();
+        mLayoutIterationCount = 1;
+        final AtomicBoolean changed = new AtomicBoolean(true);
+        while (changed.get()) {
+            changed.set(false);
+            parallelFor(mNodeSize.length, nodeId -> {
+                final int size = computeSize(nodeId, false /* isFirstLayout */);
+                if (size != mNodeSize[nodeId]) {
+                    mNodeSize[nodeId] = size;
+                    changed.set(true);
+                }
+            });
+            layOut();
+            mLayoutIterationCount++;
+        }
+    }
+
+    private static int writeUint(final byte[] buffer, final int pos, final int value,
+            final int size) {
+        for (int i = 0; i < size; i++) {
+            buffer[pos + i] = (byte) (value >> (8 * (size - 1 - i)));
+        }
+        return pos + size;
+    }
+
+    private static int writeCodePoint(final byte[] buffer, final int pos, final int codePoint) {
+        return writeUint(buffer, pos, codePoint, getCharSize(codePoint));
+    }
+
+    private static int getAddressTypeFlags(final int addressSize, final int oneByte,
+            final int twoBytes, final int threeBytes) {
+        switch (addressSize) {
+            case 1:
+                return oneByte;
+            case 2:
+                return twoBytes;
+            default:
+                return threeBytes;
+        }
+    }
+
+    /**
+     * Same discretization as the original dictionary tool: the 4 bits store the step between
+     * the unigram probability and the maximum probability that the bigram probability reaches.
+     */
+    private static int getBigramFrequencyDiff(final int unigramFrequency,
+            final int bigramFrequency) {
+        final int frequency = Math.max(unigramFrequency, bigramFrequency);
+        final float stepSize = (MAX_TERMINAL_FREQUENCY - unigramFrequency)
+                / (1.5f + MAX_BIGRAM_FREQUENCY);
+        final float firstStepStart = 1 + unigramFrequency + (stepSize / 2.0f);
+        final int discretizedFrequency = (int) ((frequency - firstStepStart) / stepSize);
+        return discretizedFrequency > 0 ? discretizedFrequency : 0;
+    }
+
+    private void writePtNode(final byte[] buffer, final int offset, final int nodeId) {
+        final int wordId = mTrie.getTerminalWord(nodeId);
+        final boolean isTerminal = WordList.NOT_A_WORD_ID != wordId;
+        final int charCount = mTrie.getCharCount(nodeId);
+        int flags = charCount > 1 ? FLAG_HAS_MULTIPLE_CHARS : 0;
+        int childrenOffset = 0;
+        int childrenOffsetSize = 0;
+        if (mTrie.getChildCount(nodeId) > 0) {
+            childrenOffset = getChildrenOffset(nodeId);
+            childrenOffsetSize = getOffsetSize(childrenOffset);
+            flags |= getAddressTypeFlags(childrenOffsetSize, FLAG_CHILDREN_ADDRESS_TYPE_ONEBYTE,
+                    FLAG_CHILDREN_ADDRESS_TYPE_TWOBYTES, FLAG_CHILDREN_ADDRESS_TYPE_THREEBYTES);
+        }
+        if (isTerminal) {
+            flags |= FLAG_IS_TERMINAL;
+            if (mWordList.getFirstShortcut(wordId) != mWordList.getShortcutEnd(wordId)) {
+                flags |= FLAG_HAS_SHORTCUT_TARGETS;
+            }
+            if (hasBigrams(wordId)) {
+                flags |= FLAG_HAS_BIGRAMS;
+            }
+            if ((mWordList.getFlags(wordId) & WordList.FLAG_NOT_A_WORD) != 0) {
+                flags |= FLAG_IS_NOT_A_WORD;
+            }
+            if ((mWordList.getFlags(wordId) & WordList.FLAG_POSSIBLY_OFFENSIVE) != 0) {
+                flags |= FLAG_IS_POSSIBLY_OFFENSIVE;
+            }
+        }
+        int pos = offset + mNodePos[nodeId];
+        buffer[pos++] = (byte) flags;
+        for (int i = 0; i < charCount; i++) {
+            pos = writeCodePoint(buffer, pos, mTrie.getCodePoint(nodeId, i));
+        }
+        if (charCount > 1) {
+            buffer[pos++] = PTNODE_CHARACTERS_TERMINATOR;
+        }
+        if (isTerminal) {
+            buffer[pos++] = (byte) mWordList.getProbability(wordId);
+        }
+        if (childrenOffsetSize > 0) {
+            pos = writeUint(buffer, pos, childrenOffset, childrenOffsetSize);
+        }
+        if (!isTerminal) return;
+        final int shortcutListSize = getShortcutListSize(wordId);
+        if (shortcutListSize > 0) {
+            pos = writeUint(buffer, pos, shortcutListSize, PTNODE_SHORTCUT_LIST_SIZE_SIZE);
+            final int end = mWordList.getShortcutEnd(wordId);
+            for (int shortcut = mWordList.getFirstShortcut(wordId); shortcut < end; shortcut++) {
+                final boolean hasNext = shortcut + 1 < end;
+                buffer[pos++] = (byte) ((hasNext ? FLAG_BIGRAM_SHORTCUT_ATTR_HAS_NEXT : 0)
+                        | mWordList.getShortcutProbability(shortcut));
+                for (int i = 0; i < mWordList.getShortcutLength(shortcut); i++) {
+                    pos = writeCodePoint(buffer, pos, mWordList.getShortcutCodePoint(shortcut, i));
+                }
+                buffer[pos++] = PTNODE_CHARACTERS_TERMINATOR;
+            }
+        }
+        int lastBigram = -1;
+        for (int bigram = mWordList.getFirstBigram(wordId);
+                bigram < mWordList.getBigramEnd(wordId); bigram++) {
+            if (isWrittenBigram(bigram)) lastBigram = bigram;
+        }
+        for (int bigram = mWordList.getFirstBigram(wordId); bigram <= lastBigram; bigram++) {
+            if (!isWrittenBigram(bigram)) continue;
+            final int targetOffset = getBigramTargetPos(bigram) - (pos - offset + 1);
+            final int addressSize = getOffsetSize(targetOffset);
+            final int bigramFlags = (bigram < lastBigram ? FLAG_BIGRAM_SHORTCUT_ATTR_HAS_NEXT : 0)
+                    | (targetOffset < 0 ? FLAG_BIGRAM_ATTR_OFFSET_NEGATIVE : 0)
+                    | getAddressTypeFlags(addressSize, FLAG_BIGRAM_ATTR_ADDRESS_TYPE_ONEBYTE,
+                            FLAG_BIGRAM_ATTR_ADDRESS_TYPE_TWOBYTES,
+                            FLAG_BIGRAM_ATTR_ADDRESS_TYPE_THREEBYTES)
+                    | (getBigramFrequencyDiff(mWordList.getProbability(wordId),
+                            mWordList.getBigramProbability(bigram))
+                            & FLAG_BIGRAM_SHORTCUT_ATTR_FREQUENCY);
+            buffer[pos++] = (byte) bigramFlags;
+            pos = writeUint(buffer, pos, Math.abs(targetOffset), addressSize);
+        }
+        if (pos - offset != mNodePos[nodeId] + mNodeSize[nodeId]) {
+            throw new IllegalStateException("PtNode " + nodeId + " size mismatch");
+        }
+    }
+
+    private static int getStringSize(final String string) {
+        int size = 1 /* terminator */;
+        for (int i = 0; i < string.length(); i = string.offsetByCodePoints(i, 1)) {
+            size += getCharSize(string.codePointAt(i));
+        }
+        return size;
+    }
+
+    private static int writeString(final byte[] buffer, int pos, final String string) {
+        for (int i = 0; i < string.length(); i = string.offsetByCodePoints(i, 1)) {
+            pos = writeCodePoint(buffer, pos, string.codePointAt(i));
+        }
+        buffer[pos] = PTNODE_CHARACTERS_TERMINATOR;
+        return pos + 1;
+    }
+
+    private int getHeaderSize() {
+        int size = HEADER_FIXED_SIZE;
+        for (final Map.Entry<String, String> attribute
+                : mWordList.getHeaderAttributes().entrySet()) {
+            size += getStringSize(attribute.getKey()) + getStringSize(attribute.getValue());
+        }
+        return size;
+    }
+
+    private void writeHeader(final byte[] buffer, final int headerSize) {
+        int pos = writeUint(buffer, 0, MAGIC_NUMBER, 4);
+        pos = writeUint(buffer, pos, VERSION202, 2);
+        pos = writeUint(buffer, pos, NO_OPTIONS_FLAGS, 2);
+        pos = writeUint(buffer, pos, headerSize, 4);
+        for (final Map.Entry<String, String> attribute
+                : mWordList.getHeaderAttributes().entrySet()) {
+            pos = writeString(buffer, pos, attribute.getKey());
+            pos = writeString(buffer, pos, attribute.getValue());
+        }
+    }
+
+    /**
+     * Encodes the whole dictionary. Returns the dictionary file content.
+     */
+    public byte[] encode() {
+        computeLayout();
+        final int headerSize = getHeaderSize();
+        final byte[] buffer = new byte[headerSize + mTrieSize];
+        writeHeader(buffer, headerSize);
+        parallelFor(mArrayFirstNode.length, array -> {
+            final int first = mArrayFirstNode[array];
+            final int count = mArrayNodeCount[array];
+            if (count == 0) return;
+            final int countSize = getPtNodeCountSize(count);
+            writeUint(buffer, headerSize + mNodePos[first] - countSize,
+                    countSize == 1 ? count : count | LARGE_PTNODE_ARRAY_SIZE_FIELD_SIZE_FLAG,
+                    countSize);
+            for (int nodeId = first; nodeId < first + count; nodeId++) {
+                writePtNode(buffer, headerSize, nodeId);
+            }
+        });
+        return buffer;
+    }
+
+    public int getPtNodeArrayCount() {
+        return mArrayFirstNode.length;
+    }
+
+    public int getLayoutIterationCount() {
+        return mLayoutIterationCount;
+    }
+
+    public static void writeToFile(final byte[] dictionary, final String path)
+            throws IOException {
+        try (final OutputStream out = new FileOutputStream(path)) {
+            out.write(dictionary);
+        }
+    }
+}
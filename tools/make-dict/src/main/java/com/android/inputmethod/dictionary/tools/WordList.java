@@ -0,0 +1,260 @@
+package com.android.inputmethod.dictionary.tools;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Words of a dictionary with their shortcut and bigram lists, stored column-wise in primitive
+ * arrays. The code points of words, shortcut targets and bigram targets all live in one shared
+ * array and are referred to by start offset and length.
+ */
+final class WordList {
+    // Mirrors FormatSpec.MAX_WORD_LENGTH, which is what the native reader supports.
+    public static final int MAX_WORD_LENGTH = 48;
+    public static final int NOT_A_WORD_ID = -1;
+
+    private final TreeMap<String, String> mHeaderAttributes = new TreeMap<>();
+    private final IntList mCodePoints = new IntList();
+
+    private final IntList mWordStart = new IntList();
+    private final IntList mWordLength = new IntList();
+    private final IntList mWordProbability = new IntList();
+    private final IntList mWordFlags = new IntList();
+    // Index of the first shortcut and bigram of each word. Attributes of a word are contiguous
+    // and end where the attributes of the next word start.
+    private final IntList mWordFirstShortcut = new IntList();
+    private final IntList mWordFirstBigram = new IntList();
+
+    private final IntList mShortcutStart = new IntList();
+    private final IntList mShortcutLength = new IntList();
+    private final IntList mShortcutProbability = new IntList();
+
+    private final IntList mBigramStart = new IntList();
+    private final IntList mBigramLength = new IntList();
+    private final IntList mBigramProbability = new IntList();
+
+    public static final int FLAG_NOT_A_WORD = 0x1;
+    public static final int FLAG_POSSIBLY_OFFENSIVE = 0x2;
+
+    // Sorted ids of the distinct words and resolved bigram targets, set by prepare().
+    private int[] mSortedWordIds;
+    private int[] mBigramTargetWordIds;
+    private boolean mLastWordAccepted;
+    private int mSkippedWordCount;
+    private int mDuplicateWordCount;
+    private int mUnknownBigramTargetCount;
+
+    public void setHeaderAttribute(final String key, final String value) {
+        mHeaderAttributes.put(key, value);
+    }
+
+    public Map<String, String> getHeaderAttributes() {
+        return mHeaderAttributes;
+    }
+
+    private int addCodePoints(final String string) {
+        final int start = mCodePoints.size();
+        for (int i = 0; i < string.length(); i = string.offsetByCodePoints(i, 1)) {
+            mCodePoints.add(string.codePointAt(i));
+        }
+        return start;
+    }
+
+    /**
+     * Adds a word. Shortcuts and bigrams added afterwards belong to this word. Returns false if
+     * the word cannot be stored in a dictionary and has been skipped with its attributes.
+     */
+    public boolean addWord(final String word, final int probability, final int flags) {
+        final int length = word.codePointCount(0, word.length());
+        mLastWordAccepted = length > 0 && length <= MAX_WORD_LENGTH;
+        if (!mLastWordAccepted) {
+            mSkippedWordCount++;
+            return false;
+        }
+        mWordStart.add(addCodePoints(word));
+        mWordLength.add(length);
+        mWordProbability.add(probability);
+        mWordFlags.add(flags);
+        mWordFirstShortcut.add(mShortcutStart.size());
+        mWordFirstBigram.add(mBigramStart.size());
+        return true;
+    }
+
+    public void addShortcut(final String target, final int probability) {
+        if (!mLastWordAccepted) return;
+        mShortcutStart.add(addCodePoints(target));
+        mShortcutLength.add(target.codePointCount(0, target.length()));
+        mShortcutProbability.add(probability);
+    }
+
+    public void addBigram(final String target, final int probability) {
+        if (!mLastWordAccepted) return;
+        mBigramStart.add(addCodePoints(target));
+        mBigramLength.add(target.codePointCount(0, target.length()));
+        mBigramProbability.add(probability);
+    }
+
+    /**
+     * Sorts the words by code point, drops duplicates keeping the most probable entry, and
+     * resolves bigram targets to word ids. Must be called once all words have been added.
+     */
+    public void prepare() {
+        final int[] ids = new int[mWordStart.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i;
+        }
+        mergeSort(ids, new int[ids.length], 0, ids.length);
+        int distinctCount = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (distinctCount > 0 && compareWords(ids[distinctCount - 1], ids[i]) == 0) {
+                mDuplicateWordCount++;
+                if (getProbability(ids[i]) > getProbability(ids[distinctCount - 1])) {
+                    ids[distinctCount - 1] = ids[i];
+                }
+                continue;
+            }
+            ids[distinctCount++] = ids[i];
+        }
+        mSortedWordIds = Arrays.copyOf(ids, distinctCount);
+        mBigramTargetWordIds = new int[mBigramStart.size()];
+        for (int i = 0; i < mBigramTargetWordIds.length; i++) {
+            mBigramTargetWordIds[i] = findWord(mBigramStart.get(i), mBigramLength.get(i));
+            if (NOT_A_WORD_ID == mBigramTargetWordIds[i]) {
+                mUnknownBigramTargetCount++;
+            }
+        }
+    }
+
+    private void mergeSort(final int[] ids, final int[] buffer, final int from, final int to) {
+        if (to - from < 2) return;
+        final int middle = (from + to) >>> 1;
+        mergeSort(ids, buffer, from, middle);
+        mergeSort(ids, buffer, middle, to);
+        if (compareWords(ids[middle - 1], ids[middle]) <= 0) return;
+        System.arraycopy(ids, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && compareWords(buffer[left], buffer[right]) <= 0)) {
+                ids[i] = buffer[left++];
+            } else {
+                ids[i] = buffer[right++];
+            }
+        }
+    }
+
+    private int compareCodePoints(final int start1, final int length1, final int start2,
+            final int length2) {
+        final int length = Math.min(length1, length2);
+        for (int i = 0; i < length; i++) {
+            final int diff = mCodePoints.get(start1 + i) - mCodePoints.get(start2 + i);
+            if (diff != 0) return diff;
+        }
+        return length1 - length2;
+    }
+
+    private int compareWords(final int wordId1, final int wordId2) {
+        return compareCodePoints(mWordStart.get(wordId1), mWordLength.get(wordId1),
+                mWordStart.get(wordId2), mWordLength.get(wordId2));
+    }
+
+    private int findWord(final int start, final int length) {
+        int low = 0;
+        int high = mSortedWordIds.length - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int wordId = mSortedWordIds[middle];
+            final int diff = compareCodePoints(mWordStart.get(wordId), mWordLength.get(wordId),
+                    start, length);
+            if (diff == 0) return wordId;
+            if (diff < 0) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return NOT_A_WORD_ID;
+    }
+
+    public int getWordCount() {
+        return mWordStart.size();
+    }
+
+    /**
+     * Returns the distinct word ids in code point order. Only valid after prepare().
+     */
+    public int[] getSortedWordIds() {
+        return mSortedWordIds;
+    }
+
+    public int getCodePoint(final int wordId, final int index) {
+        return mCodePoints.get(mWordStart.get(wordId) + index);
+    }
+
+    public int getLength(final int wordId) {
+        return mWordLength.get(wordId);
+    }
+
+    public int getProbability(final int wordId) {
+        return mWordProbability.get(wordId);
+    }
+
+    public int getFlags(final int wordId) {
+        return mWordFlags.get(wordId);
+    }
+
+    public int getFirstShortcut(final int wordId) {
+        return mWordFirstShortcut.get(wordId);
+    }
+
+    public int getShortcutEnd(final int wordId) {
+        return wordId + 1 < mWordStart.size() ? mWordFirstShortcut.get(wordId + 1)
+                : mShortcutStart.size();
+    }
+
+    public int getShortcutCodePoint(final int shortcut, final int index) {
+        return mCodePoints.get(mShortcutStart.get(shortcut) + index);
+    }
+
+    public int getShortcutLength(final int shortcut) {
+        return mShortcutLength.get(shortcut);
+    }
+
+    public int getShortcutProbability(final int shortcut) {
+        return mShortcutProbability.get(shortcut);
+    }
+
+    public int getFirstBigram(final int wordId) {
+        return mWordFirstBigram.get(wordId);
+    }
+
+    public int getBigramEnd(final int wordId) {
+        return wordId + 1 < mWordStart.size() ? mWordFirstBigram.get(wordId + 1)
+                : mBigramStart.size();
+    }
+
+    /**
+     * Returns the word id of the bigram target, or NOT_A_WORD_ID if the target is not a word of
+     * this list. Only valid after prepare().
+     */
+    public int getBigramTargetWordId(final int bigram) {
+        return mBigramTargetWordIds[bigram];
+    }
+
+    public int getBigramProbability(final int bigram) {
+        return mBigramProbability.get(bigram);
+    }
+
+    public int getSkippedWordCount() {
+        return mSkippedWordCount;
+    }
+
+    public int getDuplicateWordCount() {
+        return mDuplicateWordCount;
+    }
+
+    public int getUnknownBigramTargetCount() {
+        return mUnknownBigramTargetCount;
+    }
+}
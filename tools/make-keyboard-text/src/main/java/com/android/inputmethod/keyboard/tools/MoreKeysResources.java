@@ -33,10 +33,13 @@ public class MoreKeysResources {
     private static final String TEXT_RESOURCE_NAME = "donottranslate-more-keys.xml";
 
     private static final String JAVA_TEMPLATE = "KeyboardTextsTable.tmpl";
+    private static final String MARK_TEXT_IDS = "@TEXT_IDS@";
     private static final String MARK_NAMES = "@NAMES@";
     private static final String MARK_DEFAULT_TEXTS = "@DEFAULT_TEXTS@";
     private static final String MARK_TEXTS = "@TEXTS@";
-    private static final String TEXTS_ARRAY_NAME_PREFIX = "TEXTS_";
+    private static final String TEXTS_CLASS_NAME_PREFIX = "Texts_";
+    private static final String TEXTS_ARRAY_NAME = "TEXTS";
+    private static final String DEFAULT_TEXTS_ARRAY_NAME = "TEXTS_DEFAULT";
     private static final String MARK_LOCALES_AND_TEXTS = "@LOCALES_AND_TEXTS@";
     private static final String EMPTY_STRING_VAR = "EMPTY";
 
@@ -138,7 +141,9 @@ public class MoreKeysResources {
             throws IOException {
         String line;
         while ((line = in.readLine()) != null) {
-            if (line.contains(MARK_NAMES)) {
+            if (line.contains(MARK_TEXT_IDS)) {
+                dumpTextIds(out);
+            } else if (line.contains(MARK_NAMES)) {
                 dumpNames(out);
             } else if (line.contains(MARK_DEFAULT_TEXTS)) {
                 dumpDefaultTexts(out);
@@ -152,22 +157,41 @@ public class MoreKeysResources {
         }
     }
 
-    private void dumpNames(final PrintStream out) {
+    private static String getTextIdName(final String name) {
+        return name.toUpperCase(Locale.ROOT);
+    }
+
+    private void dumpTextIds(final PrintStream out) {
         final int namesCount = mSortedResourceNames.length;
         for (int index = 0; index < namesCount; index++) {
             final String name = mSortedResourceNames[index];
             final int histogramValue = mNameHistogram.get(name);
-            out.format("        /* %3d:%2d */ \"%s\",\n", index, histogramValue, name);
+            out.format("    public static final int %s = %d; // %d\n",
+                    getTextIdName(name), index, histogramValue);
+        }
+    }
+
+    private void dumpNames(final PrintStream out) {
+        for (final String name : mSortedResourceNames) {
+            out.format("        case \"%s\":\n", name);
+            out.format("            return %s;\n", getTextIdName(name));
         }
     }
 
     private void dumpDefaultTexts(final PrintStream out) {
-        final int outputArraySize = dumpTextsInternal(out, mDefaultResourceMap);
+        final int outputArraySize = dumpTextsInternal(out, mDefaultResourceMap, "        ");
         mDefaultResourceMap.setOutputArraySize(outputArraySize);
     }
 
-    private static String getArrayNameForLocale(final Locale locale) {
-        return TEXTS_ARRAY_NAME_PREFIX + LocaleUtils.getLocaleCode(locale);
+    private static String getClassNameForLocale(final Locale locale) {
+        return TEXTS_CLASS_NAME_PREFIX + LocaleUtils.getLocaleCode(locale);
+    }
+
+    private String getArrayNameForLocale(final Locale locale) {
+        if (locale == LocaleUtils.DEFAULT_LOCALE) {
+            return DEFAULT_TEXTS_ARRAY_NAME;
+        }
+        return getClassNameForLocale(locale) + "." + TEXTS_ARRAY_NAME;
     }
 
     private void dumpTexts(final PrintStream out) {
@@ -176,11 +200,12 @@ public class MoreKeysResources {
             if (resMap == mDefaultResourceMap) continue;
             out.format("    /* Locale %s: %s */\n",
                     locale, LocaleUtils.getLocaleDisplayName(locale));
-            out.format("    private static final String[] " + getArrayNameForLocale(locale)
-                    + " = {\n");
-            final int outputArraySize = dumpTextsInternal(out, resMap);
+            out.format("    private static final class " + getClassNameForLocale(locale) + " {\n");
+            out.format("        static final String[] " + TEXTS_ARRAY_NAME + " = {\n");
+            final int outputArraySize = dumpTextsInternal(out, resMap, "            ");
             resMap.setOutputArraySize(outputArraySize);
-            out.format("    };\n\n");
+            out.format("        };\n");
+            out.format("    }\n\n");
         }
     }
 
@@ -188,19 +213,17 @@ public class MoreKeysResources {
         for (final StringResourceMap resMap : mResourcesMap.values()) {
             final Locale locale = resMap.mLocale;
             final String localeStr = LocaleUtils.getLocaleCode(locale);
-            final String localeToDump = (locale == LocaleUtils.DEFAULT_LOCALE)
-                    ? String.format("\"%s\"", localeStr)
-                    : String.format("\"%s\"%s", localeStr, "       ".substring(localeStr.length()));
-            out.format("        %s, %-12s /* %3d/%3d %s */\n",
-                    localeToDump, getArrayNameForLocale(locale) + ",",
+            out.format("        case %-10s return %-19s /* %3d/%3d %s */\n",
+                    "\"" + localeStr + "\":", getArrayNameForLocale(locale) + ";",
                     resMap.getResources().size(), resMap.getOutputArraySize(),
                     LocaleUtils.getLocaleDisplayName(locale));
         }
     }
 
-    private int dumpTextsInternal(final PrintStream out, final StringResourceMap resMap) {
+    private int dumpTextsInternal(final PrintStream out, final StringResourceMap resMap,
+            final String indent) {
         final ArrayInitializerFormatter formatter =
-                new ArrayInitializerFormatter(out, 100, "        ", mSortedResourceNames);
+                new ArrayInitializerFormatter(out, 100, indent, mSortedResourceNames);
         int outputArraySize = 0;
         boolean successiveNull = false;
         final int namesCount = mSortedResourceNames.length;
@@ -210,7 +233,7 @@ public class MoreKeysResources {
             if (res != null) {
                 // TODO: Check whether the resource value is equal to the default.
                 if (res.mComment != null) {
-                    formatter.outCommentLines(addPrefix("        // ", res. mComment));
+                    formatter.outCommentLines(addPrefix(indent + "// ", res. mComment));
                 }
                 final String escaped = escapeNonAscii(res.mValue);
                 if (escaped.length() == 0) {